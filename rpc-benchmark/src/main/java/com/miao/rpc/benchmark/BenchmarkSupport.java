@@ -0,0 +1,33 @@
+package com.miao.rpc.benchmark;
+
+import com.miao.rpc.core.registry.ServiceDiscovery;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在同一进程内启动服务端与客户端时用到的工具方法。注册中心使用进程内的 local://，不需要ZooKeeper
+ */
+public class BenchmarkSupport {
+
+    public static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 等待注册中心中出现接口的提供者，服务端在bind成功后才向注册中心注册地址
+     */
+    public static void awaitProvider(ServiceDiscovery discovery, String service, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (discovery.discover(service, "") == null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(service + "在" + timeoutMillis + "ms内没有出现提供者");
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+}
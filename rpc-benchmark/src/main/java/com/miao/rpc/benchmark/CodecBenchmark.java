@@ -0,0 +1,112 @@
+package com.miao.rpc.benchmark;
+
+import com.miao.rpc.core.coder.RpcDecoder;
+import com.miao.rpc.core.coder.RpcEncoder;
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.serialize.Serializers;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.INITIAL_BYTES_TO_STRIP;
+import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_ADJUSTMENT;
+import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_FIELD_LENGTH;
+import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_FIELD_OFFSET;
+import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.MAX_FRAME_LENGTH;
+
+/**
+ * RpcEncoder/RpcDecoder的编解码开销，消息经过与真实连接相同的handler，
+ * 只是channel换成了EmbeddedChannel，编码输出与解码输入都使用池化的ByteBuf
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private Payloads.Shape shape;
+
+    @Param({"protostuff", "kryo"})
+    private String serializer;
+
+    // 握手后按methodId调用时请求中只有参数
+    @Param({"true", "false"})
+    private boolean methodId;
+
+    private EmbeddedChannel encoder;
+    private EmbeddedChannel decoder;
+    private Message request;
+    private Message response;
+    private ByteBuf requestFrame;
+    private ByteBuf responseFrame;
+
+    @Setup
+    public void setup() {
+        byte id = Serializers.idOf(serializer);
+        request = Message.buildRequest(Payloads.request(shape, id, methodId ? 1 : 0));
+        response = Message.buildResponse(Payloads.response(shape, id));
+        encoder = new EmbeddedChannel(new RpcEncoder());
+        decoder = new EmbeddedChannel(new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, LENGTH_FIELD_OFFSET,
+                LENGTH_FIELD_LENGTH, LENGTH_ADJUSTMENT, INITIAL_BYTES_TO_STRIP), new RpcDecoder());
+        requestFrame = encode(request);
+        responseFrame = encode(response);
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestFrame.release();
+        responseFrame.release();
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encodeRequest() {
+        ByteBuf frame = encode(request);
+        int bytes = frame.readableBytes();
+        frame.release();
+        return bytes;
+    }
+
+    @Benchmark
+    public int encodeResponse() {
+        ByteBuf frame = encode(response);
+        int bytes = frame.readableBytes();
+        frame.release();
+        return bytes;
+    }
+
+    @Benchmark
+    public Message decodeRequest() {
+        decoder.writeInbound(requestFrame.retainedDuplicate());
+        return decoder.readInbound();
+    }
+
+    @Benchmark
+    public Message decodeResponse() {
+        decoder.writeInbound(responseFrame.retainedDuplicate());
+        return decoder.readInbound();
+    }
+
+    private ByteBuf encode(Message message) {
+        encoder.writeOutbound(message);
+        return encoder.readOutbound();
+    }
+}
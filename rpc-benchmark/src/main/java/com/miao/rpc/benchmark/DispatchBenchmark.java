@@ -0,0 +1,102 @@
+package com.miao.rpc.benchmark;
+
+import com.miao.rpc.benchmark.service.BenchService;
+import com.miao.rpc.benchmark.service.BenchServiceImpl;
+import com.miao.rpc.benchmark.service.Payload;
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.metrics.MethodMetrics;
+import com.miao.rpc.core.serialize.Serializers;
+import com.miao.rpc.core.server.DispatchTable;
+import com.miao.rpc.core.server.MethodInvoker;
+import com.miao.rpc.core.server.Worker;
+import com.miao.rpc.core.util.MethodSignature;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端收到请求之后的开销：在分发表中查找调用器(按methodId与按接口名、方法名)，
+ * 以及Worker调用服务方法并写出响应。响应写入EmbeddedChannel，不经过编码器
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    // 是否在Worker中记录方法统计
+    @Param({"true", "false"})
+    private boolean metrics;
+
+    private DispatchTable table;
+    private EmbeddedChannel channel;
+    private ChannelHandlerContext ctx;
+    private RpcRequest byId;
+    private RpcRequest byName;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        table = new DispatchTable();
+        table.register(BenchService.class, new BenchServiceImpl());
+        String signature = MethodSignature.of(BenchService.class.getMethod("echo", Payload.class));
+        int methodId = Arrays.asList(table.signatures()).indexOf(signature);
+        if (metrics) {
+            for (MethodInvoker invoker : table.invokers()) {
+                invoker.setMetrics(new MethodMetrics(invoker.getSignature()));
+            }
+        }
+        byId = Payloads.request(Payloads.Shape.SMALL, Serializers.DEFAULT_ID, methodId);
+        byName = Payloads.request(Payloads.Shape.SMALL, Serializers.DEFAULT_ID, 0);
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ctx = channel.pipeline().firstContext();
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public MethodInvoker lookupById() {
+        return table.lookup(byId);
+    }
+
+    @Benchmark
+    public MethodInvoker lookupByName() {
+        return table.lookup(byName);
+    }
+
+    /**
+     * EmbeddedChannel的EventLoop就是当前线程，响应在run返回前已经写出
+     */
+    @Benchmark
+    public Message worker() {
+        MethodInvoker invoker = table.lookup(byId);
+        if (invoker.getMetrics() != null) {
+            invoker.getMetrics().start();
+            byId.setMetrics(invoker.getMetrics());
+        }
+        byId.setReceiveTime(System.nanoTime());
+        new Worker(ctx, byId, invoker, Interceptors.NONE).run();
+        return channel.readOutbound();
+    }
+}
@@ -0,0 +1,125 @@
+package com.miao.rpc.benchmark;
+
+import com.miao.rpc.benchmark.service.BenchService;
+import com.miao.rpc.benchmark.service.BenchServiceImpl;
+import com.miao.rpc.benchmark.service.Payload;
+import com.miao.rpc.core.client.RpcClient;
+import com.miao.rpc.core.loadBalance.impl.RandomLoadBalance;
+import com.miao.rpc.core.proxy.RpcProxyFactoryBean;
+import com.miao.rpc.core.registry.ServiceDiscovery;
+import com.miao.rpc.core.registry.ServiceRegistry;
+import com.miao.rpc.core.server.RpcServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端的请求/响应：同一进程内启动RpcServer与RpcClient，注册中心使用进程内的local://，经过127.0.0.1上的真实TCP连接，
+ * 通过代理调用BenchService#echo。
+ *
+ * sync为单线程同步调用，syncThreads为16个线程同时同步调用；async16、async128每次发出16/128个异步调用后等待全部完成，
+ * 结果已按单次调用折算(OperationsPerInvocation)。SampleTime模式给出各百分位的耗时；batchSize为0时不合并请求
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoopbackBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private Payloads.Shape shape;
+
+    @Param({"0", "32"})
+    private int batchSize;
+
+    private RpcServer server;
+    private RpcClient client;
+    private BenchService service;
+    private Payload payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String registry = "local://loopback-" + BenchmarkSupport.freePort(); // 每次试验一个独立的注册中心
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBeanDefinition("benchService", new RootBeanDefinition(BenchServiceImpl.class));
+        context.refresh();
+        server = new RpcServer(BenchServiceImpl.class.getPackage().getName(), new ServiceRegistry(registry));
+        server.setApplicationContext(context);
+        String serverAddress = "127.0.0.1:" + BenchmarkSupport.freePort();
+        Thread serverThread = new Thread(() -> server.run(serverAddress), "rpc-benchmark-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        client = new RpcClient();
+        ServiceDiscovery discovery = new ServiceDiscovery(registry, RandomLoadBalance::new);
+        BenchmarkSupport.awaitProvider(discovery, BenchService.class.getName(), 10000);
+        client.setDiscovery(discovery);
+        client.setBatchSize(batchSize);
+        client.init();
+        RpcProxyFactoryBean factoryBean = new RpcProxyFactoryBean();
+        factoryBean.setClient(client);
+        factoryBean.setInterfaceClass(BenchService.class);
+        factoryBean.afterPropertiesSet();
+        service = (BenchService) factoryBean.getObject();
+        payload = Payloads.payload(shape);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Payload sync() {
+        return service.echo(payload);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Payload syncThreads() {
+        return service.echo(payload);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(16)
+    public Object async16() {
+        return async(16);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(128)
+    public Object async128() {
+        return async(128);
+    }
+
+    private Object async(int concurrency) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            futures[i] = service.echoAsync(payload);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
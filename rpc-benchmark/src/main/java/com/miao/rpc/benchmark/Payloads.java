@@ -0,0 +1,77 @@
+package com.miao.rpc.benchmark;
+
+import com.miao.rpc.benchmark.service.BenchService;
+import com.miao.rpc.benchmark.service.Payload;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 各个压测共用的消息，按规模分为三种：
+ * SMALL 只有id与短字符串(约30字节)；MEDIUM 再加20个标签与256字节的二进制(约600字节)；
+ * LARGE 200个标签与16KB的二进制(约20KB)
+ */
+public final class Payloads {
+
+    public enum Shape {
+        SMALL(0, 0), MEDIUM(20, 256), LARGE(200, 16 * 1024);
+
+        private final int tags;
+        private final int bytes;
+
+        Shape(int tags, int bytes) {
+            this.tags = tags;
+            this.bytes = bytes;
+        }
+    }
+
+    private Payloads() {
+    }
+
+    public static Payload payload(Shape shape) {
+        Random random = new Random(42); // 固定种子，每次运行的消息内容相同
+        Payload payload = new Payload();
+        payload.setId(random.nextLong());
+        payload.setName("benchmark-" + shape.name().toLowerCase());
+        if (shape.tags > 0) {
+            List<String> tags = new ArrayList<>(shape.tags);
+            for (int i = 0; i < shape.tags; i++) {
+                tags.add("tag-" + Integer.toHexString(random.nextInt()));
+            }
+            payload.setTags(tags);
+        }
+        if (shape.bytes > 0) {
+            byte[] data = new byte[shape.bytes];
+            random.nextBytes(data);
+            payload.setData(data);
+        }
+        return payload;
+    }
+
+    /**
+     * 调用BenchService#echo的请求，methodId为0时按接口名与方法名调用
+     */
+    public static RpcRequest request(Shape shape, byte serializer, int methodId) {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(1);
+        request.setSerializer(serializer);
+        request.setTimeout(5000);
+        request.setMethodId(methodId);
+        request.setClassName(BenchService.class.getName());
+        request.setMethodName("echo");
+        request.setParameterTypes(new Class<?>[]{Payload.class});
+        request.setParameters(new Object[]{payload(shape)});
+        return request;
+    }
+
+    public static RpcResponse response(Shape shape, byte serializer) {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(1);
+        response.setSerializer(serializer);
+        response.setResult(payload(shape));
+        return response;
+    }
+}
@@ -0,0 +1,78 @@
+package com.miao.rpc.benchmark;
+
+import com.miao.rpc.benchmark.service.Payload;
+import com.miao.rpc.core.util.ProtostuffUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProtostuffUtil本身的开销：经过byte[]的旧路径与直接读写ByteBuf的路径对比，
+ * ByteBuf使用堆外内存，与编解码器中的情况相同
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private Payloads.Shape shape;
+
+    private Payload payload;
+    private byte[] bytes;
+    private ByteBuf out;
+    private ByteBuf in;
+
+    @Setup
+    public void setup() {
+        payload = Payloads.payload(shape);
+        bytes = ProtostuffUtil.serialize(payload);
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length);
+        in = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length);
+        in.writeBytes(bytes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+        in.release();
+    }
+
+    @Benchmark
+    public byte[] serializeToArray() {
+        return ProtostuffUtil.serialize(payload);
+    }
+
+    @Benchmark
+    public int serializeToByteBuf() {
+        out.clear();
+        return ProtostuffUtil.serialize(payload, out);
+    }
+
+    @Benchmark
+    public Payload deserializeFromArray() {
+        return ProtostuffUtil.deserialize(bytes, Payload.class);
+    }
+
+    @Benchmark
+    public Payload deserializeFromByteBuf() {
+        in.readerIndex(0);
+        return ProtostuffUtil.deserialize(in, in.readableBytes(), Payload.class);
+    }
+}
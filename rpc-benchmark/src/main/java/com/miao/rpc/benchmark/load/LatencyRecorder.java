@@ -0,0 +1,48 @@
+package com.miao.rpc.benchmark.load;
+
+import com.miao.rpc.core.metrics.Histogram;
+import com.miao.rpc.core.metrics.HistogramSnapshot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录每个请求的两种耗时：
+ * latency 从计划发出的时间算起，发送线程因为前面的请求变慢而推迟发出的时间也计算在内，
+ * 即修正了coordinated omission，反映调用方实际感受到的耗时；
+ * service 从实际发出的时间算起，只反映服务端与网络的处理时间
+ */
+public class LatencyRecorder {
+
+    private final Histogram latency = new Histogram();
+    private final Histogram service = new Histogram();
+    private final LongAdder errors = new LongAdder();
+
+    public void record(long intendedNanos, long sentNanos, long doneNanos, boolean error) {
+        latency.record(doneNanos - intendedNanos);
+        service.record(doneNanos - sentNanos);
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(latency.snapshot(), service.snapshot(), errors.sum());
+    }
+
+    public static class Snapshot {
+        final HistogramSnapshot latency;
+        final HistogramSnapshot service;
+        final long errors;
+
+        Snapshot(HistogramSnapshot latency, HistogramSnapshot service, long errors) {
+            this.latency = latency;
+            this.service = service;
+            this.errors = errors;
+        }
+
+        Snapshot since(Snapshot previous) {
+            return new Snapshot(latency.since(previous.latency), service.since(previous.service),
+                    errors - previous.errors);
+        }
+    }
+}
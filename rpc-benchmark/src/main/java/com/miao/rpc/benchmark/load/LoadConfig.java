@@ -0,0 +1,93 @@
+package com.miao.rpc.benchmark.load;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 负载生成器的参数，命令行中以 --名称=值 的形式给出，比如 --mode=OPEN --rates=2000,4000,8000
+ */
+@Data
+public class LoadConfig {
+
+    public enum Mode {
+        CLOSED, // 固定数量的线程，每个线程收到响应后才发出下一个请求
+        OPEN // 按固定的到达速率发出请求，不等待之前的请求完成
+    }
+
+    private Mode mode = Mode.CLOSED;
+    private int threads = 16; // CLOSED：并发线程数
+    // OPEN：每秒请求数，给出多个时依次压测每一档；CLOSED：全部线程合计的目标速率，0表示不限速
+    private List<Integer> rates = new ArrayList<>();
+    private int duration = 30; // 每一档的压测时间(秒)
+    private int warmup = 5; // 正式压测前的预热时间(秒)，结果不计入
+    private int reportInterval = 5; // 输出区间统计的间隔(秒)
+    private int maxOutstanding = 10000; // OPEN：最多同时在途的请求数，达到后发送线程等待
+    private String method = "hello"; // 调用的HelloService方法：hello(@RpcInline)或helloAsync(经过业务线程池)
+    private String registry; // 注册中心地址，格式见Registries，为空时使用进程内的注册中心local://load
+    private boolean localServer = true; // 是否在本进程内启动RpcServer
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 2; // 本地服务端的业务线程数
+    private int queueCapacity = 1024; // 本地服务端业务线程池的队列长度
+
+    public static LoadConfig parse(String[] args) {
+        LoadConfig config = new LoadConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("参数格式应为 --名称=值：" + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "mode":
+                    config.mode = Mode.valueOf(value.toUpperCase());
+                    break;
+                case "threads":
+                    config.threads = Integer.parseInt(value);
+                    break;
+                case "rate":
+                case "rates":
+                    for (String rate : value.split(",")) {
+                        config.rates.add(Integer.parseInt(rate.trim()));
+                    }
+                    break;
+                case "duration":
+                    config.duration = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    config.warmup = Integer.parseInt(value);
+                    break;
+                case "reportInterval":
+                    config.reportInterval = Integer.parseInt(value);
+                    break;
+                case "maxOutstanding":
+                    config.maxOutstanding = Integer.parseInt(value);
+                    break;
+                case "method":
+                    config.method = value;
+                    break;
+                case "registry":
+                    config.registry = value;
+                    break;
+                case "localServer":
+                    config.localServer = Boolean.parseBoolean(value);
+                    break;
+                case "workerThreads":
+                    config.workerThreads = Integer.parseInt(value);
+                    break;
+                case "queueCapacity":
+                    config.queueCapacity = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的参数：" + name);
+            }
+        }
+        if (config.mode == Mode.OPEN && config.rates.isEmpty()) {
+            throw new IllegalArgumentException("OPEN模式需要给出 --rates");
+        }
+        if (config.rates.isEmpty()) {
+            config.rates.add(0);
+        }
+        return config;
+    }
+}
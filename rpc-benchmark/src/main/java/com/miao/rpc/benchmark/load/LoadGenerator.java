@@ -0,0 +1,268 @@
+package com.miao.rpc.benchmark.load;
+
+import com.miao.rpc.benchmark.BenchmarkSupport;
+import com.miao.rpc.core.client.RpcClient;
+import com.miao.rpc.core.loadBalance.impl.RandomLoadBalance;
+import com.miao.rpc.core.metrics.HistogramSnapshot;
+import com.miao.rpc.core.registry.ServiceDiscovery;
+import com.miao.rpc.core.registry.ServiceRegistry;
+import com.miao.rpc.core.server.ExecutorStats;
+import com.miao.rpc.core.server.RpcServer;
+import com.miao.rpc.sample.api.domain.User;
+import com.miao.rpc.sample.api.service.HelloService;
+import com.miao.rpc.sample.server.impl.HelloServiceImpl;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 针对sample中HelloService的负载生成器，用于容量评估与长时间的稳定性测试。
+ *
+ * CLOSED模式下固定数量的线程各自同步调用，可以用rates限定合计速率；OPEN模式按固定的到达速率发出异步调用，
+ * 不受之前请求的快慢影响，给出多档速率时依次压测，用来找出耗时陡增的拐点。
+ * 两种模式都按计划发出的时间计算耗时(见LatencyRecorder)，发送被推迟的时间也计入，避免coordinated omission
+ *
+ * 默认在本进程内启动RpcServer并使用进程内的注册中心(local://)，也可以通过registry与localServer压测已有的服务端：
+ * java -cp benchmarks-jar-with-dependencies.jar com.miao.rpc.benchmark.load.LoadGenerator --mode=OPEN --rates=5000,10000,20000
+ */
+public class LoadGenerator {
+
+    private static final Class<?>[] PARAMETER_TYPES = {User.class};
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final LoadConfig config;
+    private final Object[] parameters = {new User("load")};
+    private final AtomicInteger outstanding = new AtomicInteger(); // OPEN模式下的在途请求数
+    private RpcServer server;
+    private RpcClient client;
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator(LoadConfig.parse(args));
+        try {
+            generator.start();
+            generator.run();
+        } finally {
+            generator.stop();
+        }
+        System.exit(0);
+    }
+
+    public void start() throws Exception {
+        String registry = config.getRegistry();
+        if (registry == null) {
+            registry = "local://load";
+        }
+        if (config.isLocalServer()) {
+            GenericApplicationContext context = new GenericApplicationContext();
+            context.registerBeanDefinition("helloService", new RootBeanDefinition(HelloServiceImpl.class));
+            context.refresh();
+            server = new RpcServer(HelloServiceImpl.class.getPackage().getName(), new ServiceRegistry(registry));
+            server.setApplicationContext(context);
+            server.setWorkerThreads(config.getWorkerThreads());
+            server.setQueueCapacity(config.getQueueCapacity());
+            String serverAddress = "127.0.0.1:" + BenchmarkSupport.freePort();
+            Thread serverThread = new Thread(() -> server.run(serverAddress), "load-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+        }
+        client = new RpcClient();
+        ServiceDiscovery discovery = new ServiceDiscovery(registry, RandomLoadBalance::new);
+        BenchmarkSupport.awaitProvider(discovery, HelloService.class.getName(), 10000);
+        client.setDiscovery(discovery);
+        client.init();
+    }
+
+    public void run() throws InterruptedException {
+        System.out.println("压测参数：" + config);
+        if (config.getWarmup() > 0) {
+            System.out.println("预热" + config.getWarmup() + "秒");
+            runStep(config.getRates().get(0), config.getWarmup(), false);
+        }
+        List<StepResult> results = new ArrayList<>();
+        for (int rate : config.getRates()) {
+            results.add(runStep(rate, config.getDuration(), true));
+        }
+        printSummary(results);
+    }
+
+    public void stop() {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * 以指定速率压测一档，rate为0时(只用于CLOSED)不限速
+     */
+    private StepResult runStep(int rate, int seconds, boolean report) throws InterruptedException {
+        System.out.println(String.format(Locale.ROOT, "%s 目标速率：%s，持续%d秒", config.getMode(),
+                rate > 0 ? rate + "/s" : "不限", seconds));
+        LatencyRecorder recorder = new LatencyRecorder();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        if (report) {
+            LatencyRecorder.Snapshot[] previous = {recorder.snapshot()};
+            long startMillis = System.currentTimeMillis();
+            reporter.scheduleAtFixedRate(() -> {
+                LatencyRecorder.Snapshot current = recorder.snapshot();
+                printInterval((System.currentTimeMillis() - startMillis) / 1000, current.since(previous[0]));
+                previous[0] = current;
+            }, config.getReportInterval(), config.getReportInterval(), TimeUnit.SECONDS);
+        }
+        long start = System.nanoTime();
+        long end = start + seconds * NANOS_PER_SECOND;
+        try {
+            if (config.getMode() == LoadConfig.Mode.OPEN) {
+                runOpen(rate, start, end, recorder);
+            } else {
+                runClosed(rate, start, end, recorder);
+            }
+        } finally {
+            reporter.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new StepResult(rate, recorder.snapshot(), elapsed);
+    }
+
+    /**
+     * 每个线程收到响应后才发出下一个请求；限速时每个线程有自己的发出计划，
+     * 某个请求变慢使后面的请求晚于计划发出时，晚了的时间计入这些请求的耗时
+     */
+    private void runClosed(int rate, long start, long end, LatencyRecorder recorder) throws InterruptedException {
+        int threads = config.getThreads();
+        long interval = rate > 0 ? NANOS_PER_SECOND * threads / rate : 0; // 每个线程两次发出之间的计划间隔
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            long offset = interval * t / threads; // 各线程的计划错开，合起来是均匀的到达
+            Thread worker = new Thread(() -> {
+                for (long k = 0; ; k++) {
+                    long intended = interval > 0 ? start + offset + k * interval : System.nanoTime();
+                    if (intended >= end) {
+                        break;
+                    }
+                    waitUntil(intended);
+                    long sent = System.nanoTime();
+                    boolean error = false;
+                    try {
+                        call().join();
+                    } catch (Exception e) {
+                        error = true;
+                    }
+                    recorder.record(intended, sent, System.nanoTime(), error);
+                }
+            }, "load-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * 按计划的时间发出异步调用，不等待响应；在途请求达到maxOutstanding时等待，
+     * 等待的时间同样计入之后请求的耗时
+     */
+    private void runOpen(int rate, long start, long end, LatencyRecorder recorder) throws InterruptedException {
+        double period = (double) NANOS_PER_SECOND / rate;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * period);
+            if (intended >= end) {
+                break;
+            }
+            waitUntil(intended);
+            while (outstanding.get() >= config.getMaxOutstanding()) {
+                LockSupport.parkNanos(10_000);
+            }
+            long sent = System.nanoTime();
+            outstanding.incrementAndGet();
+            call().whenComplete((result, cause) -> {
+                recorder.record(intended, sent, System.nanoTime(), cause != null);
+                outstanding.decrementAndGet();
+            });
+        }
+        long drainDeadline = System.nanoTime() + 10 * NANOS_PER_SECOND;
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private CompletableFuture<Object> call() {
+        return client.invokeAsync(HelloService.class.getName(), config.getMethod(), PARAMETER_TYPES, parameters);
+    }
+
+    /**
+     * parkNanos的精度在几十微秒，剩余时间较短时改为让出CPU后重新检查
+     */
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > 100_000) {
+                LockSupport.parkNanos(remaining - 50_000);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void printInterval(long second, LatencyRecorder.Snapshot interval) {
+        HistogramSnapshot latency = interval.latency;
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT,
+                "[%4ds] %8.0f/s 错误%d 耗时(us) p50=%.0f p99=%.0f p999=%.0f max=%.0f 服务耗时p99=%.0f 在途%d",
+                second, (double) latency.getCount() / config.getReportInterval(), interval.errors,
+                micros(latency, 50), micros(latency, 99), micros(latency, 99.9), latency.getMax() / 1000.0,
+                micros(interval.service, 99), outstanding.get()));
+        if (server != null) {
+            ExecutorStats stats = server.getExecutorStats().get("default");
+            if (stats != null) {
+                line.append(" 服务端队列").append(stats.getQueueDepth()).append('/').append(stats.getQueueCapacity())
+                        .append(" 拒绝").append(stats.getRejectedTasks());
+            }
+        }
+        System.out.println(line);
+    }
+
+    private void printSummary(List<StepResult> results) {
+        System.out.println();
+        System.out.println("目标速率   实际速率    错误    p50(us)    p90(us)    p99(us)   p999(us)    max(us)  服务耗时p99(us)");
+        for (StepResult result : results) {
+            HistogramSnapshot latency = result.snapshot.latency;
+            double achieved = (double) latency.getCount() * NANOS_PER_SECOND / result.elapsedNanos;
+            System.out.println(String.format(Locale.ROOT, "%8s %10.0f %7d %10.0f %10.0f %10.0f %10.0f %10.0f %16.0f",
+                    result.rate > 0 ? String.valueOf(result.rate) : "-", achieved, result.snapshot.errors,
+                    micros(latency, 50), micros(latency, 90), micros(latency, 99), micros(latency, 99.9),
+                    latency.getMax() / 1000.0, micros(result.snapshot.service, 99)));
+        }
+    }
+
+    private static double micros(HistogramSnapshot histogram, double percentile) {
+        return histogram.valueAt(percentile) / 1000.0;
+    }
+
+    private static class StepResult {
+        final int rate;
+        final LatencyRecorder.Snapshot snapshot;
+        final long elapsedNanos;
+
+        StepResult(int rate, LatencyRecorder.Snapshot snapshot, long elapsedNanos) {
+            this.rate = rate;
+            this.snapshot = snapshot;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+}
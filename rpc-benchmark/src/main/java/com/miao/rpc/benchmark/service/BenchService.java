@@ -0,0 +1,10 @@
+package com.miao.rpc.benchmark.service;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface BenchService {
+
+    Payload echo(Payload payload);
+
+    CompletableFuture<Payload> echoAsync(Payload payload);
+}
@@ -0,0 +1,22 @@
+package com.miao.rpc.benchmark.service;
+
+import com.miao.rpc.core.annotation.RpcService;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 原样返回参数，测得的是框架本身的开销
+ */
+@RpcService
+public class BenchServiceImpl implements BenchService {
+
+    @Override
+    public Payload echo(Payload payload) {
+        return payload;
+    }
+
+    @Override
+    public CompletableFuture<Payload> echoAsync(Payload payload) {
+        return CompletableFuture.completedFuture(payload);
+    }
+}
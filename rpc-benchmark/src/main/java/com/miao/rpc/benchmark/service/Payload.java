@@ -0,0 +1,16 @@
+package com.miao.rpc.benchmark.service;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 压测用的参数/返回值，字段覆盖数字、字符串、集合与二进制，由Payloads按不同规模填充
+ */
+@Data
+public class Payload {
+    private long id;
+    private String name;
+    private List<String> tags;
+    private byte[] data;
+}
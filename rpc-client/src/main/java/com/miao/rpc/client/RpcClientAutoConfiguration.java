@@ -1,22 +1,32 @@
 package com.miao.rpc.client;
 
 import com.miao.rpc.core.client.RpcClient;
+import com.miao.rpc.core.interceptor.LoggingInterceptor;
+import com.miao.rpc.core.interceptor.RpcInterceptor;
 import com.miao.rpc.core.loadBalance.LoadBalance;
 import com.miao.rpc.core.loadBalance.impl.ConsistentHashLoadBalance;
 import com.miao.rpc.core.loadBalance.impl.RandomLoadBalance;
+import com.miao.rpc.core.metrics.MetricsHttpServer;
 import com.miao.rpc.core.proxy.RpcProxyFactoryBeanRegistry;
 import com.miao.rpc.core.registry.ServiceDiscovery;
+import com.miao.rpc.core.serialize.KryoSerializer;
 import com.miao.rpc.core.util.PropertityUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Scope;
 import org.springframework.core.annotation.Order;
 
+import java.io.IOException;
+import java.util.List;
+
 @Configuration
 @ConditionalOnMissingBean(RpcProxyFactoryBeanRegistry.class)
 @EnableConfigurationProperties(RpcClientProperties.class)
@@ -24,6 +34,8 @@ import org.springframework.core.annotation.Order;
 public class RpcClientAutoConfiguration {
     @Autowired
     private RpcClientProperties properties;
+    @Autowired(required = false)
+    private List<RpcInterceptor> interceptors; // 容器中的拦截器bean
     @Autowired
     private ApplicationContext applicationContext;
 
@@ -34,12 +46,15 @@ public class RpcClientAutoConfiguration {
     //https://stackoverflow.com/questions/41939494/springboot-cannot-enhance-configuration-bean-definition-beannameplaceholderreg
     private static RpcClient client = new RpcClient();
 
+    // 每个接口一个负载均衡实例，因此为prototype
     @Bean(name = "CONSISTENT_HASH")
+    @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
     public ConsistentHashLoadBalance consistentHashLoadBalance() {
         return new ConsistentHashLoadBalance();
     }
 
     @Bean(name = "RANDOM")
+    @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
     public RandomLoadBalance randomLoadBalance() {
         return new RandomLoadBalance();
     }
@@ -47,13 +62,48 @@ public class RpcClientAutoConfiguration {
     @Bean
     public RpcClient rpcClient() {
         log.info("初始化RpcClient设置discovery");
-        LoadBalance loadBalance = applicationContext.getBean(properties.getLoadBalanceStrategy(), LoadBalance.class);
-        ServiceDiscovery discovery = new ServiceDiscovery(properties.getRegistryAddress(), loadBalance);
+        String strategy = properties.getLoadBalanceStrategy();
+        ServiceDiscovery discovery = new ServiceDiscovery(properties.getRegistryAddress(),
+                () -> applicationContext.getBean(strategy, LoadBalance.class));
+        discovery.setZone(properties.getZone());
         client.setDiscovery(discovery);
+        client.setConnectionsPerAddress(properties.getConnectionsPerAddress());
+        client.setTimeout(properties.getTimeout());
+        client.setSerializer(properties.getSerializer());
+        KryoSerializer.allowPackages(properties.getKryoAllowedPackages());
+        client.setFlushConsolidation(properties.getFlushConsolidation());
+        client.setCompressThreshold(properties.getCompressThreshold());
+        client.setStreamWindow(properties.getStreamWindow());
+        client.setStreamChunkSize(properties.getStreamChunkSize());
+        client.setBatchSize(properties.getBatchSize());
+        client.setBatchWindowMicros(properties.getBatchWindowMicros());
+        client.setTransportConfig(properties.getTransport());
+        client.setTraceSampleInterval(properties.getTraceSampleInterval());
+        client.setMetricsEnabled(properties.isMetricsEnabled());
+        if (properties.isTraceLogging()) {
+            client.addInterceptor(new LoggingInterceptor());
+        }
+        if (interceptors != null) {
+            interceptors.forEach(client::addInterceptor);
+        }
         client.init();
         return client;
     }
 
+    /**
+     * 设置了rpc.metricsPort时在本机输出指标
+     */
+    @Bean(destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "rpc", name = "metricsPort")
+    public MetricsHttpServer rpcClientMetricsHttpServer(RpcClient rpcClient) throws IOException {
+        if (rpcClient.getMetrics() == null) {
+            throw new IllegalStateException("rpc.metricsEnabled=false时不能设置rpc.metricsPort");
+        }
+        MetricsHttpServer metricsServer = new MetricsHttpServer(properties.getMetricsPort(), rpcClient.getMetrics());
+        metricsServer.start();
+        return metricsServer;
+    }
+
     /**
      * Cannot enhance @Configuration bean definition 'com.miao.rpc.client.RpcClientAutoConfiguration'
      * since its singleton instance has been created too early.
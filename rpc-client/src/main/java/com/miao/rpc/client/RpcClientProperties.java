@@ -1,12 +1,32 @@
 package com.miao.rpc.client;
 
+import com.miao.rpc.core.transport.TransportConfig;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @ConfigurationProperties(prefix = "rpc")
 @Data
 public class RpcClientProperties {
-    private String registryAddress; // 注册中心地址
+    private String registryAddress; // 注册中心地址：zookeeper://、static://、file://、local://，没有协议名时为ZooKeeper
     private String clientBasePackage; // 请求发起类的包路径，扫描类需要该路径
     private String loadBalanceStrategy; // 负载均衡策略
+    private String zone; // 客户端所在的可用区，有同区的服务端时只调用它们
+    private String serializer = "protostuff"; // 握手时希望使用的序列化方式：protostuff、kryo
+    private List<String> kryoAllowedPackages = new ArrayList<>(); // 使用kryo时参数与返回值所在的包，反序列化只接受这些包及JDK基本类型
+    private long timeout = 5000; // 默认调用超时时间(毫秒)
+    private TransportConfig transport = new TransportConfig(); // rpc.transport.*：传输实现、IO线程数、socket参数、分配器
+    private boolean traceLogging = false; // 是否用LoggingInterceptor把请求事件打印到日志
+    private int traceSampleInterval = 1; // 拦截器的采样间隔，每多少个请求采样1个
+    private boolean metricsEnabled = true; // 是否按方法统计请求数、耗时分布等，通过getMetrics拉取
+    private Integer metricsPort; // 设置后在127.0.0.1的该端口上以HTTP输出指标：/metrics、/metrics?format=json
+    private int flushConsolidation = 256; // 合并多少次flush后立即真正flush，0表示不合并
+    private int streamWindow = 256; // 流式调用时本端最多缓冲的元素数，消费慢时服务端暂停发送
+    private int streamChunkSize = 64; // 上传流式参数时每帧最多携带的元素数，元素较大时调小，保证每帧不超过1MB
+    private int batchSize = 0; // 发往同一连接的请求每批最多合并多少个，不大于1表示不合并
+    private long batchWindowMicros = 100; // 合并请求时第一个请求最多等待的时间(微秒)
+    private int compressThreshold = 0; // 请求消息体达到多少字节时压缩，0表示不压缩
+    private int connectionsPerAddress = Runtime.getRuntime().availableProcessors(); // 每个服务器地址的连接数
 }
@@ -0,0 +1,16 @@
+package com.miao.rpc.core.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在服务接口或实现类的方法上，该方法直接在接收请求的Netty EventLoop线程上执行并写回响应，
+ * 省去切换到业务线程池及写响应时切回EventLoop的开销。
+ * 只适用于执行很快且不会阻塞的方法(如纯内存计算)，阻塞的方法会拖慢该EventLoop上的所有连接
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RpcInline {
+}
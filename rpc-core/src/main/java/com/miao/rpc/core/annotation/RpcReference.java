@@ -8,4 +8,13 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface RpcReference {
+    /**
+     * 该引用所有方法的调用超时时间(毫秒)，0表示使用客户端的默认值，方法上的@RpcTimeout优先
+     */
+    long timeout() default 0;
+
+    /**
+     * 该引用使用的序列化方式，如 protostuff、kryo，为空表示使用连接握手时协商的序列化方式
+     */
+    String serializer() default "";
 }
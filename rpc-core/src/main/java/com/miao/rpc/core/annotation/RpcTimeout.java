@@ -0,0 +1,15 @@
+package com.miao.rpc.core.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在服务接口的方法上，指定该方法的调用超时时间(毫秒)，优先于@RpcReference及客户端的默认值
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RpcTimeout {
+    long value();
+}
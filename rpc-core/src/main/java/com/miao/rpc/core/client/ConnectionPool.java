@@ -0,0 +1,99 @@
+package com.miao.rpc.core.client;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个服务器地址的连接池，每个地址维护固定数量的channel，
+ * 每次请求轮询选取一个channel，这样请求会分散到多个连接及多个EventLoop上。
+ *
+ * channel采用懒加载的方式建立，某个槽位的channel失效后，下次被选中时重新连接。
+ * 槽位中保存的是连接的ChannelFuture，连接建立期间选中该槽位的请求拿到同一个future，不会阻塞在锁上
+ */
+@Slf4j
+public class ConnectionPool {
+
+    private final String address;
+    private final String host;
+    private final int port;
+    private final Bootstrap bootstrap;
+    private final ChannelFuture[] channels;
+    private final Object[] locks; // 每个槽位一把锁，避免同一槽位被并发重复连接，锁内只发起连接而不等待
+    private final AtomicInteger index = new AtomicInteger();
+    private volatile boolean closed;
+
+    // 连接池关闭之后才建立完成的连接直接关闭，避免泄漏
+    private final ChannelFutureListener closeIfPoolClosed = future -> {
+        if (closed) {
+            future.channel().close();
+        }
+    };
+
+    public ConnectionPool(String address, Bootstrap bootstrap, int size) {
+        String[] hostAndPort = address.split(":");
+        this.address = address;
+        this.host = hostAndPort[0];
+        this.port = Integer.parseInt(hostAndPort[1]);
+        this.bootstrap = bootstrap;
+        this.channels = new ChannelFuture[size];
+        this.locks = new Object[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 轮询选取一个槽位，返回其连接的future：已连接时是已完成的future，正在连接时是同一个未完成的future，
+     * 槽位为空或channel已失效时发起新的连接。不会阻塞调用线程，可以在IO线程中调用
+     */
+    public ChannelFuture acquire() {
+        if (closed) {
+            throw new IllegalStateException("连接池已关闭：" + address);
+        }
+        int i = (index.getAndIncrement() & Integer.MAX_VALUE) % channels.length;
+        ChannelFuture future = channels[i];
+        if (usable(future)) {
+            return future;
+        }
+        synchronized (locks[i]) {
+            future = channels[i];
+            if (!usable(future)) {
+                log.info("连接服务器：{}，槽位：{}", address, i);
+                future = bootstrap.connect(host, port);
+                future.addListener(closeIfPoolClosed);
+                channels[i] = future;
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 正在连接，或者已经连接且channel仍然可用
+     */
+    private static boolean usable(ChannelFuture future) {
+        return future != null && (!future.isDone() || future.channel().isActive());
+    }
+
+    /**
+     * 关闭池中全部连接，地址下线或客户端关闭时调用。正在建立的连接随之失败，
+     * 与acquire并发时新建立的连接由closeIfPoolClosed关闭
+     */
+    public void close() {
+        closed = true;
+        for (int i = 0; i < channels.length; i++) {
+            ChannelFuture future = channels[i];
+            if (future != null) {
+                future.channel().close();
+                channels[i] = null;
+            }
+        }
+    }
+
+    public String getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,117 @@
+package com.miao.rpc.core.client;
+
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.metrics.MethodMetrics;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+/**
+ * 一个已发出但还未收到响应的请求，记录请求信息，结果future，重试次数以及发送时间
+ *
+ * 同时它也是该请求的超时任务，由时间轮在超时时调用run：从在途请求表中移除自己并以超时异常唤醒请求线程，
+ * 正常收到响应时取消该任务
+ */
+public class InFlightRequest implements TimerTask {
+
+    private final RpcRequest request;
+    private final RpcResponseFuture future;
+    private final InFlightTable table; // 所在的在途请求表
+    private final long createTime; // 第一次发送的时间
+    private final long startNanos; // 第一次发送的时间(System.nanoTime)，用于计算耗时
+    private final Interceptors interceptors;
+    private volatile long sendTime; // 最近一次发送(包括重试)的时间
+    private volatile int retries; // 只在该channel的EventLoop线程中修改
+    private volatile boolean uploading; // 带有流式参数，数据源已被消费，不能重新发送
+    private volatile Timeout timeout;
+
+    public InFlightRequest(RpcRequest request, RpcResponseFuture future, InFlightTable table,
+                           Interceptors interceptors) {
+        this.request = request;
+        this.future = future;
+        this.table = table;
+        this.interceptors = interceptors;
+        this.startNanos = System.nanoTime();
+        this.createTime = System.currentTimeMillis();
+        this.sendTime = createTime;
+    }
+
+    /**
+     * 重新发送前调用，返回本次是第几次重试
+     */
+    public int retry() {
+        sendTime = System.currentTimeMillis();
+        return ++retries;
+    }
+
+    public void markUploading() {
+        this.uploading = true;
+    }
+
+    /**
+     * 出错后能否重新发送，上传过流式参数的请求不能
+     */
+    public boolean isRetryable() {
+        return !uploading;
+    }
+
+    /**
+     * 以响应结束本次请求，取消超时任务
+     */
+    public void complete(RpcResponse response) {
+        Timeout t = this.timeout;
+        if (t != null) {
+            t.cancel();
+        }
+        finish(response);
+    }
+
+    @Override
+    public void run(Timeout timeout) {
+        if (table.remove(request.getRequestId()) == this) {
+            RpcResponse response = new RpcResponse();
+            response.setRequestId(request.getRequestId());
+            response.setCause(new RpcTimeoutException("请求" + request.getClassName() + "#"
+                    + request.getMethodName() + "在" + request.getTimeout() + "ms内未收到响应"));
+            finish(response);
+        }
+    }
+
+    private void finish(RpcResponse response) {
+        long elapsed = System.nanoTime() - startNanos;
+        MethodMetrics metrics = request.getMetrics();
+        if (metrics != null) {
+            metrics.recordResponseBytes(response.getBytes());
+            metrics.complete(elapsed, response.hasError());
+        }
+        if (interceptors.sampled(request.getRequestId())) {
+            interceptors.onComplete(request, response, elapsed);
+        }
+        future.setResponse(response);
+    }
+
+    public void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    public RpcRequest getRequest() {
+        return request;
+    }
+
+    public RpcResponseFuture getFuture() {
+        return future;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public long getSendTime() {
+        return sendTime;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+}
@@ -0,0 +1,102 @@
+package com.miao.rpc.core.client;
+
+import com.miao.rpc.core.domain.RpcResponse;
+import io.netty.util.collection.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个channel一张在途请求表，requestId -> InFlightRequest，
+ * 同一个连接上可以同时有多个请求在途，响应、重试及清理都根据requestId找到对应的请求，
+ * 而不是依赖channel上"当前请求"这样的单一状态
+ *
+ * requestId由本表按连接单调递增分配，表按requestId分段(stripe)，每段是一个以long为键的开放寻址表，
+ * 由各自的锁保护，连续的id均匀落在各段上，请求的登记与匹配不需要装箱，也不会为每个请求分配节点对象
+ */
+public class InFlightTable {
+
+    private static final int STRIPES = 16; // 必须是2的幂
+
+    private final AtomicLong idGenerator = new AtomicLong();
+    @SuppressWarnings("unchecked")
+    private final LongObjectHashMap<InFlightRequest>[] stripes = new LongObjectHashMap[STRIPES];
+
+    public InFlightTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongObjectHashMap<>();
+        }
+    }
+
+    /**
+     * 分配本连接上的下一个requestId
+     */
+    public long nextId() {
+        return idGenerator.incrementAndGet();
+    }
+
+    public void put(InFlightRequest inFlight) {
+        long id = inFlight.getRequest().getRequestId();
+        LongObjectHashMap<InFlightRequest> stripe = stripe(id);
+        synchronized (stripe) {
+            stripe.put(id, inFlight);
+        }
+    }
+
+    public InFlightRequest get(long requestId) {
+        LongObjectHashMap<InFlightRequest> stripe = stripe(requestId);
+        synchronized (stripe) {
+            return stripe.get(requestId);
+        }
+    }
+
+    public InFlightRequest remove(long requestId) {
+        LongObjectHashMap<InFlightRequest> stripe = stripe(requestId);
+        synchronized (stripe) {
+            return stripe.remove(requestId);
+        }
+    }
+
+    /**
+     * 当前全部在途请求的快照，只在异常处理等非常规路径上使用
+     */
+    public List<InFlightRequest> values() {
+        List<InFlightRequest> values = new ArrayList<>();
+        for (LongObjectHashMap<InFlightRequest> stripe : stripes) {
+            synchronized (stripe) {
+                values.addAll(stripe.values());
+            }
+        }
+        return values;
+    }
+
+    public int size() {
+        int size = 0;
+        for (LongObjectHashMap<InFlightRequest> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 连接断开等情况下，唤醒该channel上全部在途请求的请求线程
+     */
+    public void failAll(Throwable cause) {
+        for (InFlightRequest inFlight : values()) {
+            long id = inFlight.getRequest().getRequestId();
+            if (remove(id) != null) {
+                RpcResponse response = new RpcResponse();
+                response.setRequestId(id);
+                response.setCause(cause);
+                inFlight.complete(response);
+            }
+        }
+    }
+
+    private LongObjectHashMap<InFlightRequest> stripe(long requestId) {
+        return stripes[(int) requestId & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,86 @@
+package com.miao.rpc.core.client;
+
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcBatch;
+import com.miao.rpc.core.domain.RpcRequest;
+import io.netty.channel.Channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端的请求合并，每个连接一个。请求线程只把请求放入队列，第一个请求入队后windowMicros之内、
+ * 或者攒满maxSize个时，由该连接的EventLoop一次取出全部请求：多于一个的合并成BATCH帧，
+ * 最后只flush一次，减少小请求的编码次数、帧数与系统调用次数。
+ *
+ * 同一批中的请求必须使用相同的序列化方式，序列化方式不同或超过maxSize时另起一批；只有一个请求时仍按普通请求发送。
+ * 服务端在握手中声明支持BATCH帧后才会使用，流式调用不经过这里
+ */
+public class RequestBatcher implements Runnable {
+
+    private final Channel channel;
+    private final int maxSize; // 每批最多的请求数
+    private final long windowMicros; // 第一个请求入队后最多等待的时间(微秒)
+    private final Queue<RpcRequest> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(); // 队列中的请求数，只用于判断是否攒满
+    private final AtomicBoolean scheduled = new AtomicBoolean(); // 是否已有等待中的定时发送
+
+    public RequestBatcher(Channel channel, int maxSize, long windowMicros) {
+        this.channel = channel;
+        this.maxSize = maxSize;
+        this.windowMicros = windowMicros;
+    }
+
+    /**
+     * 在请求线程上调用，请求之后由EventLoop写出
+     */
+    public void add(RpcRequest request) {
+        pending.add(request);
+        if (size.incrementAndGet() == maxSize) {
+            channel.eventLoop().execute(this); // 攒满一批，不再等待
+        } else if (scheduled.compareAndSet(false, true)) {
+            channel.eventLoop().schedule(this, windowMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * 在EventLoop上取出队列中的全部请求并写出。先清除定时标记再取，之后入队的请求会重新安排发送，不会被遗漏
+     */
+    @Override
+    public void run() {
+        scheduled.set(false);
+        List<RpcRequest> group = new ArrayList<>();
+        boolean written = false;
+        RpcRequest request;
+        while ((request = pending.poll()) != null) {
+            size.decrementAndGet();
+            if (!group.isEmpty() && (group.size() >= maxSize
+                    || group.get(0).getSerializer() != request.getSerializer())) {
+                write(group);
+                written = true;
+                group = new ArrayList<>();
+            }
+            group.add(request);
+        }
+        if (!group.isEmpty()) {
+            write(group);
+            written = true;
+        }
+        if (written) {
+            channel.flush();
+        }
+    }
+
+    private void write(List<RpcRequest> group) {
+        if (group.size() == 1) {
+            channel.write(Message.buildRequest(group.get(0)));
+        } else {
+            channel.write(Message.buildBatch(RpcBatch.ofRequests(group)));
+        }
+    }
+}
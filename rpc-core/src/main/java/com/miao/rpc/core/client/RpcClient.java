@@ -1,30 +1,55 @@
 package com.miao.rpc.core.client;
 
-import com.github.rholder.retry.*;
+import com.miao.rpc.core.coder.ProtocolHeader;
 import com.miao.rpc.core.coder.RpcDecoder;
 import com.miao.rpc.core.coder.RpcEncoder;
 import com.miao.rpc.core.constant.Constant.ConnectionFailureStrategy;
+import com.miao.rpc.core.domain.Handshake;
 import com.miao.rpc.core.domain.Message;
 import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.interceptor.RpcInterceptor;
+import com.miao.rpc.core.metrics.MethodMetrics;
+import com.miao.rpc.core.metrics.RpcMetrics;
 import com.miao.rpc.core.registry.ServiceDiscovery;
-import com.miao.rpc.core.registry.ServiceRegistry;
+import com.miao.rpc.core.serialize.Serializers;
+import com.miao.rpc.core.stream.InboundStream;
+import com.miao.rpc.core.stream.OutboundStream;
+import com.miao.rpc.core.stream.RpcStreams;
+import com.miao.rpc.core.stream.StreamTable;
+import com.miao.rpc.core.transport.FlushConsolidation;
+import com.miao.rpc.core.transport.FlushStats;
+import com.miao.rpc.core.transport.Transport;
+import com.miao.rpc.core.transport.TransportConfig;
+import com.miao.rpc.core.util.MethodSignature;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
 
 import java.rmi.server.ServerNotActiveException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.MAX_FRAME_LENGTH;
 import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_FIELD_OFFSET;
@@ -39,122 +64,204 @@ public class RpcClient {
     private ServiceDiscovery discovery;
     private String clientID = UUID.randomUUID().toString(); // 用于ConsistentHashLoadBalance
     private Bootstrap bootstrap;
-    private Channel socketChannel;
     private EventLoopGroup group;
-    // 每个request都有个requestId，其结果封装成RpcResponseFuture
-    // 该map存储的就是这种关系，为了保证安全，选用ConcurrentHashMap
-    private Map<String, RpcResponseFuture> requestWithItsResponse;
-    public static final AttributeKey<RpcRequest> CURRENT_REQUEST = AttributeKey.valueOf("current.request");
+    // 每个服务器地址对应一个连接池，每次请求时才选取地址及channel，而不是在init时固定一个连接
+    private Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+    private int connectionsPerAddress = Runtime.getRuntime().availableProcessors(); // 每个地址的连接数
+    // 每个channel绑定一张在途请求表，requestId -> InFlightRequest(请求信息，RpcResponseFuture，重试次数，发送时间)
+    // 同一连接上的多个并发请求各自独立地完成、重试与清理
+    public static final AttributeKey<InFlightTable> IN_FLIGHT = AttributeKey.valueOf("in.flight");
+    // 每个channel上正在进行的流，流的id即请求的requestId，与在途请求共用同一个分配器
+    public static final AttributeKey<StreamTable> STREAMS = AttributeKey.valueOf("streams");
+    // 开启请求合并时每个channel的合并队列
+    public static final AttributeKey<RequestBatcher> BATCHER = AttributeKey.valueOf("batcher");
+    // 全部在途请求共用一个时间轮来处理超时，添加与取消都是O(1)，不需要为每个请求占用线程
+    private static final HashedWheelTimer TIMEOUT_TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("rpc-timeout", true), 10, TimeUnit.MILLISECONDS, 512);
+    private static final int CONNECT_ATTEMPTS = 3; // 获取连接最多尝试的次数，每次都重新选取服务器地址
+    private long timeout = 5000; // 默认调用超时时间(毫秒)
+    // 连接建立后与服务端握手协商的结果，记录该连接默认的序列化方式及服务端支持的序列化方式
+    public static final AttributeKey<Handshake> HANDSHAKE = AttributeKey.valueOf("handshake");
+    private byte serializer = Serializers.DEFAULT_ID; // 握手时希望使用的序列化方式
+    private TransportConfig transportConfig = new TransportConfig(); // 传输实现、线程数与socket参数
+    private List<RpcInterceptor> interceptorList = new ArrayList<>(); // 通过addInterceptor注册的拦截器
+    private int traceSampleInterval = 1; // 拦截器的采样间隔，每多少个请求采样1个
+    private Interceptors interceptors = Interceptors.NONE;
+    private int flushConsolidation = 256; // 合并多少次flush后立即真正flush，0表示不合并
+    private int compressThreshold = 0; // 请求消息体达到多少字节时压缩，0表示不压缩
+    private int streamWindow = 256; // 流式结果最多缓冲的元素数
+    private int streamChunkSize = 64; // 上传流式参数时每帧最多携带的元素数
+    private ExecutorService streamExecutor; // 读取调用方传入的流式参数(可能阻塞)并上传
+    private int batchSize = 0; // 每批最多合并的请求数，不大于1表示不合并
+    private long batchWindowMicros = 100; // 合并请求时第一个请求最多等待的时间(微秒)
+    private final FlushStats flushStats = new FlushStats(); // 全部连接共用的flush批大小统计
+    private RpcMetrics metrics = new RpcMetrics("client"); // 按方法统计的请求数、耗时等，null表示不统计
 
     public void init() {
         log.info("初始化RPC客户端");
-        this.group = new NioEventLoopGroup();
-        this.requestWithItsResponse = new ConcurrentHashMap<>();
+        this.interceptors = Interceptors.of(interceptorList, traceSampleInterval);
+        this.streamExecutor = Executors.newCachedThreadPool(new DefaultThreadFactory("rpc-client-stream", true));
+        Transport transport = transportConfig.transport();
+        log.info("客户端使用的传输实现：{}", transport);
+        this.group = transport.newEventLoopGroup(transportConfig.getIoThreads(), "rpc-client-io");
         this.bootstrap = new Bootstrap();
-        this.bootstrap.group(group).channel(NioSocketChannel.class)
+        transportConfig.applyTo(bootstrap); // TCP_NODELAY、收发缓冲区、ByteBuf分配器
+        this.bootstrap.group(group).channel(transport.socketChannelClass())
                 .handler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel ch) throws Exception {
+                        InFlightTable inFlightTable = new InFlightTable();
+                        ch.attr(IN_FLIGHT).set(inFlightTable);
+                        StreamTable streams = new StreamTable();
+                        ch.attr(STREAMS).set(streams);
+                        if (batchSize > 1) {
+                            ch.attr(BATCHER).set(new RequestBatcher(ch, batchSize, batchWindowMicros));
+                        }
                         ch.pipeline()
                                 .addLast("IdleStateHandler", new IdleStateHandler(0, 7, 0))
-                                .addLast("LengthFieldPrepender", new LengthFieldPrepender(LENGTH_FIELD_LENGTH, LENGTH_ADJUSTMENT))
-                                .addLast("RpcEncoder", new RpcEncoder())
+                                .addLast("RpcEncoder", new RpcEncoder(interceptors, compressThreshold))
                                 .addLast("LengthFieldBasedFrameDecoder", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, LENGTH_FIELD_OFFSET,
                                         LENGTH_FIELD_LENGTH, LENGTH_ADJUSTMENT, INITIAL_BYTES_TO_STRIP))
-                                .addLast("RpcDecoder", new RpcDecoder())
-                                .addLast("RpcClientHandler", new RpcClientHandler(RpcClient.this, requestWithItsResponse));
+                                .addLast("RpcDecoder", new RpcDecoder(interceptors))
+                                .addLast("RpcClientHandler", new RpcClientHandler(RpcClient.this, inFlightTable, streams));
+                        FlushConsolidation.install(ch.pipeline(), flushConsolidation, flushStats);
                     }
                 });
-        try {
-            this.socketChannel = connect();
-            log.info("客户端初始化完毕");
-        } catch (ServerNotActiveException | InterruptedException e) {
-            log.error("", e);
-            handleException();
+        // 服务器下线后关闭其连接池
+        discovery.setAddressListener(this::removeStalePools);
+        // 不再预先建立连接：各接口的提供者在创建代理(subscribe)或第一次调用时才开始watch，连接按需建立
+        log.info("客户端初始化完毕");
+    }
+
+    /**
+     * 提前watch接口的提供者，第一次调用时不必再等待注册中心
+     * @param service 接口名
+     */
+    public void subscribe(String service) {
+        if (discovery != null) {
+            discovery.subscribe(service);
         }
     }
 
     /**
      * 连接失败或IO时失败均会调用此方法处理异常
+     * @param channel 出错的连接，为null表示无法获得任何连接
      */
-    public void handleException() {
+    public void handleException(Channel channel) {
         if (connectionFailureStrategy == ConnectionFailureStrategy.CLOSE) {
             log.info("连接失败的处理策略为直接关闭， 关闭客户端");
             this.close();
         } else if (connectionFailureStrategy == ConnectionFailureStrategy.RETRY) {
-            log.info("异常处理策略为：RETRY，开始重新连接");
-            try {
-                if (this.socketChannel != null) {
-                    socketChannel.close().sync();
-                    log.info("旧连接已关闭");
-                }
-                this.socketChannel = reconnect();
-            } catch (ExecutionException e) {
-                log.error("重试过程中抛出异常，关闭客户端", e);
-                this.close();
-            } catch (RetryException e) {
-                log.error("重试次数达到上限， 关闭客户端", e);
-                this.close();
-            } catch (InterruptedException e) {
-                log.info("就链接关闭失败，", e);
+            // 关闭出错的连接，连接池在该槽位下次被选中时会重新建立连接
+            log.info("异常处理策略为：RETRY，关闭出错的连接，之后的请求会重新建立连接");
+            if (channel != null) {
+                channel.close();
             }
         }
     }
 
     /**
-     * 关闭socketChannel， 关闭zookeeper，NioEventLoopGroup
+     * 关闭全部连接池， 关闭zookeeper，NioEventLoopGroup
      */
     public void close() {
         try {
-            if (this.socketChannel != null) {
-                socketChannel.close().sync();
+            for (ConnectionPool pool : pools.values()) {
+                pool.close();
             }
-        } catch (InterruptedException e) {
-            log.error("", e);
+            pools.clear();
         } finally {
             this.discovery.close(); // 关闭zookeeper
             group.shutdownGracefully();
+            streamExecutor.shutdownNow();
         }
     }
 
     /**
-     * 实现重新连接的重试策略
-     * @return
+     * 异步获取连接，失败时在EventLoop上延迟重试，第n次失败后等待n-1秒，每次重试都会重新选取服务器地址。
+     * 整个过程不阻塞调用线程，可以在IO线程(比如上一个调用的回调)中调用
+     * @param service 接口名，只在导出该接口的服务端中选取
+     * @return 以可用的channel完成，全部尝试失败时以最后一次的异常结束
      */
-    private Channel reconnect() throws ExecutionException, RetryException {
-        Retryer<Channel> retryer = RetryerBuilder.<Channel>newBuilder()
-                .retryIfExceptionOfType(Exception.class)
-                .withWaitStrategy(WaitStrategies.incrementingWait(2,
-                        TimeUnit.SECONDS, 1, TimeUnit.SECONDS))
-                .withStopStrategy(StopStrategies.stopAfterAttempt(2))
-                .build();
-        return retryer.call(() -> {
-            log.info("重新连接中...");
-            return connect();
-        });
+    private CompletableFuture<Channel> acquireChannel(String service) {
+        CompletableFuture<Channel> result = new CompletableFuture<>();
+        connect(service, 1, result);
+        return result;
     }
 
     /**
      * RpcClientHandler 是客户端handler链中最后一个inbound handler，在其exceptionCaught对一场进行处理，
      * 发生异常便重新发送信息
      */
-    public void reExecute(RpcRequest request) {
+    public void reExecute(Channel channel, RpcRequest request) {
         log.info(request.getRequestId() + " 重新请求");
-        this.socketChannel.writeAndFlush(Message.buildRequest(request));
+        channel.writeAndFlush(Message.buildRequest(request));
+        if (interceptors.sampled(request.getRequestId())) {
+            interceptors.onSend(request);
+        }
+    }
+
+    /**
+     * 由负载均衡选出本次请求的服务器地址，再从该地址的连接池中轮询一个channel，
+     * 连接建立完成时在其ChannelFuture的回调中完成result
+     * @param attempt 第几次尝试，从1开始
+     */
+    private void connect(String service, int attempt, CompletableFuture<Channel> result) {
+        discovery.discoverAsync(service, clientID).whenComplete((serverAddress, error) -> {
+            try {
+                if (error != null) {
+                    retryConnect(service, attempt, result, error);
+                } else if (serverAddress == null) {
+                    retryConnect(service, attempt, result,
+                            new ServerNotActiveException("无法获得" + service + "的服务器地址"));
+                } else {
+                    ConnectionPool pool = pools.computeIfAbsent(serverAddress,
+                            address -> new ConnectionPool(address, bootstrap, connectionsPerAddress));
+                    // 同一槽位的并发请求等待同一个连接
+                    pool.acquire().addListener((ChannelFutureListener) future -> {
+                        if (future.isSuccess() && future.channel().isActive()) {
+                            result.complete(future.channel());
+                        } else {
+                            retryConnect(service, attempt, result, future.cause() != null ? future.cause()
+                                    : new IllegalStateException("连接已关闭：" + serverAddress));
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                retryConnect(service, attempt, result, e); // 连接池刚被关闭等
+            }
+        });
     }
 
-    private Channel connect() throws ServerNotActiveException, InterruptedException {
-        log.info("向ZK查询服务器地址");
-        String serverAddress = discovery.discover(clientID);
-        log.info("本次连接的地址为：{}", serverAddress);
-        if (serverAddress == null) {
-            throw new ServerNotActiveException("无法获得服务器地址");
+    private void retryConnect(String service, int attempt, CompletableFuture<Channel> result, Throwable cause) {
+        if (result.isDone()) {
+            return; // 调用已经超时
+        }
+        if (attempt >= CONNECT_ATTEMPTS || group.isShuttingDown()) {
+            result.completeExceptionally(cause);
+            return;
+        }
+        log.info("第{}次获取{}的连接失败：{}，稍后重试", attempt, service, cause.toString());
+        try {
+            group.next().schedule(() -> connect(service, attempt + 1, result), attempt - 1, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(cause); // 客户端正在关闭
+        }
+    }
+
+    /**
+     * 注册中心地址变化时调用，关闭已下线地址的连接池
+     */
+    private void removeStalePools(List<String> addresses) {
+        Set<String> alive = new HashSet<>(addresses);
+        for (String address : pools.keySet()) {
+            if (!alive.contains(address)) {
+                ConnectionPool pool = pools.remove(address);
+                if (pool != null) {
+                    log.info("服务器{}已下线，关闭其连接池", address);
+                    pool.close();
+                }
+            }
         }
-        String[] address = serverAddress.split(":");
-        String host = address[0];
-        Integer port = Integer.parseInt(address[1]);
-        ChannelFuture future = bootstrap.connect(host, port).sync();
-        return future.channel();
     }
 
     /**
@@ -163,27 +270,393 @@ public class RpcClient {
      * @return
      */
     public RpcResponseFuture execute(RpcRequest request) {
-        // 这里为了处理重连发生时，请求仍在继续的情况
-        while (!this.socketChannel.isActive()) {
-            try {
-                log.info("客户端连接未建立，等待连接完成");
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-        log.info("客户端发起请求:{}", request);
+        return execute(request, null);
+    }
+
+    /**
+     * 调用有流式参数的方法(见RpcStreams)，input为该参数的值(Iterator或Stream)，由服务端给出的credit控制上传速度，
+     * 请求中该参数的位置应为null。
+     * 超时时间从调用开始时计算，获取连接(包括重试)的时间也计算在内，发给服务端的是剩余的时间；
+     * 有流式参数时上传可能持续很久，上传的时间不计算在内，上传结束后再等待剩余的时间
+     * @param input 为null表示没有流式参数
+     */
+    public RpcResponseFuture execute(RpcRequest request, Object input) {
         //采用future模式，请求线程会立刻得到一个RpcResponseFuture对象，在结果未填充前getResponse会阻塞。
-        // 请求结果解析完成后，根据requestID获取该请求的RpcResponseFuture，调用setResponse填充结果并唤醒阻塞的请求线程
+        // 请求结果解析完成后，根据requestID从该channel的在途请求表中获取RpcResponseFuture，调用setResponse填充结果并唤醒阻塞的请求线程
         RpcResponseFuture responseFuture = new RpcResponseFuture();
-        this.requestWithItsResponse.put(request.getRequestId(), responseFuture);
-        this.socketChannel.attr(CURRENT_REQUEST).set(request); // 将请求信息与channel绑定，用于异常时重新请求使用
-        this.socketChannel.writeAndFlush(Message.buildRequest(request));
-        log.info("请求已发送");
+        long startNanos = System.nanoTime();
+        long timeoutMillis = request.getTimeout() > 0 ? request.getTimeout() : timeout;
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (metrics != null) {
+            MethodMetrics methodMetrics = metrics.method(signatureOf(request));
+            methodMetrics.start();
+            request.setMetrics(methodMetrics);
+        }
+        // 连接可用时在调用线程中直接发出，需要建立连接时在连接完成的回调中发出，调用线程不会被阻塞
+        CompletableFuture<Channel> channelFuture = acquireChannel(request.getClassName());
+        if (!channelFuture.isDone()) {
+            // 截止时间到了还没有获得连接时不再等待
+            Timeout acquireTimeout = TIMEOUT_TIMER.newTimeout(t -> channelFuture.completeExceptionally(
+                    new RpcTimeoutException("请求" + request.getClassName() + "#" + request.getMethodName()
+                            + "在" + timeoutMillis + "ms内未能获得服务器连接")), timeoutMillis, TimeUnit.MILLISECONDS);
+            channelFuture.whenComplete((channel, error) -> acquireTimeout.cancel());
+        }
+        channelFuture.whenComplete((channel, error) -> {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (error == null && remainingMillis <= 0) {
+                error = new RpcTimeoutException("请求" + request.getClassName() + "#" + request.getMethodName()
+                        + "在" + timeoutMillis + "ms内未能发出");
+            }
+            if (error instanceof RpcTimeoutException) {
+                fail(request, responseFuture, startNanos, error);
+                return;
+            }
+            if (error != null) {
+                log.error("无法获得可用的服务器连接", error);
+                handleException(null);
+                fail(request, responseFuture, startNanos, new IllegalStateException("无法获得可用的服务器连接", error));
+                return;
+            }
+            try {
+                request.setTimeout((int) remainingMillis); // 不大于timeoutMillis，已检查过范围
+                dispatch(channel, request, input, responseFuture);
+            } catch (RuntimeException e) {
+                // 在回调中发出时异常无法抛给调用方，以它结束本次调用
+                channel.attr(IN_FLIGHT).get().remove(request.getRequestId());
+                fail(request, responseFuture, startNanos, e);
+            }
+        });
         return responseFuture;
     }
 
+    /**
+     * 请求还没有登记到在途请求表时以异常结束本次调用
+     */
+    private static void fail(RpcRequest request, RpcResponseFuture responseFuture, long startNanos, Throwable cause) {
+        if (request.getMetrics() != null) {
+            request.getMetrics().complete(System.nanoTime() - startNanos, true);
+        }
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(request.getRequestId());
+        response.setCause(cause);
+        responseFuture.setResponse(response);
+    }
+
+    /**
+     * 在取得的连接上登记并发出请求
+     */
+    private void dispatch(Channel channel, RpcRequest request, Object input, RpcResponseFuture responseFuture) {
+        // requestId由该channel的在途请求表分配，登记到表中用于响应的匹配及异常时重新请求
+        InFlightTable inFlightTable = channel.attr(IN_FLIGHT).get();
+        request.setRequestId(inFlightTable.nextId());
+        request.setSerializer(negotiateSerializer(channel, request.getSerializer()));
+        request.setMethodId(methodIdOf(channel, request));
+        InFlightRequest inFlight = new InFlightRequest(request, responseFuture, inFlightTable, interceptors);
+        inFlightTable.put(inFlight);
+        if (input == null) {
+            inFlight.setTimeout(TIMEOUT_TIMER.newTimeout(inFlight, request.getTimeout(), TimeUnit.MILLISECONDS));
+            send(channel, request);
+        } else {
+            // 上传可能持续很久，剩余的超时时间从上传结束时开始计算
+            inFlight.markUploading();
+            upload(channel, request, input, () -> inFlight.setTimeout(
+                    TIMEOUT_TIMER.newTimeout(inFlight, request.getTimeout(), TimeUnit.MILLISECONDS)));
+            channel.flush();
+        }
+        if (interceptors.sampled(request.getRequestId())) {
+            interceptors.onSend(request);
+        }
+    }
+
+    /**
+     * 开启请求合并且服务端支持时交给该连接的合并队列，否则立即写出
+     */
+    private void send(Channel channel, RpcRequest request) {
+        RequestBatcher batcher = channel.attr(BATCHER).get();
+        Handshake handshake = channel.attr(HANDSHAKE).get();
+        if (batcher != null && handshake != null && handshake.isBatch()) {
+            batcher.add(request);
+        } else {
+            channel.writeAndFlush(Message.buildRequest(request));
+        }
+    }
+
+    /**
+     * 调用流式方法(返回值为Iterator或Stream，见RpcStreams)，返回的Iterator在元素到达时逐个返回，
+     * 本端最多缓冲streamWindow个元素，消费慢时服务端暂停发送。请求的超时时间用作等待每个元素的超时时间。
+     * 未读完时必须调用close取消，否则服务端会一直等待credit
+     */
+    public <T> InboundStream<T> stream(RpcRequest request) {
+        return stream(request, null);
+    }
+
+    /**
+     * 双向流：结果按流接收，同时上传流式参数input(Iterator或Stream)，请求中该参数的位置应为null。
+     * 返回的流结束或被close时，还未上传完的参数随之取消
+     * @param input 为null表示没有流式参数
+     */
+    public <T> InboundStream<T> stream(RpcRequest request, Object input) {
+        long startNanos = System.nanoTime();
+        MethodMetrics methodMetrics = null;
+        if (metrics != null) {
+            methodMetrics = metrics.method(signatureOf(request));
+            methodMetrics.start();
+        }
+        if (request.getTimeout() <= 0) {
+            request.setTimeout((int) timeout);
+        }
+        Channel channel;
+        try {
+            // 返回的Iterator本身就是阻塞读取的，这里同步等待连接，最多等待一个超时时间
+            channel = acquireChannel(request.getClassName()).get(request.getTimeout(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (methodMetrics != null) {
+                methodMetrics.complete(System.nanoTime() - startNanos, true);
+            }
+            if (e instanceof TimeoutException) {
+                throw new RpcTimeoutException("请求" + request.getClassName() + "#" + request.getMethodName()
+                        + "在" + request.getTimeout() + "ms内未能获得服务器连接");
+            }
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            log.error("无法获得可用的服务器连接", cause);
+            handleException(null);
+            throw new IllegalStateException("无法获得可用的服务器连接", cause);
+        }
+        request.setRequestId(channel.attr(IN_FLIGHT).get().nextId());
+        request.setSerializer(negotiateSerializer(channel, request.getSerializer()));
+        request.setMethodId(methodIdOf(channel, request));
+        request.setMetrics(methodMetrics);
+        StreamTable streams = channel.attr(STREAMS).get();
+        MethodMetrics callMetrics = methodMetrics;
+        InboundStream<T> stream = new InboundStream<>(channel, request.getRequestId(), request.getSerializer(),
+                streamWindow, request.getTimeout(), methodMetrics, false, (id, cause) -> {
+                    streams.removeInbound(id, cause);
+                    if (callMetrics != null) {
+                        callMetrics.complete(System.nanoTime() - startNanos, cause != null);
+                    }
+                    OutboundStream upload = streams.outbound(id);
+                    if (upload != null) {
+                        upload.cancel();
+                    }
+                });
+        streams.addInbound(stream);
+        // 请求与初始的credit一起写出，服务端在调用服务方法之前就已登记该流
+        if (input == null) {
+            channel.write(Message.buildRequest(request));
+        } else {
+            upload(channel, request, input, () -> { });
+        }
+        channel.writeAndFlush(stream.initialCredit());
+        if (interceptors.sampled(request.getRequestId())) {
+            interceptors.onSend(request);
+        }
+        return stream;
+    }
+
+    /**
+     * 登记流式参数的发送端并写出请求(未flush)，服务端收到请求后给出credit才开始上传；
+     * 先登记再写请求，服务端的CREDIT帧总能找到发送端
+     * @param onUploaded 上传结束(包括被取消、出错)后调用
+     */
+    private void upload(Channel channel, RpcRequest request, Object input, Runnable onUploaded) {
+        StreamTable streams = channel.attr(STREAMS).get();
+        OutboundStream upload = new OutboundStream(channel, request.getRequestId(), request.getSerializer(),
+                streamExecutor, streamChunkSize, request.getMetrics(), true, (id, cause) -> {
+                    streams.removeOutbound(id, cause);
+                    onUploaded.run();
+                });
+        streams.addOutbound(upload);
+        channel.write(Message.buildRequest(request));
+        upload.start(RpcStreams.iteratorOf(input), RpcStreams.resourceOf(input));
+    }
+
+    /**
+     * 请求指定的序列化方式服务端也支持时使用它，否则使用该连接协商出的序列化方式，
+     * 握手完成前使用默认的Protostuff
+     */
+    private byte negotiateSerializer(Channel channel, byte requested) {
+        Handshake handshake = channel.attr(HANDSHAKE).get();
+        if (handshake == null) {
+            return Serializers.DEFAULT_ID;
+        }
+        return requested > 0 && handshake.supports(requested) ? requested : handshake.getSerializer();
+    }
+
+    /**
+     * 在该连接握手得到的服务端方法表中查找本次调用的methodId，握手完成前或服务端没有该方法时为0，
+     * 此时服务端按接口名与方法名查找
+     */
+    private int methodIdOf(Channel channel, RpcRequest request) {
+        Handshake handshake = channel.attr(HANDSHAKE).get();
+        if (handshake == null) {
+            return 0;
+        }
+        return handshake.methodIdOf(signatureOf(request));
+    }
+
+    /**
+     * 代理类调用时已经带有缓存的签名，直接调用invokeAsync时在这里计算一次
+     */
+    private static String signatureOf(RpcRequest request) {
+        String signature = request.getSignature();
+        if (signature == null) {
+            signature = MethodSignature.of(request.getClassName(), request.getMethodName(), request.getParameterTypes());
+            request.setSignature(signature);
+        }
+        return signature;
+    }
+
+    /**
+     * 通用的异步调用入口，返回的CompletableFuture由IO线程在响应到达时完成，
+     * 服务端返回异常时以该异常结束
+     * @param className 服务接口名
+     * @param methodName 方法名
+     * @param parameterTypes 参数类型
+     * @param parameters 参数
+     * @return
+     */
+    public CompletableFuture<Object> invokeAsync(String className, String methodName,
+                                                 Class<?>[] parameterTypes, Object[] parameters) {
+        return invokeAsync(className, methodName, parameterTypes, parameters, 0);
+    }
+
+    /**
+     * 指定超时时间的异步调用，超时后返回的CompletableFuture以RpcTimeoutException结束
+     * @param timeout 超时时间(毫秒)，0表示使用客户端的默认值
+     */
+    public CompletableFuture<Object> invokeAsync(String className, String methodName,
+                                                 Class<?>[] parameterTypes, Object[] parameters, long timeout) {
+        RpcRequest request = new RpcRequest();
+        request.setTimeout(ProtocolHeader.checkTimeout(timeout));
+        request.setClassName(className);
+        request.setMethodName(methodName);
+        request.setParameterTypes(parameterTypes);
+        request.setParameters(parameters);
+        return invokeAsync(request);
+    }
+
+    /**
+     * 发送已构造好的请求，代理类通过它携带超时时间、序列化方式等调用参数
+     */
+    public CompletableFuture<Object> invokeAsync(RpcRequest request) {
+        return invokeAsync(request, null);
+    }
+
+    /**
+     * 有流式参数时的异步调用，input见execute(RpcRequest, Object)
+     */
+    public CompletableFuture<Object> invokeAsync(RpcRequest request, Object input) {
+        return execute(request, input).thenApply(response -> {
+            if (response.hasError()) {
+                throw new CompletionException(response.getCause());
+            }
+            return response.getResult();
+        });
+    }
+
     public void setDiscovery(ServiceDiscovery discovery) {
         this.discovery = discovery;
     }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    /**
+     * @param serializer 序列化方式的名称，如 protostuff、kryo
+     */
+    public void setSerializer(String serializer) {
+        this.serializer = Serializers.idOf(serializer);
+    }
+
+    /**
+     * @param timeout 默认的调用超时时间(毫秒)，协议头中为int，不能超过Integer.MAX_VALUE
+     */
+    public void setTimeout(long timeout) {
+        if (ProtocolHeader.checkTimeout(timeout) == 0) {
+            throw new IllegalArgumentException("默认超时时间必须大于0");
+        }
+        this.timeout = timeout;
+    }
+
+    public void setTransportConfig(TransportConfig transportConfig) {
+        this.transportConfig = transportConfig;
+    }
+
+    /**
+     * 注册拦截器，需要在init之前调用
+     */
+    public void addInterceptor(RpcInterceptor interceptor) {
+        this.interceptorList.add(interceptor);
+    }
+
+    public void setTraceSampleInterval(int traceSampleInterval) {
+        this.traceSampleInterval = traceSampleInterval;
+    }
+
+    public void setFlushConsolidation(int flushConsolidation) {
+        this.flushConsolidation = flushConsolidation;
+    }
+
+    /**
+     * 每次真正flush写出的消息数统计
+     */
+    public FlushStats getFlushStats() {
+        return flushStats;
+    }
+
+    /**
+     * 按方法统计的请求数、失败数、在途数、耗时与消息大小，未开启时为null
+     */
+    public RpcMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metrics = metricsEnabled ? new RpcMetrics("client") : null;
+    }
+
+    /**
+     * 请求消息体达到该字节数且服务端能解压时压缩后发送，0表示不压缩；收到的压缩响应总是能解压
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 流式结果最多缓冲的元素数，即初始给服务端的credit
+     */
+    public void setStreamWindow(int streamWindow) {
+        this.streamWindow = streamWindow;
+    }
+
+    /**
+     * 开启请求合并：发往同一连接的请求在batchWindowMicros之内或攒满batchSize个时合并成一帧发送，
+     * 服务端并行处理后合并返回。适合大量很小的调用，同批的响应要等最慢的一个完成才返回
+     * @param batchSize 每批最多的请求数，不大于1表示不合并
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 合并请求时第一个请求入队后最多等待的时间(微秒)，0表示只合并IO线程处理之前已经入队的请求
+     */
+    public void setBatchWindowMicros(long batchWindowMicros) {
+        this.batchWindowMicros = batchWindowMicros;
+    }
+
+    /**
+     * 上传流式参数时每帧最多携带的元素数
+     */
+    public void setStreamChunkSize(int streamChunkSize) {
+        this.streamChunkSize = streamChunkSize;
+    }
+
+    public void setConnectionsPerAddress(int connectionsPerAddress) {
+        this.connectionsPerAddress = connectionsPerAddress;
+    }
 }
@@ -1,78 +1,185 @@
 package com.miao.rpc.core.client;
 
+import com.miao.rpc.core.coder.Compression;
+import com.miao.rpc.core.coder.RpcDecodeException;
+import com.miao.rpc.core.domain.Handshake;
 import com.miao.rpc.core.domain.Message;
-import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcBatch;
 import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.domain.StreamFrame;
+import com.miao.rpc.core.serialize.Serializers;
+import com.miao.rpc.core.stream.InboundStream;
+import com.miao.rpc.core.stream.OutboundStream;
+import com.miao.rpc.core.stream.RpcStreamException;
+import com.miao.rpc.core.stream.StreamTable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
-import javafx.event.EventType;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-
 @Slf4j
 public class RpcClientHandler extends SimpleChannelInboundHandler<Message> {
+    // 响应解码失败后，被exceptionCaught捕获，每个请求最多允许重新请求2次，超过后重新进行连接
+    private static final int MAX_RETRIES = 2;
+
     private RpcClient client;
-    private Map<String, RpcResponseFuture> requestWithItsResFuture;
-    // 请求解析出现异常后，被exceptionCaught捕获，最多允许重新请求3次，超过后重新进行连接
-    private ConcurrentHashMap<String, AtomicInteger> countOneRequestException = new ConcurrentHashMap<>();
+    private InFlightTable inFlightTable; // 本channel的在途请求表
+    private StreamTable streams; // 本channel上正在接收的结果与正在上传的参数
 
-    public RpcClientHandler(RpcClient client, Map<String, RpcResponseFuture> map) {
+    public RpcClientHandler(RpcClient client, InFlightTable inFlightTable, StreamTable streams) {
         this.client = client;
-        this.requestWithItsResFuture = map;
+        this.inFlightTable = inFlightTable;
+        this.streams = streams;
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Message msg) throws Exception {
-        log.info("接收到服务器响应");
         if (msg.getType() == Message.PONG) {
-            log.info("服务器正常");
-        }else if (msg.getType() == Message.RESPONSE) {
-            RpcResponse response = msg.getResponse();
-            if (requestWithItsResFuture.containsKey(response.getRequestId())) {
-                RpcResponseFuture responseFuture = requestWithItsResFuture.remove(response.getRequestId());
-                responseFuture.setResponse(response);
-
-                countOneRequestException.remove(ctx.channel().attr(RpcClient.CURRENT_REQUEST).get().getRequestId());
-                ctx.channel().attr(RpcClient.CURRENT_REQUEST).set(null); // 清除本次请求存储的RpcRequest对象
+            log.debug("服务器正常");
+        } else if (msg.getType() == Message.HANDSHAKE) {
+            // 记录协商结果，之后该连接上的请求默认使用协商出的序列化方式
+            log.info("与服务端协商的序列化方式为：{}", msg.getHandshake().getSerializer());
+            Handshake handshake = msg.getHandshake();
+            handshake.indexMethods();
+            ctx.channel().attr(Compression.PEER_SUPPORTED).set(handshake.isCompression());
+            ctx.channel().attr(RpcClient.HANDSHAKE).set(handshake);
+        } else if (msg.getType() == Message.RESPONSE) {
+            onResponse(msg.getResponse());
+        } else if (msg.getType() == Message.BATCH) {
+            // 一批请求的响应，逐个按requestId交给各自的请求
+            RpcBatch batch = msg.getBatch();
+            if (batch.getResponses() != null) {
+                for (RpcResponse response : batch.getResponses()) {
+                    onResponse(response);
+                }
+            }
+        } else if (msg.getType() == Message.STREAM) {
+            StreamFrame frame = msg.getStream();
+            InboundStream<?> stream = streams.inbound(frame.getRequestId());
+            if (stream != null) {
+                stream.onFrame(frame); // 最后一帧时流会把自己从表中移除
+            }
+        } else if (msg.getType() == Message.CREDIT) {
+            // 服务端消费流式参数后补发的credit，或者不再需要后续元素
+            StreamFrame frame = msg.getStream();
+            OutboundStream upload = streams.outbound(frame.getRequestId());
+            if (upload == null) {
+                return;
+            }
+            if (frame.isCancel()) {
+                upload.cancel();
+            } else {
+                upload.grant(frame.getCredits());
             }
         }
     }
 
+    private void onResponse(RpcResponse response) {
+        // 服务方法没有读完流式参数就返回了，或者请求被拒绝，还未上传完的参数不再需要
+        OutboundStream upload = streams.outbound(response.getRequestId());
+        if (upload != null) {
+            upload.cancel();
+        }
+        // 重试可能导致同一请求收到多次响应，只有第一次能从表中取到记录
+        InFlightRequest inFlight = inFlightTable.remove(response.getRequestId());
+        if (inFlight != null) {
+            inFlight.complete(response);
+            return;
+        }
+        // 流式调用在开始发送之前被拒绝(服务端繁忙、方法不存在等)时，服务端返回的是普通响应
+        InboundStream<?> stream = streams.inbound(response.getRequestId());
+        if (stream != null) {
+            stream.fail(response.hasError() ? response.getCause()
+                    : new IllegalStateException("服务端没有按流式方法处理该请求"));
+        }
+    }
+
+    /**
+     * 响应的消息体解码失败时协议头中的requestId已知，只按重试次数重新发送或结束对应的那个请求；
+     * 其余异常(帧错位、IO异常等)无法确定哪些请求已经在服务端执行过，重新发送可能让非幂等的调用执行两次，
+     * 因此以该异常结束该channel上的全部在途请求并关闭连接，之后的请求会重新建立连接
+     */
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-        // 每个请求有两次重试的机会，超过限制则重新建立与服务器的连接
-        String id = ctx.channel().attr(RpcClient.CURRENT_REQUEST).get().getRequestId();
-        log.info("捕获 " + id + " 异常");
-        log.info("异常信息："+ cause.toString());
-        if (countOneRequestException.get(id) == null) {
-            countOneRequestException.put(id, new AtomicInteger(1));
+        log.info("捕获异常，在途请求数：{}，异常信息：{}", inFlightTable.size(), cause.toString());
+        if (cause instanceof RpcDecodeException && ((RpcDecodeException) cause).getType() == Message.STREAM) {
+            // 流中的一帧无法解码，之后的元素已经不完整，取消该流
+            InboundStream<?> stream = streams.inbound(((RpcDecodeException) cause).getRequestId());
+            if (stream != null) {
+                stream.fail(cause.getCause());
+                ctx.writeAndFlush(Message.buildCredit(StreamFrame.credit(stream.getStreamId(),
+                        ((RpcDecodeException) cause).getSerializer(), 0, true)));
+            }
+            return;
         }
-        int count = countOneRequestException.get(id).getAndAdd(1);
-        if ( count < 3) {
-            log.info(id + " 第 " + count + " 次尝试重新发出请求");
-            log.info(countOneRequestException.toString());
-            client.reExecute(ctx.channel().attr(RpcClient.CURRENT_REQUEST).get());
-        }else {
-            log.info(id + " 已重新请求过2次，仍然出现异常，尝试重新连接来解决问题");
-            countOneRequestException.remove(id); // 删除本次请求异常次数的记录
+        if (cause instanceof RpcDecodeException && ((RpcDecodeException) cause).getType() == Message.CREDIT) {
+            OutboundStream upload = streams.outbound(((RpcDecodeException) cause).getRequestId());
+            if (upload != null) {
+                upload.fail(cause.getCause());
+            }
+            return;
+        }
+        if (cause instanceof RpcDecodeException && ((RpcDecodeException) cause).getType() == Message.RESPONSE) {
+            InFlightRequest inFlight = inFlightTable.get(((RpcDecodeException) cause).getRequestId());
+            if (inFlight != null && retryOrFail(ctx, inFlight)) {
+                client.handleException(ctx.channel()); // 关闭该连接，之后的请求会重新建立连接
+            }
+            return;
+        }
+        inFlightTable.failAll(cause);
+        ctx.close(); // 流在channelInactive中结束
+    }
+
+    /**
+     * 未超过重试次数的请求重新发送，否则唤醒请求线程并返回异常
+     * @return 该请求是否已超过重试次数
+     */
+    private boolean retryOrFail(ChannelHandlerContext ctx, InFlightRequest inFlight) {
+        long id = inFlight.getRequest().getRequestId();
+        if (inFlight.getRetries() < MAX_RETRIES && inFlight.isRetryable()) {
+            int count = inFlight.retry();
+            log.debug("{} 第 {} 次尝试重新发出请求", id, count);
+            client.reExecute(ctx.channel(), inFlight.getRequest());
+            return false;
+        }
+        if (inFlightTable.remove(id) != null) {
+            log.debug("{} 已重新请求过{}次，仍然出现异常，尝试重新连接来解决问题", id, MAX_RETRIES);
             // 请求线程正在阻塞等待结果，需要唤醒
             RpcResponse response = new RpcResponse();
+            response.setRequestId(id);
             response.setCause(new RuntimeException("由于本次请求重试次数超过限制，客户端重新与服务器建立连接"));
-            // 删除 本次请求ID->RpcResponseFuture 映射关系，唤醒请求线程
-            requestWithItsResFuture.remove(id).setResponse(response);
-            client.handleException(); // 重新连接
+            inFlight.complete(response);
+            return true;
         }
+        return false;
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        log.info("客户端通道已开启");
+        log.info("客户端通道已开启，发送握手信息");
+        Handshake handshake = new Handshake();
+        handshake.setSerializer(client.getSerializer());
+        handshake.setSupportedSerializers(Serializers.supportedIds());
+        handshake.setCompression(true);
+        handshake.setBatch(true);
+        ctx.writeAndFlush(Message.buildHandshake(handshake));
+    }
+
+    /**
+     * 连接断开后该channel上的响应不会再到达，唤醒全部在途请求的请求线程
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (inFlightTable.size() > 0) {
+            log.info("连接已断开，{}个在途请求失败", inFlightTable.size());
+            inFlightTable.failAll(new RuntimeException("连接已断开：" + ctx.channel().remoteAddress()));
+        }
+        if (streams.size() > 0) {
+            log.info("连接已断开，{}个流失败", streams.size());
+            streams.closeAll(new RpcStreamException("连接已断开：" + ctx.channel().remoteAddress(), null));
+        }
+        super.channelInactive(ctx);
     }
 
     @Override
@@ -80,7 +187,7 @@ public class RpcClientHandler extends SimpleChannelInboundHandler<Message> {
         if (evt instanceof IdleStateEvent) {
             IdleStateEvent event = (IdleStateEvent) evt;
             if (event.state() == IdleState.WRITER_IDLE) {
-                log.info("超过指定时间未发送数据，现主动发送一个心跳包");
+                log.debug("超过指定时间未发送数据，现主动发送一个心跳包");
                 ctx.writeAndFlush(Message.PING_MSG);
             }
         } else {
@@ -1,29 +1,26 @@
 package com.miao.rpc.core.client;
 
 import com.miao.rpc.core.domain.RpcResponse;
-import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 异步通知结果类
+ *
+ * 基于CompletableFuture，响应由Netty的IO线程调用setResponse完成，
+ * 同步调用通过getResponse阻塞等待，异步调用直接在其上注册回调，不需要为每个在途请求占用一个线程。
+ * 注意：非Async的回调方法(thenApply等)会在IO线程中执行，耗时的处理应使用xxxAsync并指定线程池
  */
-@Slf4j
-public class RpcResponseFuture {
-
-    private RpcResponse response;
+public class RpcResponseFuture extends CompletableFuture<RpcResponse> {
 
-    public synchronized RpcResponse getResponse() {
-        while (response == null) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                log.info("客户端请求线程被中断，"+e.toString());
-            }
-        }
-        return response;
+    /**
+     * 阻塞直到结果返回，与之前一样不响应中断
+     */
+    public RpcResponse getResponse() {
+        return join();
     }
 
-    public synchronized void setResponse(RpcResponse response) {
-        this.response = response;
-        notifyAll();
+    public void setResponse(RpcResponse response) {
+        complete(response);
     }
 }
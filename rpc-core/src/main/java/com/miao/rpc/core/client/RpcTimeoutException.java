@@ -0,0 +1,11 @@
+package com.miao.rpc.core.client;
+
+/**
+ * 请求在超时时间内未收到响应
+ */
+public class RpcTimeoutException extends RuntimeException {
+
+    public RpcTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,82 @@
+package com.miao.rpc.core.coder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.Snappy;
+import io.netty.util.AttributeKey;
+
+/**
+ * 消息体压缩，使用Netty自带的纯Java Snappy实现(LZ77系，压缩率一般但速度很快)，不引入新的依赖。
+ *
+ * Snappy的块编码最多处理32767字节，所以消息体按该大小分块，压缩后的消息体由若干块连续组成，
+ * 每块为 4字节的块长度 + Snappy块(开头是varint表示的原始长度)。协议头flags中的FLAG_COMPRESSED表示消息体经过压缩
+ *
+ * 是否压缩由发送方决定：只有对端在握手时声明能够解压、消息体不小于发送方配置的阈值、且压缩后确实变小时才压缩
+ */
+public final class Compression {
+
+    // 对端是否能解压，握手时设置
+    public static final AttributeKey<Boolean> PEER_SUPPORTED = AttributeKey.valueOf("compression.peer");
+
+    private static final int CHUNK_LENGTH = Short.MAX_VALUE;
+    // 解压后消息体的上限，防止异常数据声明过大的原始长度
+    private static final int MAX_UNCOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+    private Compression() {
+    }
+
+    public static boolean peerSupports(Channel channel) {
+        return Boolean.TRUE.equals(channel.attr(PEER_SUPPORTED).get());
+    }
+
+    /**
+     * 压缩body中全部可读的字节写入out，body的readerIndex移到末尾
+     */
+    static void compress(Snappy snappy, ByteBuf body, ByteBuf out) {
+        while (body.isReadable()) {
+            ByteBuf chunk = body.readSlice(Math.min(body.readableBytes(), CHUNK_LENGTH));
+            int lengthIndex = out.writerIndex();
+            out.writeInt(0);
+            snappy.encode(chunk, out, chunk.readableBytes());
+            out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+        }
+    }
+
+    /**
+     * 从in中读取length字节的压缩数据，解压后写入out
+     */
+    static void decompress(Snappy snappy, ByteBuf in, int length, ByteBuf out) {
+        int end = in.readerIndex() + length;
+        int total = 0;
+        while (in.readerIndex() < end) {
+            int chunkLength = in.readInt();
+            if (chunkLength <= 0 || in.readerIndex() + chunkLength > end) {
+                throw new DecompressionException("压缩块长度错误：" + chunkLength);
+            }
+            ByteBuf chunk = in.readSlice(chunkLength);
+            int uncompressed = preamble(chunk);
+            total += uncompressed;
+            if (uncompressed > CHUNK_LENGTH || total > MAX_UNCOMPRESSED_LENGTH) {
+                throw new DecompressionException("解压后的长度超过限制：" + uncompressed);
+            }
+            snappy.reset();
+            snappy.decode(chunk, out);
+        }
+    }
+
+    /**
+     * 读取Snappy块开头varint表示的原始长度，不移动readerIndex
+     */
+    private static int preamble(ByteBuf chunk) {
+        int result = 0;
+        for (int i = 0; i < 5 && i < chunk.readableBytes(); i++) {
+            int b = chunk.getUnsignedByte(chunk.readerIndex() + i);
+            result |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new DecompressionException("压缩块的原始长度格式错误");
+    }
+}
@@ -0,0 +1,107 @@
+package com.miao.rpc.core.coder;
+
+import io.netty.buffer.ByteBuf;
+
+import static com.miao.rpc.core.constant.Constant.ProtocolConstant.*;
+
+/**
+ * 直接从一帧数据(已去掉长度字段，即LengthFieldBasedFrameDecoder的输出)中读取协议头字段，
+ * 不移动readerIndex也不反序列化消息体。
+ * 放在LengthFieldBasedFrameDecoder与RpcDecoder之间的handler可以据此在IO线程上低成本地做
+ * 路由、超时、优先级、过载丢弃等判断
+ */
+public final class ProtocolHeader {
+
+    private ProtocolHeader() {
+    }
+
+    /**
+     * 魔数正确，且headerLen不小于本版本的协议头长度、不超过帧的长度
+     */
+    public static boolean isValid(ByteBuf frame) {
+        int base = frame.readerIndex();
+        if (frame.readableBytes() < HEADER_LENGTH || frame.getShort(base + MAGIC_OFFSET) != MAGIC) {
+            return false;
+        }
+        int headerLength = frame.getUnsignedByte(base + HEADER_LENGTH_OFFSET);
+        return headerLength >= HEADER_LENGTH && headerLength <= frame.readableBytes();
+    }
+
+    /**
+     * 主版本与本端相同时可以解析，次版本不同只是协议头末尾的字段不同
+     */
+    public static boolean isCompatible(byte version) {
+        return (version & MAJOR_VERSION_MASK) == (VERSION & MAJOR_VERSION_MASK);
+    }
+
+    public static byte version(ByteBuf frame) {
+        return frame.getByte(frame.readerIndex() + VERSION_OFFSET);
+    }
+
+    public static int headerLength(ByteBuf frame) {
+        return frame.getUnsignedByte(frame.readerIndex() + HEADER_LENGTH_OFFSET);
+    }
+
+    public static byte type(ByteBuf frame) {
+        return frame.getByte(frame.readerIndex() + TYPE_OFFSET);
+    }
+
+    public static byte flags(ByteBuf frame) {
+        return frame.getByte(frame.readerIndex() + FLAGS_OFFSET);
+    }
+
+    public static byte serializer(ByteBuf frame) {
+        return frame.getByte(frame.readerIndex() + SERIALIZER_OFFSET);
+    }
+
+    public static byte priority(ByteBuf frame) {
+        return frame.getByte(frame.readerIndex() + PRIORITY_OFFSET);
+    }
+
+    public static long requestId(ByteBuf frame) {
+        return frame.getLong(frame.readerIndex() + REQUEST_ID_OFFSET);
+    }
+
+    public static int timeout(ByteBuf frame) {
+        return frame.getInt(frame.readerIndex() + TIMEOUT_OFFSET);
+    }
+
+    public static int methodId(ByteBuf frame) {
+        return frame.getInt(frame.readerIndex() + METHOD_ID_OFFSET);
+    }
+
+    /**
+     * 协议头中的超时时间为int毫秒，超出范围的值直接拒绝，而不是截断成错误的值
+     * @param timeout 超时时间(毫秒)，0表示使用默认值
+     */
+    public static int checkTimeout(long timeout) {
+        if (timeout < 0 || timeout > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("超时时间应在0到" + Integer.MAX_VALUE + "毫秒之间：" + timeout);
+        }
+        return (int) timeout;
+    }
+
+    /**
+     * 消息体的长度
+     */
+    public static int bodyLength(ByteBuf frame) {
+        return frame.readableBytes() - headerLength(frame);
+    }
+
+    /**
+     * 写入本版本的协议头，调用前长度字段已写好
+     */
+    public static void write(ByteBuf out, byte type, byte flags, byte serializer, byte priority,
+                             long requestId, int timeout, int methodId) {
+        out.writeShort(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(HEADER_LENGTH);
+        out.writeByte(type);
+        out.writeByte(flags);
+        out.writeByte(serializer);
+        out.writeByte(priority);
+        out.writeLong(requestId);
+        out.writeInt(timeout);
+        out.writeInt(methodId);
+    }
+}
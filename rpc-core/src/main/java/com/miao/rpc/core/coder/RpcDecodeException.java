@@ -0,0 +1,32 @@
+package com.miao.rpc.core.coder;
+
+import io.netty.handler.codec.DecoderException;
+
+/**
+ * 消息体反序列化失败，协议头已经解析成功，所以能确定是哪一个请求/响应出了问题
+ */
+public class RpcDecodeException extends DecoderException {
+
+    private final byte type;
+    private final long requestId;
+    private final byte serializer;
+
+    public RpcDecodeException(byte type, long requestId, byte serializer, Throwable cause) {
+        super("消息体解码失败，type：" + type + "，requestId：" + requestId, cause);
+        this.type = type;
+        this.requestId = requestId;
+        this.serializer = serializer;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+}
@@ -1,39 +1,183 @@
 package com.miao.rpc.core.coder;
 
+import com.miao.rpc.core.domain.Handshake;
 import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcBatch;
 import com.miao.rpc.core.domain.RpcRequest;
 import com.miao.rpc.core.domain.RpcResponse;
-import com.miao.rpc.core.util.ProtostuffUtil;
+import com.miao.rpc.core.domain.StreamFrame;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.serialize.Serializer;
+import com.miao.rpc.core.serialize.Serializers;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.compression.Snappy;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_FIELD_LENGTH;
+import static com.miao.rpc.core.constant.Constant.ProtocolConstant.FLAG_COMPRESSED;
+import static com.miao.rpc.core.constant.Constant.ProtocolConstant.VERSION;
+
+/**
+ * 解码器，先校验并解析协议头，再按协议头中的序列化方式反序列化消息体。
+ * 协议头长度以帧中的headerLen为准，高版本对端追加的字段会被直接跳过。
+ * flags中带有FLAG_COMPRESSED时先解压消息体，本端总是能解压，握手时会告知对端
+ */
 @Slf4j
 public class RpcDecoder extends ByteToMessageDecoder {
     //public static final AtomicInteger test = new AtomicInteger(1);//用于产生异常使用
 
+    private final Interceptors interceptors;
+    private final Snappy snappy = new Snappy(); // 解压有状态，每个连接的解码器一个
+    private final byte[] acceptedSerializers; // 接受的序列化方式，null表示本端支持的全部
+
+    public RpcDecoder() {
+        this(Interceptors.NONE);
+    }
+
+    public RpcDecoder(Interceptors interceptors) {
+        this(interceptors, null);
+    }
+
+    /**
+     * @param acceptedSerializers 接受的序列化方式的id，其余的消息体按不支持的序列化方式处理；null表示本端支持的全部
+     */
+    public RpcDecoder(Interceptors interceptors, byte[] acceptedSerializers) {
+        this.interceptors = interceptors;
+        this.acceptedSerializers = acceptedSerializers;
+    }
+
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext,
                           ByteBuf byteBuf, List<Object> list) throws Exception {
-        byte type = byteBuf.readByte();
-        log.info("解码消息，消息类型为: {}", type);
-        if (type == Message.PING) {
-            list.add(Message.PING_MSG);
-        } else if (type == Message.PONG) {
-            list.add(Message.PONG_MSG);
-        } else {
-            byte[] bytes = new byte[byteBuf.readableBytes()];
-            byteBuf.readBytes(bytes);
+        if (!ProtocolHeader.isValid(byteBuf)) {
+            // 魔数不对说明对端不是本协议或数据已错位，无法继续解析该连接上的数据
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            throw new CorruptedFrameException("非法的协议头，对端：" + channelHandlerContext.channel().remoteAddress());
+        }
+        byte version = ProtocolHeader.version(byteBuf);
+        if (!ProtocolHeader.isCompatible(version)) {
+            // 主版本不同，协议头之后的格式无法确定，同样不能继续解析该连接上的数据
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            throw new CorruptedFrameException("不兼容的协议版本：" + version + "，本端版本：" + VERSION
+                    + "，对端：" + channelHandlerContext.channel().remoteAddress());
+        }
+        int frameBytes = byteBuf.readableBytes() + LENGTH_FIELD_LENGTH;
+        byte type = ProtocolHeader.type(byteBuf);
+        byte serializerId = ProtocolHeader.serializer(byteBuf); // 消息体的序列化方式由协议头决定
+        long requestId = ProtocolHeader.requestId(byteBuf);
+        int timeout = ProtocolHeader.timeout(byteBuf);
+        byte priority = ProtocolHeader.priority(byteBuf);
+        int methodId = ProtocolHeader.methodId(byteBuf);
+        byte flags = ProtocolHeader.flags(byteBuf);
+        ByteBuf body = byteBuf; // 消息体直接从ByteBuf反序列化，压缩过的先解压到新的ByteBuf
+        try {
+            byteBuf.skipBytes(ProtocolHeader.headerLength(byteBuf));
+            if (type == Message.PING) {
+                list.add(Message.PING_MSG);
+                return;
+            } else if (type == Message.PONG) {
+                list.add(Message.PONG_MSG);
+                return;
+            }
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                body = channelHandlerContext.alloc().buffer(byteBuf.readableBytes() * 2);
+                Compression.decompress(snappy, byteBuf, byteBuf.readableBytes(), body);
+            }
+            int length = body.readableBytes();
+            Serializer serializer = acceptedSerializers == null || Serializers.contains(acceptedSerializers, serializerId)
+                    ? Serializers.get(serializerId) : null;
+            if (serializer == null) {
+                throw new IllegalArgumentException("不支持的序列化方式：" + serializerId);
+            }
             // core包是被客户端与服务端两者引用的,所以这里同时有对REQUEST,RESPONSE二者的处理
-            if (type == Message.REQUEST) {
-                list.add(Message.buildRequest(ProtostuffUtil.deserialize(bytes, RpcRequest.class)));
+            if (type == Message.HANDSHAKE) {
+                list.add(Message.buildHandshake(serializer.deserialize(body, length, Handshake.class)));
+            } else if (type == Message.REQUEST) {
+                RpcRequest request = serializer.deserialize(body, length, RpcRequest.class);
+                request.setRequestId(requestId);
+                request.setTimeout(timeout);
+                request.setPriority(priority);
+                request.setMethodId(methodId);
+                request.setSerializer(serializerId);
+                request.setBytes(frameBytes);
+                Message message = Message.buildRequest(request);
+                if (interceptors.sampled(requestId)) {
+                    interceptors.onReceive(message, frameBytes);
+                }
+                list.add(message);
             } else if (type == Message.RESPONSE) {
                 //if (test.getAndAdd(1) <= 4) throw new RuntimeException("测试reExecute机制");
-                list.add(Message.buildResponse(ProtostuffUtil.deserialize(bytes, RpcResponse.class)));
+                RpcResponse response = serializer.deserialize(body, length, RpcResponse.class);
+                response.setRequestId(requestId);
+                response.setSerializer(serializerId);
+                response.setBytes(frameBytes);
+                Message message = Message.buildResponse(response);
+                if (interceptors.sampled(requestId)) {
+                    interceptors.onReceive(message, frameBytes);
+                }
+                list.add(message);
+            } else if (type == Message.BATCH) {
+                RpcBatch batch = serializer.deserialize(body, length, RpcBatch.class);
+                batch.setBatchId(requestId);
+                batch.setSerializer(serializerId);
+                batch.setBytes(frameBytes);
+                restore(batch, serializerId, frameBytes / Math.max(batch.size(), 1));
+                Message message = Message.buildBatch(batch);
+                if (interceptors.sampled(requestId)) {
+                    interceptors.onReceive(message, frameBytes);
+                }
+                list.add(message);
+            } else if (type == Message.STREAM || type == Message.CREDIT) {
+                StreamFrame frame = serializer.deserialize(body, length, StreamFrame.class);
+                frame.restoreNulls();
+                frame.setRequestId(requestId);
+                frame.setSerializer(serializerId);
+                frame.setBytes(frameBytes);
+                list.add(type == Message.STREAM ? Message.buildStream(frame) : Message.buildCredit(frame));
+            } else {
+                // 不认识的消息类型(比如高版本对端新增的)直接丢弃
+                log.debug("忽略未知的消息类型：{}", type);
+                body.skipBytes(length);
+            }
+        } catch (Exception e) {
+            // 协议头已经解析成功，异常中带上requestId，上层只需处理出问题的那一个请求
+            byteBuf.readerIndex(byteBuf.writerIndex());
+            throw new RpcDecodeException(type, requestId, serializerId, e);
+        } finally {
+            if (body != byteBuf) {
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * 把批中按条目存放的协议头字段填回每个请求或响应，帧的大小按条目平均分摊
+     */
+    private static void restore(RpcBatch batch, byte serializerId, int share) {
+        long[] requestIds = batch.getRequestIds();
+        if (batch.isRequest()) {
+            RpcRequest[] requests = batch.getRequests();
+            for (int i = 0; i < requests.length; i++) {
+                RpcRequest request = requests[i];
+                request.setRequestId(requestIds[i]);
+                request.setTimeout(batch.getTimeouts()[i]);
+                request.setPriority(batch.getPriorities()[i]);
+                request.setMethodId(batch.getMethodIds()[i]);
+                request.setSerializer(serializerId);
+                request.setBytes(share);
+            }
+        } else if (batch.getResponses() != null) {
+            RpcResponse[] responses = batch.getResponses();
+            for (int i = 0; i < responses.length; i++) {
+                responses[i].setRequestId(requestIds[i]);
+                responses[i].setSerializer(serializerId);
+                responses[i].setBytes(share);
             }
         }
     }
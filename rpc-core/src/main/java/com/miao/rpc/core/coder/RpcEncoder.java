@@ -1,26 +1,206 @@
 package com.miao.rpc.core.coder;
 
 import com.miao.rpc.core.domain.Message;
-import com.miao.rpc.core.util.ProtostuffUtil;
+import com.miao.rpc.core.domain.RpcBatch;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.domain.StreamFrame;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.serialize.Serializer;
+import com.miao.rpc.core.serialize.Serializers;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.compression.Snappy;
 import lombok.extern.slf4j.Slf4j;
 
+import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_FIELD_LENGTH;
+import static com.miao.rpc.core.constant.Constant.ProtocolConstant.FLAGS_OFFSET;
+import static com.miao.rpc.core.constant.Constant.ProtocolConstant.FLAG_COMPRESSED;
+
+/**
+ * 编码器，输出的ByteBuf由MessageToByteEncoder从channel的分配器中申请(默认是池化的堆外内存)，
+ * 消息体由选定的Serializer直接序列化进该ByteBuf，长度字段先占位，写完后再回填，
+ * 因此不再需要LengthFieldPrepender，也不产生中间的byte[]
+ *
+ * 协议头的格式见Constant.ProtocolConstant，每种消息都写完整的协议头，没有的字段填0。
+ * 请求、响应、批量请求/响应与流数据帧的消息体不小于compressThreshold且对端能解压时，压缩后再写出(见Compression)
+ */
 @Slf4j
-public class RpcEncoder extends MessageToByteEncoder {
+public class RpcEncoder extends MessageToByteEncoder<Message> {
+
+    private final Interceptors interceptors;
+    private final int compressThreshold; // 消息体达到多少字节时压缩，0表示不压缩
+    private final Snappy snappy = new Snappy();
+
+    public RpcEncoder() {
+        this(Interceptors.NONE);
+    }
+
+    public RpcEncoder(Interceptors interceptors) {
+        this(interceptors, 0);
+    }
+
+    public RpcEncoder(Interceptors interceptors, int compressThreshold) {
+        this.interceptors = interceptors;
+        this.compressThreshold = compressThreshold;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext,
-                          Object o, ByteBuf byteBuf) throws Exception {
-        Message message = (Message) o;
+                          Message message, ByteBuf byteBuf) throws Exception {
+        int lengthIndex = byteBuf.writerIndex();
+        byteBuf.writeInt(0); // 长度字段占位
         byte type = message.getType();
-        byteBuf.writeByte(type);
-        log.info("编码信息， 信息类型为: {}", type);
-        // PING/PONG信息就传type过去就行了
         if (type == Message.REQUEST) {
-            byteBuf.writeBytes(ProtostuffUtil.serialize(message.getRequest()));
+            RpcRequest request = message.getRequest();
+            Serializer serializer = serializerOf(request.getSerializer());
+            ProtocolHeader.write(byteBuf, type, (byte) 0, serializer.getId(), request.getPriority(),
+                    request.getRequestId(), request.getTimeout(), request.getMethodId());
+            int bodyIndex = byteBuf.writerIndex();
+            serializer.serialize(request.getMethodId() != 0 ? compact(request) : request, byteBuf);
+            compressBody(channelHandlerContext, byteBuf, lengthIndex + LENGTH_FIELD_LENGTH, bodyIndex);
+        } else if (type == Message.RESPONSE) {
+            RpcResponse response = message.getResponse();
+            Serializer serializer = serializerOf(response.getSerializer());
+            ProtocolHeader.write(byteBuf, type, (byte) 0, serializer.getId(), (byte) 0,
+                    response.getRequestId(), 0, 0);
+            int bodyIndex = byteBuf.writerIndex();
+            serializer.serialize(response, byteBuf);
+            compressBody(channelHandlerContext, byteBuf, lengthIndex + LENGTH_FIELD_LENGTH, bodyIndex);
+        } else if (type == Message.STREAM || type == Message.CREDIT) {
+            StreamFrame frame = message.getStream();
+            Serializer serializer = serializerOf(frame.getSerializer());
+            ProtocolHeader.write(byteBuf, type, (byte) 0, serializer.getId(), (byte) 0,
+                    frame.getRequestId(), 0, 0);
+            int bodyIndex = byteBuf.writerIndex();
+            serializer.serialize(frame, byteBuf);
+            if (type == Message.STREAM) {
+                compressBody(channelHandlerContext, byteBuf, lengthIndex + LENGTH_FIELD_LENGTH, bodyIndex);
+            }
+        } else if (type == Message.BATCH) {
+            RpcBatch batch = message.getBatch();
+            Serializer serializer = serializerOf(batch.getSerializer());
+            ProtocolHeader.write(byteBuf, type, (byte) 0, serializer.getId(), (byte) 0,
+                    batch.getBatchId(), 0, 0);
+            int bodyIndex = byteBuf.writerIndex();
+            serializer.serialize(batch.isRequest() ? compact(batch) : batch, byteBuf);
+            compressBody(channelHandlerContext, byteBuf, lengthIndex + LENGTH_FIELD_LENGTH, bodyIndex);
+        } else if (type == Message.HANDSHAKE) {
+            // 握手总是使用默认的序列化方式
+            ProtocolHeader.write(byteBuf, type, (byte) 0, Serializers.DEFAULT_ID, (byte) 0, 0, 0, 0);
+            Serializers.get(Serializers.DEFAULT_ID).serialize(message.getHandshake(), byteBuf);
+        } else {
+            ProtocolHeader.write(byteBuf, type, (byte) 0, (byte) 0, (byte) 0, 0, 0, 0);
+        }
+        // 回填长度，与LengthFieldBasedFrameDecoder的配置对应：长度不包括长度字段本身
+        byteBuf.setInt(lengthIndex, byteBuf.writerIndex() - lengthIndex - LENGTH_FIELD_LENGTH);
+        int frameBytes = byteBuf.writerIndex() - lengthIndex;
+        if (type == Message.REQUEST) {
+            RpcRequest request = message.getRequest();
+            if (request.getMetrics() != null) {
+                request.getMetrics().recordRequestBytes(frameBytes);
+            }
+            if (interceptors.sampled(request.getRequestId())) {
+                interceptors.onEncode(message, frameBytes);
+            }
         } else if (type == Message.RESPONSE) {
-            byteBuf.writeBytes(ProtostuffUtil.serialize(message.getResponse()));
+            RpcResponse response = message.getResponse();
+            if (response.getMetrics() != null) {
+                response.getMetrics().recordResponseBytes(frameBytes);
+            }
+            if (interceptors.sampled(response.getRequestId())) {
+                interceptors.onEncode(message, frameBytes);
+            }
+        } else if (type == Message.BATCH) {
+            recordBatchBytes(message.getBatch(), frameBytes);
+            if (interceptors.sampled(message.getBatch().getBatchId())) {
+                interceptors.onEncode(message, frameBytes);
+            }
+        } else if (type == Message.STREAM && message.getStream().getMetrics() != null) {
+            StreamFrame frame = message.getStream();
+            if (frame.isUpstream()) {
+                frame.getMetrics().recordRequestBytes(frameBytes);
+            } else {
+                frame.getMetrics().recordResponseBytes(frameBytes);
+            }
+        }
+    }
+
+    /**
+     * 消息体达到阈值且对端能解压时，用压缩后的数据替换消息体并在flags中标记；
+     * 压缩后没有变小(比如消息体本身是已压缩的数据)时保持原样
+     * @param headerIndex 协议头的起始位置
+     * @param bodyIndex 消息体的起始位置
+     */
+    private void compressBody(ChannelHandlerContext ctx, ByteBuf out, int headerIndex, int bodyIndex) {
+        int bodyLength = out.writerIndex() - bodyIndex;
+        if (compressThreshold <= 0 || bodyLength < compressThreshold || !Compression.peerSupports(ctx.channel())) {
+            return;
         }
+        ByteBuf compressed = ctx.alloc().buffer(bodyLength);
+        try {
+            Compression.compress(snappy, out.slice(bodyIndex, bodyLength), compressed);
+            if (compressed.readableBytes() >= bodyLength) {
+                return;
+            }
+            out.writerIndex(bodyIndex);
+            out.writeBytes(compressed);
+            out.setByte(headerIndex + FLAGS_OFFSET, out.getByte(headerIndex + FLAGS_OFFSET) | FLAG_COMPRESSED);
+        } finally {
+            compressed.release();
+        }
+    }
+
+    /**
+     * 服务端已经能通过methodId定位方法，消息体中只保留参数
+     */
+    private static RpcRequest compact(RpcRequest request) {
+        RpcRequest compact = new RpcRequest();
+        compact.setParameters(request.getParameters());
+        return compact;
+    }
+
+    /**
+     * 批中的请求同样只保留参数，协议头中的字段已经按条目放在批的数组中
+     */
+    private static RpcBatch compact(RpcBatch batch) {
+        RpcBatch compact = new RpcBatch();
+        compact.setRequestIds(batch.getRequestIds());
+        compact.setTimeouts(batch.getTimeouts());
+        compact.setPriorities(batch.getPriorities());
+        compact.setMethodIds(batch.getMethodIds());
+        RpcRequest[] requests = batch.getRequests();
+        RpcRequest[] compacted = new RpcRequest[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            compacted[i] = requests[i].getMethodId() != 0 ? compact(requests[i]) : requests[i];
+        }
+        compact.setRequests(compacted);
+        return compact;
+    }
+
+    /**
+     * 整个帧的大小按条目平均计入各自方法的请求或响应大小
+     */
+    private static void recordBatchBytes(RpcBatch batch, int frameBytes) {
+        int share = frameBytes / Math.max(batch.size(), 1);
+        if (batch.isRequest()) {
+            for (RpcRequest request : batch.getRequests()) {
+                if (request.getMetrics() != null) {
+                    request.getMetrics().recordRequestBytes(share);
+                }
+            }
+        } else {
+            for (RpcResponse response : batch.getResponses()) {
+                if (response.getMetrics() != null) {
+                    response.getMetrics().recordResponseBytes(share);
+                }
+            }
+        }
+    }
+
+    private static Serializer serializerOf(byte id) {
+        Serializer serializer = Serializers.get(id);
+        return serializer != null ? serializer : Serializers.get(Serializers.DEFAULT_ID);
     }
 }
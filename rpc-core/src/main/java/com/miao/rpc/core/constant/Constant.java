@@ -8,8 +8,8 @@ public class Constant {
 
     public interface ZookeeperConstant {
         int ZK_SESSION_TIMEOUT = 5000;
-        String ZK_REGISTRY_PATH = "/registry";
-        String ZK_DATA_PATH = ZK_REGISTRY_PATH + "/data";
+        String ZK_REGISTRY_PATH = "/registry"; // 每个服务接口一个子节点：/registry/接口名
+        String ZK_PROVIDER_NODE = "provider"; // 接口节点下每个提供者的临时顺序节点的名称前缀，数据为其地址与元数据，见ProviderInfo
     }
 
     public interface LengthFieldConstant {
@@ -20,6 +20,39 @@ public class Constant {
         int INITIAL_BYTES_TO_STRIP = 4;
     }
 
+    /**
+     * 协议头格式，长度字段之后是固定布局的协议头，之后才是消息体：
+     * <pre>
+     * +--------+-------+---------+-----------+------+-------+------------+----------+-----------+---------+----------+------
+     * | length | magic | version | headerLen | type | flags | serializer | priority | requestId | timeout | methodId | body
+     * |   4    |   2   |    1    |     1     |  1   |   1   |     1      |    1     |     8     |    4    |    4     |
+     * +--------+-------+---------+-----------+------+-------+------------+----------+-----------+---------+----------+------
+     * </pre>
+     * length不包括自身；headerLen是从magic到协议头结束的字节数，新版本只在末尾追加字段，
+     * 旧版本按headerLen跳过不认识的字段即可找到消息体，因此协议可以演进而不影响旧的对端。
+     * methodId是服务端方法表中的下标，非0时消息体中省略接口名、方法名与参数类型。
+     * 以下OFFSET均相对于去掉长度字段之后的帧
+     */
+    public interface ProtocolConstant {
+        short MAGIC = 0x4D52; // "MR"
+        // 高4位为主版本，低4位为次版本。次版本只在协议头末尾追加字段，旧版本按headerLen跳过即可；
+        // 主版本不同说明协议头或消息体的格式不兼容，解码器直接拒绝
+        byte VERSION = 0x01;
+        int MAJOR_VERSION_MASK = 0xF0;
+        int MAGIC_OFFSET = 0;
+        int VERSION_OFFSET = 2;
+        int HEADER_LENGTH_OFFSET = 3;
+        int TYPE_OFFSET = 4;
+        int FLAGS_OFFSET = 5;
+        int SERIALIZER_OFFSET = 6;
+        int PRIORITY_OFFSET = 7;
+        int REQUEST_ID_OFFSET = 8;
+        int TIMEOUT_OFFSET = 16;
+        int METHOD_ID_OFFSET = 20;
+        int HEADER_LENGTH = 24; // 本版本的协议头长度
+        byte FLAG_COMPRESSED = 0x01; // flags中的位：消息体经过压缩，格式见Compression
+    }
+
     public enum ConnectionFailureStrategy {
         RETRY, CLOSE
     }
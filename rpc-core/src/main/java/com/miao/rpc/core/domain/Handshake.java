@@ -0,0 +1,60 @@
+package com.miao.rpc.core.domain;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 连接建立后客户端与服务端的握手信息，用于协商该连接默认使用的序列化方式，
+ * 服务端同时下发其方法表，客户端之后用方法在表中的下标代替接口名与方法名；双方还声明各自能否解压消息体、能否处理批量请求。
+ * 握手消息本身总是用默认的Protostuff序列化，保证双方都能解析
+ */
+@Data
+public class Handshake {
+    // 客户端：希望使用的序列化方式；服务端：最终确定的序列化方式
+    private byte serializer;
+    // 发送方支持的全部序列化方式
+    private byte[] supportedSerializers;
+    // 服务端：导出的全部方法的签名，下标即methodId，下标0保留为空串
+    private String[] methods;
+    // 客户端：由methods建立的 签名 -> methodId 索引，不传输
+    private transient Map<String, Integer> methodIds;
+    // 发送方能否解压被压缩的消息体，低版本对端没有该字段即为false
+    private boolean compression;
+    // 发送方能否处理BATCH帧，服务端声明支持后客户端才会合并请求，低版本对端没有该字段即为false
+    private boolean batch;
+
+    public boolean supports(byte id) {
+        if (supportedSerializers == null) {
+            return false;
+        }
+        for (byte supported : supportedSerializers) {
+            if (supported == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 客户端收到服务端的握手信息后调用，由methods建立签名索引，之后才把握手信息发布给请求线程
+     */
+    public void indexMethods() {
+        Map<String, Integer> ids = new HashMap<>();
+        if (methods != null) {
+            for (int i = 1; i < methods.length; i++) {
+                ids.put(methods[i], i);
+            }
+        }
+        methodIds = ids;
+    }
+
+    /**
+     * 查找方法签名在服务端方法表中的下标，找不到时返回0
+     */
+    public int methodIdOf(String signature) {
+        Integer id = methodIds != null ? methodIds.get(signature) : null;
+        return id != null ? id : 0;
+    }
+}
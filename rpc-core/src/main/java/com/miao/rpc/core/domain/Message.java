@@ -11,23 +11,46 @@ public class Message {
     private byte type;
     private RpcRequest request;
     private RpcResponse response;
+    private Handshake handshake;
+    private StreamFrame stream;
+    private RpcBatch batch;
 
     public Message(byte type) {
         this.type = type;
     }
 
     public static Message buildRequest(RpcRequest request) {
-        return new Message(Message.REQUEST, request, null);
+        return new Message(Message.REQUEST, request, null, null, null, null);
     }
 
     public static Message buildResponse(RpcResponse response) {
-        return new Message(Message.RESPONSE, null, response);
+        return new Message(Message.RESPONSE, null, response, null, null, null);
+    }
+
+    public static Message buildHandshake(Handshake handshake) {
+        return new Message(Message.HANDSHAKE, null, null, handshake, null, null);
+    }
+
+    public static Message buildStream(StreamFrame frame) {
+        return new Message(Message.STREAM, null, null, null, frame, null);
+    }
+
+    public static Message buildCredit(StreamFrame frame) {
+        return new Message(Message.CREDIT, null, null, null, frame, null);
+    }
+
+    public static Message buildBatch(RpcBatch batch) {
+        return new Message(Message.BATCH, null, null, null, null, batch);
     }
 
     public static final byte PING = 1;
     public static final byte PONG = 1 << 1;
     public static final byte REQUEST = 1 << 2;
     public static final byte RESPONSE = 1 << 3;
+    public static final byte HANDSHAKE = 1 << 4;
+    public static final byte STREAM = 1 << 5; // 流式调用的数据帧
+    public static final byte CREDIT = 1 << 6; // 流式调用的流量控制帧，由接收方发出
+    public static final byte BATCH = (byte) (1 << 7); // 一批请求，或对应的一批响应
     public static final Message PING_MSG = new Message(Message.PING);
     public static final Message PONG_MSG = new Message(Message.PONG);
 }
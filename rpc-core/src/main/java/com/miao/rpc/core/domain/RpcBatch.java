@@ -0,0 +1,75 @@
+package com.miao.rpc.core.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一批请求或一批响应，在一个BATCH帧中传输。
+ * 客户端把短时间内发往同一连接的小请求合并成一批，服务端并行处理其中的每个请求，全部完成后把响应合并成一批返回。
+ * 单个请求放在协议头中的字段(requestId、超时时间、优先级、methodId)在这里按条目放在数组中，
+ * 协议头中只放批的id，即第一个条目的requestId；同一批的条目使用相同的序列化方式
+ */
+@Data
+public class RpcBatch {
+
+    // 批的id，即第一个条目的requestId，放在协议头中传输
+    private transient long batchId;
+    // 整批使用的序列化方式，放在协议头中
+    private transient byte serializer;
+    // 解码时记录的整个帧的字节数，只在本地使用
+    private transient int bytes;
+    private long[] requestIds;
+    private int[] timeouts;
+    private byte[] priorities;
+    private int[] methodIds;
+    private RpcRequest[] requests;
+    private RpcResponse[] responses;
+
+    /**
+     * 客户端：由同一序列化方式的多个请求组成一批
+     */
+    public static RpcBatch ofRequests(List<RpcRequest> requests) {
+        int n = requests.size();
+        RpcBatch batch = new RpcBatch();
+        batch.setBatchId(requests.get(0).getRequestId());
+        batch.setSerializer(requests.get(0).getSerializer());
+        batch.setRequestIds(new long[n]);
+        batch.setTimeouts(new int[n]);
+        batch.setPriorities(new byte[n]);
+        batch.setMethodIds(new int[n]);
+        batch.setRequests(new RpcRequest[n]);
+        for (int i = 0; i < n; i++) {
+            RpcRequest request = requests.get(i);
+            batch.requestIds[i] = request.getRequestId();
+            batch.timeouts[i] = request.getTimeout();
+            batch.priorities[i] = request.getPriority();
+            batch.methodIds[i] = request.getMethodId();
+            batch.requests[i] = request;
+        }
+        return batch;
+    }
+
+    /**
+     * 服务端：一批请求对应的响应，顺序与请求无关，客户端按requestId匹配
+     */
+    public static RpcBatch ofResponses(long batchId, byte serializer, RpcResponse[] responses) {
+        RpcBatch batch = new RpcBatch();
+        batch.setBatchId(batchId);
+        batch.setSerializer(serializer);
+        batch.setRequestIds(new long[responses.length]);
+        for (int i = 0; i < responses.length; i++) {
+            batch.requestIds[i] = responses[i].getRequestId();
+        }
+        batch.setResponses(responses);
+        return batch;
+    }
+
+    public int size() {
+        return requestIds != null ? requestIds.length : 0;
+    }
+
+    public boolean isRequest() {
+        return requests != null;
+    }
+}
@@ -1,11 +1,31 @@
 package com.miao.rpc.core.domain;
 
+import com.miao.rpc.core.metrics.MethodMetrics;
 import lombok.Data;
 
 @Data
 public class RpcRequest {
 
-    private String requestId;
+    // 由客户端按连接单调递增分配，放在协议头中传输，transient使其不参与Protostuff序列化
+    private transient long requestId;
+    // 本请求使用的序列化方式的id，同样放在协议头中，0表示使用该连接协商的序列化方式
+    private transient byte serializer;
+    // 调用超时时间(毫秒)，同样放在协议头中，服务端据此丢弃调用方已经放弃等待的请求
+    private transient int timeout;
+    // 请求优先级，放在协议头中，中间的handler不需要反序列化消息体就能据此排队或丢弃
+    private transient byte priority;
+    // 服务端方法表中的下标，由握手时服务端下发的方法表确定，放在协议头中，0表示未知，按接口名与方法名查找
+    private transient int methodId;
+    // 方法签名，客户端用于在握手得到的方法表中查找methodId，不传输
+    private transient String signature;
+    // 服务端收到请求的时间(System.nanoTime)，只在服务端本地使用
+    private transient long receiveTime;
+    // 服务端收到请求时由timeout计算出的截止时间，只在服务端本地使用
+    private transient long deadline;
+    // 本请求计入的方法统计，客户端发送前、服务端分发时设置，编码器据此记录请求大小，只在本地使用
+    private transient MethodMetrics metrics;
+    // 解码时记录的整个帧的字节数，只在本地使用
+    private transient int bytes;
     private String className;
     private String methodName;
     private Class<?>[] parameterTypes;
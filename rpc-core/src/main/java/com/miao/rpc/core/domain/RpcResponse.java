@@ -1,11 +1,19 @@
 package com.miao.rpc.core.domain;
 
+import com.miao.rpc.core.metrics.MethodMetrics;
 import lombok.Data;
 
 @Data
 public class RpcResponse {
 
-    private String requestId;
+    // 由客户端按连接单调递增分配，放在协议头中传输，transient使其不参与Protostuff序列化
+    private transient long requestId;
+    // 响应使用与请求相同的序列化方式，id放在协议头中
+    private transient byte serializer;
+    // 服务端：该响应所属方法的统计，编码器据此记录响应大小，只在本地使用
+    private transient MethodMetrics metrics;
+    // 解码时记录的整个帧的字节数，只在本地使用
+    private transient int bytes;
     private Throwable cause;
     private Object result;
 
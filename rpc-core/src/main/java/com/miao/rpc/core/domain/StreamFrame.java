@@ -0,0 +1,102 @@
+package com.miao.rpc.core.domain;
+
+import com.miao.rpc.core.metrics.MethodMetrics;
+import lombok.Data;
+
+/**
+ * 流式调用中的一帧，以发起调用的请求的requestId作为流的id。
+ * STREAM帧携带一批元素，最后一帧end为true，异常结束时带有cause；
+ * CREDIT帧由接收方发给发送方，允许对方再发送credits个元素，cancel为true表示接收方不再需要后续元素
+ */
+@Data
+public class StreamFrame {
+
+    // 所属流的id，即发起调用的请求的requestId，放在协议头中传输
+    private transient long requestId;
+    // 与发起调用的请求使用相同的序列化方式，id放在协议头中
+    private transient byte serializer;
+    // 发送方：该流所属方法的统计，编码器据此记录帧的大小，只在本地使用
+    private transient MethodMetrics metrics;
+    // 发送方：客户端发往服务端的流，编码器把帧的大小计为请求大小，否则计为响应大小，只在本地使用
+    private transient boolean upstream;
+    // 解码时记录的整个帧的字节数，只在本地使用
+    private transient int bytes;
+    private Object[] items;
+    private boolean end;
+    private Throwable cause;
+    private int credits;
+    private boolean cancel;
+    // items中null元素的下标：Protostuff序列化数组时跳过null，解码后其余元素会前移，据此放回原位
+    private int[] nulls;
+
+    public static StreamFrame data(long requestId, byte serializer, Object[] items, boolean end) {
+        StreamFrame frame = new StreamFrame();
+        frame.setRequestId(requestId);
+        frame.setSerializer(serializer);
+        frame.setItems(items);
+        frame.setNulls(nullIndexes(items));
+        frame.setEnd(end);
+        return frame;
+    }
+
+    /**
+     * 解码后把null元素放回原来的位置，null在原位(Kryo)或被移到末尾(Protostuff)时结果相同
+     */
+    public void restoreNulls() {
+        if (items == null || nulls == null) {
+            return;
+        }
+        Object[] restored = new Object[items.length];
+        int next = 0;
+        int n = 0;
+        for (int i = 0; i < restored.length; i++) {
+            if (n < nulls.length && nulls[n] == i) {
+                n++;
+                continue;
+            }
+            while (next < items.length && items[next] == null) {
+                next++;
+            }
+            restored[i] = next < items.length ? items[next++] : null;
+        }
+        items = restored;
+        nulls = null;
+    }
+
+    private static int[] nullIndexes(Object[] items) {
+        if (items == null) {
+            return null;
+        }
+        int count = 0;
+        for (Object item : items) {
+            if (item == null) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        int[] indexes = new int[count];
+        for (int i = 0, n = 0; i < items.length; i++) {
+            if (items[i] == null) {
+                indexes[n++] = i;
+            }
+        }
+        return indexes;
+    }
+
+    public static StreamFrame error(long requestId, byte serializer, Throwable cause) {
+        StreamFrame frame = data(requestId, serializer, null, true);
+        frame.setCause(cause);
+        return frame;
+    }
+
+    public static StreamFrame credit(long requestId, byte serializer, int credits, boolean cancel) {
+        StreamFrame frame = new StreamFrame();
+        frame.setRequestId(requestId);
+        frame.setSerializer(serializer);
+        frame.setCredits(credits);
+        frame.setCancel(cancel);
+        return frame;
+    }
+}
@@ -0,0 +1,78 @@
+package com.miao.rpc.core.interceptor;
+
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * 一端(客户端或服务端)注册的全部RpcInterceptor，按requestId采样：每sampleInterval个请求采样1个，
+ * 同一请求的各个钩子采样结果一致。调用方先用sampled判断，没有注册拦截器时只有一次数组长度的比较
+ */
+@Slf4j
+public final class Interceptors {
+
+    public static final Interceptors NONE = new Interceptors(new RpcInterceptor[0], 1);
+
+    private final RpcInterceptor[] interceptors;
+    private final int sampleInterval;
+
+    private Interceptors(RpcInterceptor[] interceptors, int sampleInterval) {
+        this.interceptors = interceptors;
+        this.sampleInterval = Math.max(sampleInterval, 1);
+    }
+
+    /**
+     * @param configured 通过代码注册的拦截器
+     * @param sampleInterval 每多少个请求采样1个，1表示全部采样
+     */
+    public static Interceptors of(List<RpcInterceptor> configured, int sampleInterval) {
+        List<RpcInterceptor> all = new ArrayList<>(configured);
+        for (RpcInterceptor interceptor : ServiceLoader.load(RpcInterceptor.class)) {
+            all.add(interceptor);
+        }
+        if (all.isEmpty()) {
+            return NONE;
+        }
+        all.forEach(interceptor -> log.info("注册拦截器：{}", interceptor.getClass().getName()));
+        return new Interceptors(all.toArray(new RpcInterceptor[0]), sampleInterval);
+    }
+
+    public boolean sampled(long requestId) {
+        return interceptors.length > 0 && (sampleInterval == 1 || requestId % sampleInterval == 0);
+    }
+
+    public void onEncode(Message message, int bytes) {
+        for (RpcInterceptor interceptor : interceptors) {
+            interceptor.onEncode(message, bytes);
+        }
+    }
+
+    public void onSend(RpcRequest request) {
+        for (RpcInterceptor interceptor : interceptors) {
+            interceptor.onSend(request);
+        }
+    }
+
+    public void onReceive(Message message, int bytes) {
+        for (RpcInterceptor interceptor : interceptors) {
+            interceptor.onReceive(message, bytes);
+        }
+    }
+
+    public void onInvoke(RpcRequest request) {
+        for (RpcInterceptor interceptor : interceptors) {
+            interceptor.onInvoke(request);
+        }
+    }
+
+    public void onComplete(RpcRequest request, RpcResponse response, long elapsedNanos) {
+        for (RpcInterceptor interceptor : interceptors) {
+            interceptor.onComplete(request, response, elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.miao.rpc.core.interceptor;
+
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把各个事件打印到日志，用于调试，只输出requestId、方法与大小等字段，不输出参数及结果。
+ * 配合采样间隔使用，避免日志输出成为瓶颈
+ */
+@Slf4j
+public class LoggingInterceptor implements RpcInterceptor {
+
+    @Override
+    public void onEncode(Message message, int bytes) {
+        log.info("编码{}，requestId：{}，{}字节", typeOf(message), idOf(message), bytes);
+    }
+
+    @Override
+    public void onSend(RpcRequest request) {
+        log.info("发送请求{}：{}", request.getRequestId(), methodOf(request));
+    }
+
+    @Override
+    public void onReceive(Message message, int bytes) {
+        log.info("解码{}，requestId：{}，{}字节", typeOf(message), idOf(message), bytes);
+    }
+
+    @Override
+    public void onInvoke(RpcRequest request) {
+        log.info("调用请求{}：{}", request.getRequestId(), methodOf(request));
+    }
+
+    @Override
+    public void onComplete(RpcRequest request, RpcResponse response, long elapsedNanos) {
+        log.info("请求{}结束：{}，耗时{}us，{}", request.getRequestId(), methodOf(request), elapsedNanos / 1000,
+                response.hasError() ? "异常：" + response.getCause() : "成功");
+    }
+
+    private static String methodOf(RpcRequest request) {
+        return request.getSignature() != null ? request.getSignature()
+                : request.getClassName() + "#" + request.getMethodName();
+    }
+
+    private static String typeOf(Message message) {
+        if (message.getType() == Message.BATCH) {
+            return (message.getBatch().isRequest() ? "批量请求" : "批量响应") + "(" + message.getBatch().size() + "条)";
+        }
+        return message.getType() == Message.REQUEST ? "请求" : "响应";
+    }
+
+    private static long idOf(Message message) {
+        if (message.getType() == Message.BATCH) {
+            return message.getBatch().getBatchId();
+        }
+        return message.getType() == Message.REQUEST
+                ? message.getRequest().getRequestId() : message.getResponse().getRequestId();
+    }
+}
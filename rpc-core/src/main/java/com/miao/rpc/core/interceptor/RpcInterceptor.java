@@ -0,0 +1,46 @@
+package com.miao.rpc.core.interceptor;
+
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+
+/**
+ * 请求处理过程中的事件钩子，客户端与服务端共用，只对被采样的请求/响应调用。
+ *
+ * 钩子直接在IO线程或业务线程上同步调用，实现必须很快且不能阻塞；参数都是已有的对象，
+ * 不会为调用钩子额外创建事件对象。实现可以通过RpcClient/RpcServer的addInterceptor注册，
+ * 也可以在META-INF/services/com.miao.rpc.core.interceptor.RpcInterceptor中声明，由ServiceLoader加载
+ */
+public interface RpcInterceptor {
+
+    /**
+     * 请求或响应编码完成，bytes为整个帧的字节数(包括长度字段)
+     */
+    default void onEncode(Message message, int bytes) {
+    }
+
+    /**
+     * 客户端：请求交给channel发送(包括重试)
+     */
+    default void onSend(RpcRequest request) {
+    }
+
+    /**
+     * 请求或响应解码完成，bytes为整个帧的字节数(包括长度字段)
+     */
+    default void onReceive(Message message, int bytes) {
+    }
+
+    /**
+     * 服务端：即将调用服务方法
+     */
+    default void onInvoke(RpcRequest request) {
+    }
+
+    /**
+     * 一次调用结束。客户端：收到响应或超时，elapsedNanos从第一次发送开始计算；
+     * 服务端：响应已交给channel，elapsedNanos从收到请求开始计算，包括在线程池中排队的时间
+     */
+    default void onComplete(RpcRequest request, RpcResponse response, long elapsedNanos) {
+    }
+}
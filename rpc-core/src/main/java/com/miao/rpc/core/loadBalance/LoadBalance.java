@@ -1,5 +1,8 @@
 package com.miao.rpc.core.loadBalance;
 
+import com.miao.rpc.core.registry.ProviderInfo;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -8,4 +11,16 @@ import java.util.List;
 public interface LoadBalance {
     String get(String clientAddress);
     void update(List<String> addresses);
+
+    /**
+     * 注册中心的提供者变化时调用，带有权重、容量等元数据。默认只取地址交给update，
+     * 需要按权重分配流量的实现覆盖此方法
+     */
+    default void updateProviders(List<ProviderInfo> providers) {
+        List<String> addresses = new ArrayList<>(providers.size());
+        for (ProviderInfo provider : providers) {
+            addresses.add(provider.getAddress());
+        }
+        update(addresses);
+    }
 }
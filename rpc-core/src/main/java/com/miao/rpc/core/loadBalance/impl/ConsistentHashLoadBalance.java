@@ -1,6 +1,7 @@
 package com.miao.rpc.core.loadBalance.impl;
 
 import com.miao.rpc.core.loadBalance.LoadBalance;
+import com.miao.rpc.core.registry.ProviderInfo;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.UnsupportedEncodingException;
@@ -17,68 +18,99 @@ import java.util.concurrent.ConcurrentSkipListMap;
  *
  * 首先关于loadBalance：从zookeeper中获得地址列表，构成节点储存在map中，客户端就是从map中获取服务器地址的，
  * 也就是说我们将地址存储在了本地客户端，这种方式可能导致客户端获得的地址是无效的，因为相应地址的服务器已下线，
- * 而地址信息还未及时更新，这里我采取的方式是在客户端连接远程时失败重连，利用guava retry，当连接出错旧多尝试几次。
+ * 而地址信息还未及时更新，这里我采取的方式是在客户端连接远程时失败重连：RpcClient#retryConnect 在EventLoop上延迟重试，每次重新选取地址，最多尝试3次。
  *
  * 关于线程安全：
  * 1，update方法是watch机制触发的，不存在竞争所以没有用锁保护。
  * 给/registry节点设置watch触发器，监控子节点增加或删除(对应服务器地址增加/删除)，
  * 事件的处理方式：获取最新地址列表，调用loadBalance的update更新地址节点。
  * 因此我用ConcurrentSkipListMap，确保更新后地址的及时获取。
- * 2，oldAddress 是volatile的，这就足够了因为我们不会对该列表中的元素进行操作，而是直接替换对象。
+ * 2，oldGroups 是volatile的，这就足够了因为我们不会修改该map，而是直接替换对象。
+ * 3，注册中心带有权重时，地址在circle上的点数与权重成正比，权重大的服务器分到更多的客户端。
  */
 @Slf4j
 public class ConsistentHashLoadBalance implements LoadBalance {
 
-    private static final ConcurrentSkipListMap<Long, String> hashCircle = new ConcurrentSkipListMap<>();//顺序+安全的需求
-    private volatile List<String> oldAddress = new ArrayList<>();//上次更新的地址列表
-    private static final int REPLICA_NUMBER = 20; // 每个地址有20个点分散在circle上
+    private final ConcurrentSkipListMap<Long, String> hashCircle = new ConcurrentSkipListMap<>();//顺序+安全的需求，每个接口一个实例，不能共享
+    private volatile Map<String, Integer> oldGroups = new HashMap<>();//上次更新时每个地址在circle上的组数，每组4个点
+    private static final int REPLICA_NUMBER = 20; // 默认权重的地址有20个点分散在circle上
+    private static final int MAX_GROUPS = 400; // 每个地址最多的组数，避免权重很大时circle过大
 
     /**
      * 根据每个客户端的ID计算hash来获取服务器地址，
      * 如果正好有匹配的节点hash，则返回该节点存储的服务器地址，
-     * 若没则返回第一个大于给hash的节点值
+     * 若没则返回第一个大于给hash的节点值，没有任何地址时返回null
      */
     @Override
     public String get(String clientAddress) {
         byte[] digest = md5(clientAddress);
         long hash = hash(digest, 0);
         Map.Entry<Long, String> ceil = hashCircle.ceilingEntry(hash);
-        return ceil == null ? hashCircle.firstEntry().getValue() : ceil.getValue();
+        if (ceil == null) {
+            ceil = hashCircle.firstEntry();
+        }
+        return ceil == null ? null : ceil.getValue();
     }
 
     /**
-     * 更新地址，oldAddress是上次更新的地址节点，本次更新时先取
+     * 更新地址，每个地址使用默认的点数
      */
     @Override
     public void update(List<String> addresses) {
-        if (oldAddress.size() == 0) {
-            oldAddress = addresses;
-            for (String address : addresses) {
-                add(address);
+        Map<String, Integer> groups = new HashMap<>();
+        for (String address : addresses) {
+            groups.put(address, REPLICA_NUMBER / 4);
+        }
+        apply(groups);
+    }
+
+    /**
+     * 按权重更新地址，地址在circle上的点数与权重成正比，默认权重为20个点；权重全部为0时按默认点数
+     */
+    @Override
+    public void updateProviders(List<ProviderInfo> providers) {
+        boolean allZero = true;
+        for (ProviderInfo provider : providers) {
+            allZero &= provider.getWeight() == 0;
+        }
+        Map<String, Integer> groups = new HashMap<>();
+        for (ProviderInfo provider : providers) {
+            int weight = allZero ? ProviderInfo.DEFAULT_WEIGHT : provider.getWeight();
+            long n = Math.round((double) weight * (REPLICA_NUMBER / 4) / ProviderInfo.DEFAULT_WEIGHT);
+            if (weight > 0) {
+                groups.put(provider.getAddress(), (int) Math.max(1, Math.min(n, MAX_GROUPS)));
             }
-        } else {
-            // 新旧地址集合取交集，这部分不用删除
-            Set<String> intersect = new HashSet<>(addresses);
-            intersect.retainAll(oldAddress); // 取交集
-            for (String address : oldAddress) {
-                if (!intersect.contains(address)) {
-                    remove(address);
-                }
+        }
+        apply(groups);
+    }
+
+    /**
+     * 与上次更新的地址比较，只增删变化的部分：同一地址的第i组点总是相同的，
+     * 组数变化时只增加或删除多出的组，不变的部分不受影响
+     */
+    private void apply(Map<String, Integer> groups) {
+        Map<String, Integer> old = oldGroups;
+        for (Map.Entry<String, Integer> entry : old.entrySet()) {
+            Integer now = groups.get(entry.getKey());
+            int keep = now == null ? 0 : now;
+            if (keep < entry.getValue()) {
+                remove(entry.getKey(), keep, entry.getValue());
             }
-            // 将新地址集合中剩余部分添加进circle
-            for (String address : addresses) {
-                if (!intersect.contains(address)) {
-                    add(address);
-                }
+        }
+        for (Map.Entry<String, Integer> entry : groups.entrySet()) {
+            Integer before = old.get(entry.getKey());
+            int from = before == null ? 0 : before;
+            if (from < entry.getValue()) {
+                add(entry.getKey(), from, entry.getValue());
             }
-            oldAddress = addresses;
         }
+        oldGroups = groups;
     }
 
-    private void add(String address) {
-        for (int i = 0; i < REPLICA_NUMBER / 4; i++) {
-            // 5轮循环，每次产生一个新的digest数组，一个数组产生4个hash，存储 hash->address 映射
-            // 这样就将一个地址尽量均匀的分散在circle的20处位置上
+    private void add(String address, int fromGroup, int toGroup) {
+        for (int i = fromGroup; i < toGroup; i++) {
+            // 每次产生一个新的digest数组，一个数组产生4个hash，存储 hash->address 映射
+            // 这样就将一个地址尽量均匀的分散在circle上
             byte[] digest = md5(address + i);
             for (int k = 0; k < 4; k++) {
                 long m = hash(digest, k);
@@ -87,12 +119,12 @@ public class ConsistentHashLoadBalance implements LoadBalance {
         }
     }
 
-    private void remove(String address) {
-        for (int i = 0; i < REPLICA_NUMBER / 4; i++) {
+    private void remove(String address, int fromGroup, int toGroup) {
+        for (int i = fromGroup; i < toGroup; i++) {
             byte[] digest = md5(address + i);
             for (int j = 0; j < 4; j++) {
-                long m = hash(digest, i);
-                hashCircle.remove(m);
+                long m = hash(digest, j);
+                hashCircle.remove(m, address);
             }
         }
     }
@@ -1,22 +1,70 @@
 package com.miao.rpc.core.loadBalance.impl;
 
 import com.miao.rpc.core.loadBalance.LoadBalance;
+import com.miao.rpc.core.registry.ProviderInfo;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * 按权重随机，权重全部相同时即为普通随机。地址与累计权重放在一个不可变对象中整体替换，
+ * 请求线程读取时不会看到只更新了一半的数据
+ */
 public class RandomLoadBalance implements LoadBalance {
 
-    private volatile List<String> addresses;
+    private volatile Weighted weighted;
 
     @Override
     public String get(String clientAddress) {
-        if (addresses == null || addresses.size() == 0) return null;
-        return addresses.get(ThreadLocalRandom.current().nextInt(addresses.size()));
+        Weighted current = weighted;
+        if (current == null || current.addresses.length == 0) return null;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (current.cumulative == null) {
+            return current.addresses[random.nextInt(current.addresses.length)];
+        }
+        int i = Arrays.binarySearch(current.cumulative, random.nextInt(current.total) + 1);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        while (i > 0 && current.cumulative[i - 1] == current.cumulative[i]) {
+            i--; // 跳过权重为0的地址，它们的累计权重与前一个相同
+        }
+        return current.addresses[i];
     }
 
     @Override
     public void update(List<String> addresses) {
-        this.addresses = addresses;
+        this.weighted = new Weighted(addresses.toArray(new String[0]), null, 0);
+    }
+
+    @Override
+    public void updateProviders(List<ProviderInfo> providers) {
+        String[] addresses = new String[providers.size()];
+        int[] cumulative = new int[providers.size()];
+        long total = 0;
+        boolean same = true;
+        for (int i = 0; i < addresses.length; i++) {
+            ProviderInfo provider = providers.get(i);
+            addresses[i] = provider.getAddress();
+            total += provider.getWeight();
+            cumulative[i] = (int) Math.min(total, Integer.MAX_VALUE);
+            same &= provider.getWeight() == providers.get(0).getWeight();
+        }
+        // 权重相同或全部为0时不需要累计权重
+        boolean uniform = same || total == 0 || total > Integer.MAX_VALUE;
+        this.weighted = new Weighted(addresses, uniform ? null : cumulative, (int) total);
+    }
+
+    private static class Weighted {
+        final String[] addresses;
+        final int[] cumulative; // 第i个地址的累计权重，null表示不按权重
+        final int total;
+
+        Weighted(String[] addresses, int[] cumulative, int total) {
+            this.addresses = addresses;
+            this.cumulative = cumulative;
+            this.total = total;
+        }
     }
 }
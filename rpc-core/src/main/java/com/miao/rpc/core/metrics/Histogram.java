@@ -0,0 +1,92 @@
+package com.miao.rpc.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的对数-线性分桶直方图，用于记录耗时(纳秒)与消息大小(字节)，思路与HdrHistogram相同：
+ * 小于64的值每个值一个桶，之后每个2的幂区间再等分为32个桶，相对误差不超过1/32，
+ * 最大可记录2^40(纳秒约18分钟)，超出的值记在最后一个桶中。
+ * 每条带约9KB，条带数为CPU数向下取2的幂，最多4条
+ *
+ * 记录时只对一个桶做一次原子加，没有锁；多个线程同时记录相近的值时会落在同一个桶上，
+ * 所以桶数组按线程分成若干条带，读取时再把各条带相加
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5; // 每个2的幂区间等分为2^5个桶
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS << 1; // 小于此值的每个值一个桶
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        stripes[stripe].incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * 各条带相加后的当前值，与记录并发进行时各个字段之间可能相差几次记录
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new HistogramSnapshot(counts, count.sum(), sum.sum(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS; // 最高的6位去掉首位的1
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * 桶中能记录的最大值，百分位数按桶的上界报告，不会低估
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int offset = bucket - LINEAR_LIMIT;
+        int exponent = offset / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long top = SUB_BUCKETS + offset % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    private static int stripes() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int stripes = Integer.highestOneBit(Math.max(cpus, 1));
+        return Math.min(stripes, 4);
+    }
+}
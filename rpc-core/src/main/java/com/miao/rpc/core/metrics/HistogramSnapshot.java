@@ -0,0 +1,78 @@
+package com.miao.rpc.core.metrics;
+
+/**
+ * 直方图某一时刻的只读副本，百分位数按桶的上界报告。
+ * 统计值都是从启动开始累计的，需要某段时间内的分布时用since减去上一次的快照
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long count, long sum, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * 累计的最大值，since得到的区间快照中是区间内非空的最高桶的上界
+     */
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile 百分位，比如99.9
+     * @return 不小于该比例的记录值的最小桶上界，没有记录时为0
+     */
+    public long valueAt(double percentile) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(Histogram.upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 本快照与更早的快照之间新增的记录
+     */
+    public HistogramSnapshot since(HistogramSnapshot previous) {
+        long[] delta = new long[counts.length];
+        int highest = -1;
+        for (int i = 0; i < counts.length; i++) {
+            delta[i] = Math.max(counts[i] - previous.counts[i], 0);
+            if (delta[i] > 0) {
+                highest = i;
+            }
+        }
+        long deltaMax = highest < 0 ? 0 : Math.min(Histogram.upperBoundOf(highest), max);
+        return new HistogramSnapshot(delta, count - previous.count, sum - previous.sum, deltaMax);
+    }
+}
@@ -0,0 +1,61 @@
+package com.miao.rpc.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个方法的统计：请求数、失败数、在途数、耗时分布以及请求/响应的帧大小分布。
+ * 计数都用LongAdder，多个线程同时更新时分散在不同的单元上，不会争用同一个缓存行
+ *
+ * 客户端：从发出请求到收到响应或超时；服务端：从收到请求到响应交给channel，包括排队时间
+ */
+public class MethodMetrics {
+
+    private final String method;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final Histogram latency = new Histogram(); // 纳秒
+    private final Histogram requestBytes = new Histogram();
+    private final Histogram responseBytes = new Histogram();
+
+    public MethodMetrics(String method) {
+        this.method = method;
+    }
+
+    public void start() {
+        requests.increment();
+        inFlight.increment();
+    }
+
+    public void complete(long elapsedNanos, boolean error) {
+        inFlight.decrement();
+        if (error) {
+            errors.increment();
+        }
+        latency.record(elapsedNanos);
+    }
+
+    /**
+     * @param bytes 整个帧的字节数，0表示未知(比如请求未发出就超时)，不记录
+     */
+    public void recordRequestBytes(int bytes) {
+        if (bytes > 0) {
+            requestBytes.record(bytes);
+        }
+    }
+
+    public void recordResponseBytes(int bytes) {
+        if (bytes > 0) {
+            responseBytes.record(bytes);
+        }
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public MethodSnapshot snapshot() {
+        return new MethodSnapshot(method, requests.sum(), errors.sum(), inFlight.sum(),
+                latency.snapshot(), requestBytes.snapshot(), responseBytes.snapshot());
+    }
+}
@@ -0,0 +1,29 @@
+package com.miao.rpc.core.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * MethodMetrics某一时刻的只读副本，耗时单位为纳秒，大小单位为字节
+ */
+@Getter
+@AllArgsConstructor
+public class MethodSnapshot {
+
+    private final String method;
+    private final long requests;
+    private final long errors;
+    private final long inFlight;
+    private final HistogramSnapshot latency;
+    private final HistogramSnapshot requestBytes;
+    private final HistogramSnapshot responseBytes;
+
+    /**
+     * 本快照与同一方法更早的快照之间的变化，在途数取本快照的值
+     */
+    public MethodSnapshot since(MethodSnapshot previous) {
+        return new MethodSnapshot(method, requests - previous.requests, errors - previous.errors, inFlight,
+                latency.since(previous.latency), requestBytes.since(previous.requestBytes),
+                responseBytes.since(previous.responseBytes));
+    }
+}
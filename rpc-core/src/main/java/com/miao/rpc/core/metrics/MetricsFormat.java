@@ -0,0 +1,96 @@
+package com.miao.rpc.core.metrics;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 把RpcMetrics的快照格式化为便于阅读的文本或JSON，耗时输出为微秒
+ */
+public final class MetricsFormat {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private MetricsFormat() {
+    }
+
+    public static String text(List<RpcMetrics> registries) {
+        StringBuilder sb = new StringBuilder();
+        for (RpcMetrics registry : registries) {
+            for (MethodSnapshot m : registry.snapshot()) {
+                HistogramSnapshot latency = m.getLatency();
+                sb.append(registry.getName()).append(' ').append(m.getMethod()).append('\n');
+                sb.append(String.format(Locale.ROOT, "  requests=%d errors=%d inFlight=%d%n",
+                        m.getRequests(), m.getErrors(), m.getInFlight()));
+                sb.append(String.format(Locale.ROOT, "  latency(us) mean=%.1f p50=%.1f p90=%.1f p99=%.1f p999=%.1f max=%.1f%n",
+                        latency.getMean() / 1000, micros(latency, 50), micros(latency, 90), micros(latency, 99),
+                        micros(latency, 99.9), latency.getMax() / 1000.0));
+                sb.append(String.format(Locale.ROOT, "  requestBytes mean=%.0f p99=%d max=%d, responseBytes mean=%.0f p99=%d max=%d%n",
+                        m.getRequestBytes().getMean(), m.getRequestBytes().valueAt(99), m.getRequestBytes().getMax(),
+                        m.getResponseBytes().getMean(), m.getResponseBytes().valueAt(99), m.getResponseBytes().getMax()));
+            }
+        }
+        return sb.toString();
+    }
+
+    public static String json(List<RpcMetrics> registries) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int r = 0; r < registries.size(); r++) {
+            RpcMetrics registry = registries.get(r);
+            if (r > 0) {
+                sb.append(',');
+            }
+            string(sb, registry.getName()).append(":[");
+            List<MethodSnapshot> snapshots = registry.snapshot();
+            for (int i = 0; i < snapshots.size(); i++) {
+                MethodSnapshot m = snapshots.get(i);
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"method\":");
+                string(sb, m.getMethod());
+                sb.append(",\"requests\":").append(m.getRequests())
+                        .append(",\"errors\":").append(m.getErrors())
+                        .append(",\"inFlight\":").append(m.getInFlight())
+                        .append(",\"latencyMicros\":{");
+                HistogramSnapshot latency = m.getLatency();
+                sb.append(String.format(Locale.ROOT, "\"mean\":%.1f,\"p50\":%.1f,\"p90\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f}",
+                        latency.getMean() / 1000, micros(latency, 50), micros(latency, 90), micros(latency, 99),
+                        micros(latency, 99.9), latency.getMax() / 1000.0));
+                sb.append(",\"requestBytes\":");
+                bytes(sb, m.getRequestBytes());
+                sb.append(",\"responseBytes\":");
+                bytes(sb, m.getResponseBytes());
+                sb.append('}');
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static double micros(HistogramSnapshot latency, double percentile) {
+        return latency.valueAt(percentile) / 1000.0;
+    }
+
+    private static void bytes(StringBuilder sb, HistogramSnapshot size) {
+        sb.append(String.format(Locale.ROOT, "{\"count\":%d,\"mean\":%.0f", size.getCount(), size.getMean()));
+        for (double p : PERCENTILES) {
+            sb.append(",\"p").append(p == 99.9 ? "999" : String.valueOf((int) p)).append("\":").append(size.valueAt(p));
+        }
+        sb.append(",\"max\":").append(size.getMax()).append('}');
+    }
+
+    private static StringBuilder string(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+}
@@ -0,0 +1,60 @@
+package com.miao.rpc.core.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 用JDK自带的HttpServer输出指标，只用于本机查看，默认监听127.0.0.1：
+ * GET /metrics 输出文本，GET /metrics?format=json 输出JSON。
+ * 只有一个处理线程，每次请求时才生成快照，不影响请求处理
+ */
+@Slf4j
+public class MetricsHttpServer {
+
+    private final HttpServer server;
+    private final List<RpcMetrics> registries;
+
+    public MetricsHttpServer(int port, RpcMetrics... registries) throws IOException {
+        this(new InetSocketAddress("127.0.0.1", port), registries);
+    }
+
+    public MetricsHttpServer(InetSocketAddress address, RpcMetrics... registries) throws IOException {
+        this.registries = Arrays.asList(registries);
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        log.info("指标输出地址：http://{}:{}/metrics", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String query = exchange.getRequestURI().getQuery();
+            boolean json = query != null && query.contains("format=json");
+            byte[] body = (json ? MetricsFormat.json(registries) : MetricsFormat.text(registries))
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                    json ? "application/json; charset=utf-8" : "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
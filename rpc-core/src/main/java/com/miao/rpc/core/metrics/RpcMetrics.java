@@ -0,0 +1,48 @@
+package com.miao.rpc.core.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一端(客户端或服务端)的指标注册表，按方法签名保存MethodMetrics。
+ * 服务端在启动时为分发表中的每个方法建好并放进MethodInvoker，请求处理时不再查表；
+ * 客户端每次调用按签名查找一次，已存在时只是一次ConcurrentHashMap的get
+ *
+ * 通过snapshot拉取全部方法的当前值，或由MetricsHttpServer以文本/JSON输出
+ */
+public class RpcMetrics {
+
+    private final String name;
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    /**
+     * @param name 输出时区分来源，比如client、server
+     */
+    public RpcMetrics(String name) {
+        this.name = name;
+    }
+
+    public MethodMetrics method(String signature) {
+        MethodMetrics metrics = methods.get(signature);
+        return metrics != null ? metrics : methods.computeIfAbsent(signature, MethodMetrics::new);
+    }
+
+    /**
+     * 全部方法的当前值，按方法签名排序
+     */
+    public List<MethodSnapshot> snapshot() {
+        List<MethodSnapshot> snapshots = new ArrayList<>(methods.size());
+        for (MethodMetrics metrics : methods.values()) {
+            snapshots.add(metrics.snapshot());
+        }
+        snapshots.sort(Comparator.comparing(MethodSnapshot::getMethod));
+        return snapshots;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
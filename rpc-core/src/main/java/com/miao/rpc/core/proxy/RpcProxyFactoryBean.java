@@ -1,17 +1,29 @@
 package com.miao.rpc.core.proxy;
 
+import com.miao.rpc.core.annotation.RpcTimeout;
 import com.miao.rpc.core.client.RpcClient;
 import com.miao.rpc.core.client.RpcResponseFuture;
+import com.miao.rpc.core.coder.ProtocolHeader;
 import com.miao.rpc.core.domain.RpcRequest;
 import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.serialize.Serializers;
+import com.miao.rpc.core.stream.RpcStreams;
+import com.miao.rpc.core.util.MethodSignature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.StringUtils;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 /**
  * InitializingBean:初始化时afterPropertiesSet被调用，生成interfaceClass类型的代理类
@@ -28,7 +40,14 @@ import java.util.UUID;
 public class RpcProxyFactoryBean implements FactoryBean<Object>, InitializingBean {
     private RpcClient client;
     private Class<?> interfaceClass; // 要生成的代理的类型
+    private long timeout; // @RpcReference上指定的超时时间，0表示使用客户端默认值
+    private String serializer; // @RpcReference上指定的序列化方式，为空表示使用连接协商的序列化方式
+    private byte serializerId;
     private Object proxy;
+    // 方法签名只计算一次，客户端用它查找服务端方法表中的methodId
+    private final Map<Method, String> signatures = new ConcurrentHashMap<>();
+    // 流式参数(Iterator或Stream)的下标，-1表示没有，见RpcStreams
+    private final Map<Method, Integer> streamParameters = new ConcurrentHashMap<>();
 
     @Override
     public Object getObject() throws Exception {
@@ -47,33 +66,77 @@ public class RpcProxyFactoryBean implements FactoryBean<Object>, InitializingBea
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        this.serializerId = StringUtils.hasText(serializer) ? Serializers.idOf(serializer) : 0;
+        client.subscribe(interfaceClass.getName()); // 提前watch该接口的提供者
         this.proxy = Proxy.newProxyInstance(
                 interfaceClass.getClassLoader(),
                 new Class<?>[]{interfaceClass},
                 (proxy, method, args) -> {
                     // 创建并初始化RpcRequest
                     RpcRequest request = new RpcRequest();
-                    log.info("调用远程服务：{} {}", method.getDeclaringClass().getName(), method.getName());
+                    request.setTimeout(ProtocolHeader.checkTimeout(timeoutOf(method)));
+                    request.setSerializer(serializerId);
                     request.setClassName(method.getDeclaringClass().getName());
                     request.setMethodName(method.getName());
-                    // 该请求的标识，之后会根据该标识来获取结果
-                    request.setRequestId(UUID.randomUUID().toString());
+                    // 流式参数不随请求序列化，请求中该位置为null，参数值由客户端按流上传
+                    int streamIndex = streamParameters.computeIfAbsent(method, RpcStreams::streamParameterOf);
+                    Object input = null;
+                    if (streamIndex >= 0 && args[streamIndex] != null) {
+                        input = args[streamIndex];
+                        args = args.clone();
+                        args[streamIndex] = null;
+                    }
                     request.setParameters(args);
                     request.setParameterTypes(method.getParameterTypes());
+                    request.setSignature(signatures.computeIfAbsent(method, MethodSignature::of));
+                    // 返回值为CompletableFuture/CompletionStage的方法异步调用，由IO线程在响应到达时完成，不阻塞请求线程
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == CompletableFuture.class || returnType == CompletionStage.class) {
+                        return client.invokeAsync(request, input);
+                    }
+                    // 返回值为Iterator或Stream的方法按流式调用，元素到达时逐个返回，见RpcStreams
+                    if (returnType == Iterator.class) {
+                        return client.stream(request, input);
+                    } else if (returnType == Stream.class) {
+                        return RpcStreams.toStream(client.stream(request, input));
+                    }
                     // 发送请求，并获得响应
-                    RpcResponseFuture responseFuture = client.execute(request);
+                    RpcResponseFuture responseFuture = client.execute(request, input);
                     RpcResponse response = responseFuture.getResponse(); // 阻塞
-                    log.info("客户端读到响应");
-                    // 本次请求在结果分析中产生异常，重新请求后仍未解决，返回异常信息，客户端重新建立连接
+                    // 服务端抛出的异常或重试后仍未成功的请求，把异常原样抛给调用方
                     if (response.hasError()) {
-                        return response.getCause().toString();
+                        throw exceptionToThrow(method, response.getCause());
                     } else {
                         return response.getResult();
                     }
                 });
     }
 
-    // 下面两个setxxx方法用于容器的注入使用
+    /**
+     * 非受检异常原样抛出；受检异常在方法的throws中声明过时原样抛出，否则包装为UndeclaredThrowableException，
+     * 与JDK代理对未声明受检异常的处理一致
+     */
+    static Throwable exceptionToThrow(Method method, Throwable cause) {
+        if (cause instanceof RuntimeException || cause instanceof Error) {
+            return cause;
+        }
+        for (Class<?> exceptionType : method.getExceptionTypes()) {
+            if (exceptionType.isInstance(cause)) {
+                return cause;
+            }
+        }
+        return new UndeclaredThrowableException(cause, "远程调用抛出了方法未声明的受检异常：" + cause);
+    }
+
+    /**
+     * 方法上的@RpcTimeout优先于@RpcReference的timeout，都没有指定时返回0，由客户端使用默认值
+     */
+    private long timeoutOf(Method method) {
+        RpcTimeout rpcTimeout = method.getAnnotation(RpcTimeout.class);
+        return rpcTimeout != null ? rpcTimeout.value() : timeout;
+    }
+
+    // 下面几个setxxx方法用于容器的注入使用
     public void setClient(RpcClient client) {
         this.client = client;
     }
@@ -81,4 +144,12 @@ public class RpcProxyFactoryBean implements FactoryBean<Object>, InitializingBea
     public void setInterfaceClass(Class<?> interfaceClass) {
         this.interfaceClass = interfaceClass;
     }
+
+    public void setTimeout(long timeout) {
+        this.timeout = ProtocolHeader.checkTimeout(timeout);
+    }
+
+    public void setSerializer(String serializer) {
+        this.serializer = serializer;
+    }
 }
@@ -78,7 +78,7 @@ public class RpcProxyFactoryBeanRegistry implements BeanDefinitionRegistryPostPr
                 Class<?> fieldClass = field.getType(); // 获取该标识下的类的类型，用于生成相应proxy
                 if (reference != null) {
                     log.info("创建" + fieldClass.getName() + "的动态代理");
-                    BeanDefinitionHolder holder = createBeanDefinition(fieldClass);
+                    BeanDefinitionHolder holder = createBeanDefinition(fieldClass, reference);
                     log.info("创建成功");
                     BeanDefinitionReaderUtils.registerBeanDefinition(holder, beanDefinitionRegistry);
                 }
@@ -91,7 +91,7 @@ public class RpcProxyFactoryBeanRegistry implements BeanDefinitionRegistryPostPr
      * 创建fieldClass类型的代理类proxy的BeanDefinition
      * @return
      */
-    private BeanDefinitionHolder createBeanDefinition(Class<?> fieldClass) {
+    private BeanDefinitionHolder createBeanDefinition(Class<?> fieldClass, RpcReference reference) {
         BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(RpcProxyFactoryBean.class);
         String className = fieldClass.getName();
         // bean的name首字母小写，spring通过它来注入
@@ -99,6 +99,8 @@ public class RpcProxyFactoryBeanRegistry implements BeanDefinitionRegistryPostPr
         // 给RpcProxyFactoryBean字段赋值
         builder.addPropertyValue("interfaceClass", fieldClass);
         builder.addPropertyValue("client", client);
+        builder.addPropertyValue("timeout", reference.timeout());
+        builder.addPropertyValue("serializer", reference.serializer());
         return new BeanDefinitionHolder(builder.getBeanDefinition(), beanName);
     }
 
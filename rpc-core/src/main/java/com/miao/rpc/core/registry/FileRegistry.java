@@ -0,0 +1,119 @@
+package com.miao.rpc.core.registry;
+
+import com.miao.rpc.core.constant.Constant;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地文件中的服务端列表，每行一个服务端，格式同ProviderInfo，空行与#开头的行被忽略；没有声明services的服务端被认为导出全部接口。
+ * 后台线程每秒检查一次文件的修改时间与大小，变化后重新读取，只回调提供者有变化的接口。
+ * 文件不存在或读取失败时沿用上次读到的列表。服务端的注册被忽略，文件由部署工具维护
+ */
+@Slf4j
+public class FileRegistry implements Registry {
+
+    static final String SCHEME = "file";
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private final Path path;
+    private final ScheduledExecutorService checker;
+    private final Map<String, ProviderListener> listeners = new HashMap<>(); // 由this保护
+    private final Map<String, List<ProviderInfo>> published = new HashMap<>(); // 每个接口上次回调的列表，由this保护
+    private List<ProviderInfo> providers; // 上次读到的全部服务端，null表示还没有读到过，由this保护
+    private long lastModified = -1;
+    private long lastSize = -1;
+
+    public FileRegistry(String file) {
+        this.path = Paths.get(file);
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-registry-file");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reload();
+        checker.scheduleWithFixedDelay(this::reload, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void register(ProviderInfo provider) {
+        log.info("文件注册中心由部署工具维护，不需要注册：{}", provider.getAddress());
+    }
+
+    @Override
+    public synchronized void subscribe(String service, ProviderListener listener) {
+        listeners.put(service, listener);
+        if (providers == null) {
+            listener.onUnavailable("无法读取" + path);
+            return;
+        }
+        List<ProviderInfo> list = StaticRegistry.providersOf(providers, service);
+        published.put(service, list);
+        listener.onProviders(list);
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+    }
+
+    private synchronized void reload() {
+        try {
+            if (!Files.exists(path)) {
+                if (lastModified != 0) {
+                    log.warn("注册中心文件{}不存在，沿用已知的服务端", path);
+                    lastModified = 0;
+                }
+                return;
+            }
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            long size = Files.size(path);
+            if (modified == lastModified && size == lastSize) {
+                return;
+            }
+            List<ProviderInfo> read = new ArrayList<>();
+            for (String line : Files.readAllLines(path, Constant.UTF_8)) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                    read.add(ProviderInfo.parse(trimmed));
+                }
+            }
+            lastModified = modified;
+            lastSize = size;
+            providers = Collections.unmodifiableList(read);
+            log.info("从{}读取到{}个服务端", path, read.size());
+            for (Map.Entry<String, ProviderListener> entry : listeners.entrySet()) {
+                List<ProviderInfo> list = StaticRegistry.providersOf(read, entry.getKey());
+                if (!list.equals(published.get(entry.getKey()))) {
+                    published.put(entry.getKey(), list);
+                    entry.getValue().onProviders(list);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("读取注册中心文件{}失败，沿用已知的服务端", path, e);
+        }
+    }
+
+    static class Factory implements RegistryFactory {
+        @Override
+        public String getScheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public Registry create(String address) {
+            return new FileRegistry(address);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.miao.rpc.core.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的注册中心，同一进程中名称相同的实例共享提供者列表，不需要ZooKeeper，用于测试与压测。
+ * 注册与订阅的回调都在调用register、close的线程上同步执行，同一名称下的变化按顺序回调
+ */
+public class LocalRegistry implements Registry {
+
+    static final String SCHEME = "local";
+
+    private static final Map<String, Hub> HUBS = new ConcurrentHashMap<>();
+
+    private final Hub hub;
+    private final List<ProviderInfo> registered = new ArrayList<>(); // 本实例注册的服务端
+    private final List<Subscription> subscriptions = new ArrayList<>(); // 本实例的订阅
+
+    public LocalRegistry(String name) {
+        this.hub = HUBS.computeIfAbsent(name, key -> new Hub());
+    }
+
+    @Override
+    public void register(ProviderInfo provider) {
+        synchronized (hub) {
+            registered.add(provider);
+            hub.providers.add(provider);
+            hub.publish(provider.getServices());
+        }
+    }
+
+    @Override
+    public void subscribe(String service, ProviderListener listener) {
+        synchronized (hub) {
+            Subscription subscription = new Subscription(service, listener);
+            subscriptions.add(subscription);
+            hub.subscriptions.add(subscription);
+            listener.onProviders(StaticRegistry.providersOf(hub.providers, service));
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (hub) {
+            hub.subscriptions.removeAll(subscriptions);
+            subscriptions.clear();
+            if (registered.isEmpty()) {
+                return;
+            }
+            List<String> services = new ArrayList<>();
+            for (ProviderInfo provider : registered) {
+                hub.providers.remove(provider);
+                services.addAll(provider.getServices());
+            }
+            registered.clear();
+            hub.publish(services);
+        }
+    }
+
+    /**
+     * 同一名称下的全部提供者与订阅，由自身的锁保护
+     */
+    private static class Hub {
+        final List<ProviderInfo> providers = new ArrayList<>();
+        final List<Subscription> subscriptions = new ArrayList<>();
+
+        /**
+         * 回调订阅了services中接口的客户端，services为空表示全部接口
+         */
+        void publish(List<String> services) {
+            Map<String, List<ProviderInfo>> changed = new HashMap<>();
+            for (Subscription subscription : subscriptions) {
+                if (services.isEmpty() || services.contains(subscription.service)) {
+                    List<ProviderInfo> list = changed.computeIfAbsent(subscription.service,
+                            service -> StaticRegistry.providersOf(providers, service));
+                    subscription.listener.onProviders(list);
+                }
+            }
+        }
+    }
+
+    private static class Subscription {
+        final String service;
+        final ProviderListener listener;
+
+        Subscription(String service, ProviderListener listener) {
+            this.service = service;
+            this.listener = listener;
+        }
+    }
+
+    static class Factory implements RegistryFactory {
+        @Override
+        public String getScheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public Registry create(String address) {
+            return new LocalRegistry(address.isEmpty() ? "default" : address);
+        }
+    }
+}
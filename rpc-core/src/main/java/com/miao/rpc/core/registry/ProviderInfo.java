@@ -0,0 +1,122 @@
+package com.miao.rpc.core.registry;
+
+import com.miao.rpc.core.constant.Constant;
+import lombok.Data;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 服务端注册到注册中心的元数据，序列化为类似URL的字符串作为节点数据：
+ * <pre>
+ * 127.0.0.1:8000?weight=800&amp;cpus=8&amp;maxConcurrency=16&amp;zone=z1&amp;rack=r1&amp;version=1&amp;services=a.Foo,a.Bar
+ * </pre>
+ * 地址之后的参数都可以省略，旧版本服务端只写地址，解析后为默认权重。不认识的参数直接忽略，以后可以在末尾追加
+ */
+@Data
+public class ProviderInfo {
+    public static final int DEFAULT_WEIGHT = 100; // 没有声明权重时的权重，相当于1个CPU
+
+    private String address;
+    private int weight = DEFAULT_WEIGHT; // 负载均衡的权重，流量与其成正比
+    private int cpus; // 服务端的CPU数，0表示未知
+    private int maxConcurrency; // 服务端最多同时执行的请求数，0表示未知
+    private String zone; // 所在的可用区，客户端优先选择同一可用区的服务端
+    private String rack; // 所在的机架
+    private int version; // 服务端的协议版本，见ProtocolConstant.VERSION，0表示未知
+    private List<String> services = new ArrayList<>(); // 导出的全部接口名
+
+    public ProviderInfo() {
+    }
+
+    public ProviderInfo(String address) {
+        this.address = address;
+    }
+
+    public String encode() {
+        StringBuilder sb = new StringBuilder(address);
+        sb.append("?weight=").append(weight);
+        append(sb, "cpus", cpus > 0 ? String.valueOf(cpus) : null);
+        append(sb, "maxConcurrency", maxConcurrency > 0 ? String.valueOf(maxConcurrency) : null);
+        append(sb, "zone", zone);
+        append(sb, "rack", rack);
+        append(sb, "version", version > 0 ? String.valueOf(version) : null);
+        append(sb, "services", services.isEmpty() ? null : String.join(",", services));
+        return sb.toString();
+    }
+
+    /**
+     * 解析节点数据，参数格式错误时使用默认值
+     */
+    public static ProviderInfo parse(String data) {
+        int question = data.indexOf('?');
+        ProviderInfo info = new ProviderInfo(question < 0 ? data : data.substring(0, question));
+        if (question < 0) {
+            return info;
+        }
+        for (String pair : data.substring(question + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String key = pair.substring(0, eq);
+            String value = unescape(pair.substring(eq + 1));
+            try {
+                switch (key) {
+                    case "weight":
+                        info.weight = Math.max(0, Integer.parseInt(value));
+                        break;
+                    case "cpus":
+                        info.cpus = Integer.parseInt(value);
+                        break;
+                    case "maxConcurrency":
+                        info.maxConcurrency = Integer.parseInt(value);
+                        break;
+                    case "zone":
+                        info.zone = value;
+                        break;
+                    case "rack":
+                        info.rack = value;
+                        break;
+                    case "version":
+                        info.version = Integer.parseInt(value);
+                        break;
+                    case "services":
+                        info.services = new ArrayList<>(Arrays.asList(value.split(",")));
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                // 忽略格式错误的参数
+            }
+        }
+        return info;
+    }
+
+    private static void append(StringBuilder sb, String key, String value) {
+        if (value != null && !value.isEmpty()) {
+            sb.append('&').append(key).append('=').append(escape(value));
+        }
+    }
+
+    private static String escape(String value) {
+        try {
+            return URLEncoder.encode(value, Constant.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String unescape(String value) {
+        try {
+            return URLDecoder.decode(value, Constant.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.miao.rpc.core.registry;
+
+import java.util.List;
+
+/**
+ * 接口提供者列表的回调，由Registry的实现调用
+ */
+public interface ProviderListener {
+
+    /**
+     * 提供者变化，providers是该接口当前全部的提供者
+     */
+    void onProviders(List<ProviderInfo> providers);
+
+    /**
+     * 暂时无法从注册中心读取提供者(如还没有连接上或连接断开)，客户端沿用已知的提供者，不必再等待第一份列表
+     */
+    default void onUnavailable(String reason) {
+    }
+}
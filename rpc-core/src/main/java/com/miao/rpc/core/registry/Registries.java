@@ -0,0 +1,53 @@
+package com.miao.rpc.core.registry;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按地址创建注册中心，地址的格式为 协议名://地址：
+ * <pre>
+ * zookeeper://127.0.0.1:2181       ZooKeeper，没有协议名时(如 127.0.0.1:2181)也是ZooKeeper
+ * static://127.0.0.1:8000,10.0.0.2:8000?weight=200   固定的服务端列表，每项的格式同ProviderInfo
+ * file:///etc/rpc/providers        本地文件，每行一个服务端，文件修改后自动重新读取
+ * local://name                     进程内的注册中心，同一进程中名称相同的服务端与客户端互相可见，用于测试与压测
+ * </pre>
+ */
+@Slf4j
+public class Registries {
+
+    private static final String SEPARATOR = "://";
+    private static final Map<String, RegistryFactory> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        register(new ZookeeperRegistry.Factory());
+        register(new StaticRegistry.Factory());
+        register(new FileRegistry.Factory());
+        register(new LocalRegistry.Factory());
+        // 用户通过ServiceLoader扩展的实现
+        for (RegistryFactory factory : ServiceLoader.load(RegistryFactory.class)) {
+            register(factory);
+        }
+    }
+
+    private static void register(RegistryFactory factory) {
+        FACTORIES.put(factory.getScheme().toLowerCase(), factory);
+        log.debug("注册中心实现：{}", factory.getScheme());
+    }
+
+    public static Registry create(String url) {
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("没有配置注册中心地址");
+        }
+        int index = url.indexOf(SEPARATOR);
+        String scheme = index < 0 ? ZookeeperRegistry.SCHEME : url.substring(0, index).toLowerCase();
+        String address = index < 0 ? url : url.substring(index + SEPARATOR.length());
+        RegistryFactory factory = FACTORIES.get(scheme);
+        if (factory == null) {
+            throw new IllegalArgumentException("不支持的注册中心：" + url);
+        }
+        return factory.create(address);
+    }
+}
@@ -0,0 +1,29 @@
+package com.miao.rpc.core.registry;
+
+/**
+ * 注册中心的SPI。服务端通过register注册自己导出的接口，客户端通过subscribe得到某个接口的提供者列表及其后的变化。
+ * 内置的实现见Registries：ZooKeeper、静态地址列表、本地文件与进程内注册中心，
+ * 其他实现可以通过RegistryFactory扩展。
+ *
+ * 实现需要保证同一个接口的回调不会并发执行，且注册中心暂时不可用时不回调空列表，让客户端沿用已知的提供者
+ */
+public interface Registry {
+
+    /**
+     * 注册服务端，注册中心暂时不可用时由实现在恢复后补上，不阻塞调用线程
+     * @param provider 服务端的地址与元数据，导出的接口见provider.getServices()
+     */
+    void register(ProviderInfo provider);
+
+    /**
+     * 订阅接口的提供者，每个接口只订阅一次。得到第一份列表后及之后每次变化时都回调完整的列表
+     * @param service 接口名
+     * @param listener 提供者的回调
+     */
+    void subscribe(String service, ProviderListener listener);
+
+    /**
+     * 注销本实例注册的服务端、取消订阅并释放连接
+     */
+    void close();
+}
@@ -0,0 +1,18 @@
+package com.miao.rpc.core.registry;
+
+/**
+ * 注册中心实现的SPI，按地址中的协议名选择。除内置的实现外，
+ * 可以在META-INF/services/com.miao.rpc.core.registry.RegistryFactory中声明自己的实现
+ */
+public interface RegistryFactory {
+
+    /**
+     * 地址中的协议名，如 zookeeper、static、file、local
+     */
+    String getScheme();
+
+    /**
+     * @param address 去掉 协议名:// 之后的部分
+     */
+    Registry create(String address);
+}
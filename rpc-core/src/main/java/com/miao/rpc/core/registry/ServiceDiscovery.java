@@ -1,56 +1,147 @@
 package com.miao.rpc.core.registry;
 
-import com.miao.rpc.core.constant.Constant;
-import com.miao.rpc.core.constant.Constant.ZookeeperConstant;
 import com.miao.rpc.core.loadBalance.LoadBalance;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.zookeeper.KeeperException;
-import org.apache.zookeeper.WatchedEvent;
-import org.apache.zookeeper.Watcher;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * 按接口发现服务提供者。每个接口只在第一次使用时向注册中心订阅，有自己的一个LoadBalance，
+ * 注册中心回调的提供者(地址与权重等元数据，见ProviderInfo)交给该LoadBalance，请求线程只读取LoadBalance，
+ * 提供者变化时不会被阻塞。注册中心的实现见Registries
+ */
 @Slf4j
-public class ServiceDiscovery extends ZookeeperClient {
-    private LoadBalance loadBalance;
-    private Thread discoveringThread;
+public class ServiceDiscovery {
+    private static final long FIRST_LOAD_TIMEOUT_MILLIS = 5000; // 第一次调用某个接口时最多等待注册中心的时间
+    // 订阅满FIRST_LOAD_TIMEOUT_MILLIS后仍未读取完成的接口不再等待，异步调用因此不会一直挂在注册中心上
+    private static final HashedWheelTimer FIRST_LOAD_TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("rpc-discovery", true), 100, TimeUnit.MILLISECONDS, 64);
 
-    public ServiceDiscovery(String registryAddress, LoadBalance loadBalance) {
-        this.loadBalance = loadBalance;
-        super.connectServer(registryAddress);//连接zookeeper
+    private final Registry registry;
+    private final Supplier<LoadBalance> loadBalanceFactory; // 每个接口一个LoadBalance
+    private final Map<String, ServiceProviders> services = new ConcurrentHashMap<>();
+    private volatile List<String> addresses = new ArrayList<>(); // 全部接口的提供者地址
+    private volatile Consumer<List<String>> addressListener; // 地址变化时的回调，客户端用来关闭下线地址的连接池
+    private volatile String zone; // 客户端所在的可用区，优先调用同区的提供者
+
+    /**
+     * @param registryAddress 注册中心地址，格式见Registries，没有协议名时为ZooKeeper
+     */
+    public ServiceDiscovery(String registryAddress, Supplier<LoadBalance> loadBalanceFactory) {
+        this(Registries.create(registryAddress), loadBalanceFactory);
     }
 
-    public String discover(String clientAddress) {
-        log.info("discovering...");
-        // 线程第一次请求，给/registry节点设置watch触发器，填充本地loadBalance中的地址信息
-        if (discoveringThread == null) {
-            this.discoveringThread = Thread.currentThread();
-            watchNode();
-        }
-        return loadBalance.get(clientAddress);
+    public ServiceDiscovery(Registry registry, Supplier<LoadBalance> loadBalanceFactory) {
+        this.registry = registry;
+        this.loadBalanceFactory = loadBalanceFactory;
+    }
+
+    /**
+     * 第一次调用某个接口时开始订阅并等待第一次读取完成，等待的时间从开始订阅时算起不超过5秒，
+     * 之后的调用直接从该接口的LoadBalance中取地址
+     * @param service 接口名
+     * @param clientAddress 客户端的标识，一致性hash用
+     * @return 服务端地址，没有可用的提供者时返回null
+     */
+    public String discover(String service, String clientAddress) {
+        ServiceProviders providers = subscribe0(service);
+        providers.awaitReady(FIRST_LOAD_TIMEOUT_MILLIS);
+        return providers.getLoadBalance().get(clientAddress);
+    }
+
+    /**
+     * discover的异步版本，不阻塞调用线程：已经读取完成时返回已完成的future，
+     * 否则在第一次读取完成或从开始订阅时算起5秒后完成，可以在IO线程中调用
+     * @return 完成时的值为服务端地址，没有可用的提供者时为null
+     */
+    public CompletableFuture<String> discoverAsync(String service, String clientAddress) {
+        ServiceProviders providers = subscribe0(service);
+        return providers.whenReady().thenApply(ready -> providers.getLoadBalance().get(clientAddress));
     }
 
-    private void watchNode() {
-        try {
-            List<String> nodeList = zooKeeper.getChildren(ZookeeperConstant.ZK_REGISTRY_PATH, new Watcher() {
-                @Override
-                public void process(WatchedEvent event) {
-                    if (event.getType() == Event.EventType.NodeChildrenChanged) {
-                        watchNode(); // 一旦服务器地址发生改变，更新客户端本地的地址集合
+    /**
+     * 提前订阅接口的提供者，不等待读取完成，客户端在创建代理时调用
+     * @param service 接口名
+     */
+    public void subscribe(String service) {
+        subscribe0(service);
+    }
+
+    private ServiceProviders subscribe0(String service) {
+        ServiceProviders providers = services.get(service);
+        if (providers == null) {
+            ServiceProviders created = new ServiceProviders(service, loadBalanceFactory.get());
+            providers = services.putIfAbsent(service, created);
+            if (providers == null) {
+                providers = created;
+                registry.subscribe(service, new ProviderListener() {
+                    @Override
+                    public void onProviders(List<ProviderInfo> list) {
+                        created.publish(list, zone);
+                        log.debug("{}的提供者：{}", service, created.getAddresses());
+                        onAddressesChanged();
                     }
-                }
-            });
-            List<String> dataList = new ArrayList<>();// 存储全部的地址
-            for (String node : nodeList) {
-                // 获取地址
-                byte[] bytes = zooKeeper.getData(ZookeeperConstant.ZK_REGISTRY_PATH + "/" + node, false, null);
-                dataList.add(new String(bytes, Constant.UTF_8));
+
+                    @Override
+                    public void onUnavailable(String reason) {
+                        log.warn("暂时无法读取{}的提供者：{}，沿用已知的{}个地址", service, reason,
+                                created.getAddresses().size());
+                        created.markReady();
+                    }
+                });
+                FIRST_LOAD_TIMER.newTimeout(timeout -> created.markReady(), FIRST_LOAD_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS);
             }
-            loadBalance.update(dataList);//更新本地地址
-            log.info("node data:{}", dataList);
-        } catch (InterruptedException | KeeperException e) {
-            log.error("", e);
         }
+        return providers;
+    }
+
+    /**
+     * 全部接口的地址合并后通知客户端，不同接口的回调可能来自不同线程，因此加锁保证通知的顺序
+     */
+    private synchronized void onAddressesChanged() {
+        Set<String> all = new LinkedHashSet<>();
+        for (ServiceProviders each : services.values()) {
+            all.addAll(each.getAddresses());
+        }
+        List<String> list = new ArrayList<>(all);
+        this.addresses = list;
+        Consumer<List<String>> listener = this.addressListener;
+        if (listener != null) {
+            listener.accept(list);
+        }
+    }
+
+    public List<String> getAddresses() {
+        return addresses;
+    }
+
+    public void setAddressListener(Consumer<List<String>> addressListener) {
+        this.addressListener = addressListener;
+    }
+
+    /**
+     * @param zone 客户端所在的可用区，有同区的提供者时只调用它们；为空表示不区分
+     */
+    public void setZone(String zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * 关闭注册中心的连接
+     */
+    public void close() {
+        registry.close();
     }
 }
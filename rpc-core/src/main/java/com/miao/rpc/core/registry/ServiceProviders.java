@@ -0,0 +1,102 @@
+package com.miao.rpc.core.registry;
+
+import com.miao.rpc.core.loadBalance.LoadBalance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 客户端的一个服务接口的提供者：注册中心每次回调的列表按地址去重后交给该接口自己的LoadBalance，请求线程只读取LoadBalance
+ */
+class ServiceProviders {
+
+    private final String service;
+    private final LoadBalance loadBalance;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>(); // 第一次读取完成(包括还没有提供者)
+    private final long createTime = System.currentTimeMillis();
+    private volatile List<String> addresses = Collections.emptyList();
+
+    ServiceProviders(String service, LoadBalance loadBalance) {
+        this.service = service;
+        this.loadBalance = loadBalance;
+    }
+
+    String getService() {
+        return service;
+    }
+
+    LoadBalance getLoadBalance() {
+        return loadBalance;
+    }
+
+    List<String> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * 把提供者按地址去重后发布给LoadBalance，注册中心保证同一接口的回调不会并发执行。
+     * zone不为空且有同一可用区的提供者时只把它们交给LoadBalance，同区的全部下线后才跨区调用
+     * @param zone 客户端所在的可用区
+     */
+    void publish(List<ProviderInfo> providers, String zone) {
+        Map<String, ProviderInfo> byAddress = new LinkedHashMap<>();
+        for (ProviderInfo provider : providers) {
+            byAddress.putIfAbsent(provider.getAddress(), provider);
+        }
+        List<ProviderInfo> selected = new ArrayList<>(byAddress.values());
+        if (zone != null && !zone.isEmpty()) {
+            List<ProviderInfo> local = new ArrayList<>();
+            for (ProviderInfo provider : selected) {
+                if (zone.equals(provider.getZone())) {
+                    local.add(provider);
+                }
+            }
+            if (!local.isEmpty()) {
+                selected = local;
+            }
+        }
+        loadBalance.updateProviders(selected);
+        addresses = new ArrayList<>(byAddress.keySet());
+        ready.complete(null);
+    }
+
+    /**
+     * 注册中心暂时不可用或第一次读取超时时不再让请求等待，沿用已有的列表
+     */
+    void markReady() {
+        ready.complete(null);
+    }
+
+    /**
+     * 第一次读取完成(或被markReady)时完成，异步调用在其上继续，不阻塞调用线程
+     */
+    CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    /**
+     * 等待第一次读取完成，最多等到开始订阅之后timeoutMillis，之后的调用不再等待
+     * @return 是否已经读取完成
+     */
+    boolean awaitReady(long timeoutMillis) {
+        long remaining = createTime + timeoutMillis - System.currentTimeMillis();
+        try {
+            if (remaining > 0) {
+                ready.get(remaining, TimeUnit.MILLISECONDS);
+            }
+            return ready.isDone();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+}
@@ -1,34 +1,40 @@
 package com.miao.rpc.core.registry;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.zookeeper.CreateMode;
-import org.apache.zookeeper.KeeperException;
-import org.apache.zookeeper.ZooDefs;
-import org.apache.zookeeper.ZooKeeper;
-
-import static com.miao.rpc.core.constant.Constant.ZookeeperConstant.ZK_REGISTRY_PATH;
-import static com.miao.rpc.core.constant.Constant.ZookeeperConstant.ZK_DATA_PATH;
 
+/**
+ * 服务端向注册中心注册自己，注册中心的实现见Registries
+ */
 @Slf4j
-public class ServiceRegistry extends ZookeeperClient {
+public class ServiceRegistry {
+
+    private final Registry registry;
 
+    /**
+     * @param registryAddress 注册中心地址，格式见Registries，没有协议名时为ZooKeeper
+     */
     public ServiceRegistry(String registryAddress) {
-        super.connectServer(registryAddress);
+        this(Registries.create(registryAddress));
+    }
+
+    public ServiceRegistry(Registry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 向中心注册自己的地址信息：在每个导出的接口下注册本服务端的地址与元数据。
+     * 客户端只订阅自己调用的接口，某个接口的提供者变化不会影响只调用其他接口的客户端。
+     * 注册中心暂时不可用时不阻塞，由实现在恢复后补上
+     * @param provider 本服务端的地址、权重、导出的接口等
+     */
+    public void registry(ProviderInfo provider) {
+        registry.register(provider);
     }
 
     /**
-     * 向中心注册自己的地址信息，第一次会先创建/registry节点，地址都注册在该节点下
+     * 注销并关闭注册中心的连接
      */
-    public void registry(String data) {
-        // 创建永久节点/registry
-        if (!exist(ZK_REGISTRY_PATH)) {
-            try {
-                zooKeeper.create(ZK_REGISTRY_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE,
-                        CreateMode.PERSISTENT);
-            } catch (KeeperException | InterruptedException e) {
-                log.error("创建/registry节点失败", e);
-            }
-        }
-        createNode(data, ZK_DATA_PATH); // 向中心注册自己的地址信息
+    public void close() {
+        registry.close();
     }
 }
@@ -0,0 +1,76 @@
+package com.miao.rpc.core.registry;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 固定的服务端列表，不需要任何外部服务。每项的格式同ProviderInfo，多项之间用逗号分隔；
+ * 没有声明services的服务端被认为导出全部接口。服务端的注册被忽略
+ */
+@Slf4j
+public class StaticRegistry implements Registry {
+
+    static final String SCHEME = "static";
+
+    private final List<ProviderInfo> providers;
+
+    public StaticRegistry(List<ProviderInfo> providers) {
+        this.providers = Collections.unmodifiableList(new ArrayList<>(providers));
+    }
+
+    @Override
+    public void register(ProviderInfo provider) {
+        log.info("静态注册中心不需要注册：{}", provider.getAddress());
+    }
+
+    @Override
+    public void subscribe(String service, ProviderListener listener) {
+        listener.onProviders(providersOf(providers, service));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * 解析逗号分隔的服务端列表，ProviderInfo编码时参数中的逗号已经被转义
+     */
+    static List<ProviderInfo> parse(String list) {
+        List<ProviderInfo> result = new ArrayList<>();
+        for (String item : list.split(",")) {
+            String trimmed = item.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(ProviderInfo.parse(trimmed));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 导出了service的服务端，没有声明services的服务端被认为导出全部接口
+     */
+    static List<ProviderInfo> providersOf(List<ProviderInfo> providers, String service) {
+        List<ProviderInfo> result = new ArrayList<>();
+        for (ProviderInfo provider : providers) {
+            if (provider.getServices().isEmpty() || provider.getServices().contains(service)) {
+                result.add(provider);
+            }
+        }
+        return result;
+    }
+
+    static class Factory implements RegistryFactory {
+        @Override
+        public String getScheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public Registry create(String address) {
+            return new StaticRegistry(parse(address));
+        }
+    }
+}
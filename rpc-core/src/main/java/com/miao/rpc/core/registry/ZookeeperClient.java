@@ -3,79 +3,128 @@ package com.miao.rpc.core.registry;
 import com.miao.rpc.core.constant.Constant;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
 
 import static com.miao.rpc.core.constant.Constant.ZookeeperConstant.ZK_SESSION_TIMEOUT;
 
 @Slf4j
 public class ZookeeperClient {
 
-    protected ZooKeeper zooKeeper;
-
-    // 阻塞直到连接成功
-    private CountDownLatch latch = new CountDownLatch(1);
+    protected volatile ZooKeeper zooKeeper;
+    protected volatile boolean connected; // 当前是否与ZK保持连接
+    private String address;
+    private volatile boolean closed;
 
     /**
-     * 连接ZK服务器
+     * 连接ZK服务器，不等待连接建立：之后发出的请求由ZooKeeper客户端排队，连接上后再发出，无法连接时以CONNECTIONLOSS结束。
+     * 会话建立(包括过期后重新建立)时回调onSessionStarted，断线后重新连接上同一会话时回调onReconnected
      * @param address 地址
      */
     protected void connectServer(String address) {
+        this.address = address;
+        log.info("开始连接ZK服务器");
+        newSession();
+    }
+
+    private void newSession() {
         try {
-            this.zooKeeper = new ZooKeeper(address, ZK_SESSION_TIMEOUT, event -> {
-                if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
-                    if (Watcher.Event.EventType.None == event.getType()) {
-                        latch.countDown();
+            this.zooKeeper = new ZooKeeper(address, ZK_SESSION_TIMEOUT, new SessionWatcher());
+        } catch (IOException e) {
+            log.error("连接ZK服务器失败", e);
+        }
+    }
+
+    /**
+     * 每个会话一个，记录该会话是否已经建立过，区分第一次连接与重新连接
+     */
+    private class SessionWatcher implements Watcher {
+        private boolean started; // 只在该会话的事件线程中访问
+
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getType() != Event.EventType.None) {
+                return;
+            }
+            switch (event.getState()) {
+                case SyncConnected:
+                    connected = true;
+                    if (!started) {
+                        started = true;
                         log.info("ZK连接成功");
+                        onSessionStarted();
+                    } else {
+                        log.info("ZK重新连接成功");
+                        onReconnected();
                     }
-                }
-            });
-            log.info("开始连接ZK服务器");
-            latch.await();
-        } catch (IOException | InterruptedException e) {
-            log.error("", e);
+                    break;
+                case Disconnected:
+                    connected = false;
+                    log.warn("与ZK的连接断开，等待重新连接");
+                    break;
+                case Expired:
+                    // 会话过期后该ZooKeeper对象不能再使用，临时节点与watch都已失效，建立新的会话
+                    connected = false;
+                    if (!closed) {
+                        log.warn("ZK会话过期，建立新的会话");
+                        newSession();
+                    }
+                    break;
+                default:
+                    break;
+            }
         }
     }
 
     /**
-     * 创建节点
+     * 会话建立后在ZK的事件线程中调用，包括第一次连接与会话过期后的新会话，子类在这里(重新)建立临时节点与watch
+     */
+    protected void onSessionStarted() {
+    }
+
+    /**
+     * 断线后重新连接上同一会话时在ZK的事件线程中调用，已设置的watch由ZooKeeper客户端自动恢复，
+     * 子类在这里重新发出断线期间失败的请求
+     */
+    protected void onReconnected() {
+    }
+
+    /**
+     * 创建临时顺序节点
      * @param data 数据
      * @param path 路径
      */
-    protected void createNode(String data, String path) {
-        try {
-            byte[] bytes = data.getBytes(Constant.UTF_8);
-            zooKeeper.create(path, bytes, ZooDefs.Ids.OPEN_ACL_UNSAFE,
-                    CreateMode.EPHEMERAL_SEQUENTIAL); // 顺序节点
-            log.info("成功建立数据节点（{} =》{}）", path, data);
-        } catch (KeeperException | InterruptedException e) {
-            log.error("createNode发生错误",e);
-        }
+    protected void createNode(String data, String path) throws KeeperException, InterruptedException {
+        byte[] bytes = data.getBytes(Constant.UTF_8);
+        zooKeeper.create(path, bytes, ZooDefs.Ids.OPEN_ACL_UNSAFE,
+                CreateMode.EPHEMERAL_SEQUENTIAL); // 顺序节点
+        log.info("成功建立数据节点（{} =》{}）", path, data);
     }
 
     /**
-     * 判断节点是否存在
-     * @param path 路劲
-     * @return
+     * 创建永久节点，已经存在(包括被其他服务端同时创建)时直接返回
+     * @param path 路径，父节点必须已经存在
      */
-    protected boolean exist(String path) {
-        Stat stat = null;
+    protected void createPersistent(String path) throws KeeperException, InterruptedException {
+        if (zooKeeper.exists(path, false) != null) {
+            return;
+        }
         try {
-            stat = zooKeeper.exists(path, false);
-        } catch (KeeperException | InterruptedException e) {
-            log.error("", e);
+            zooKeeper.create(path, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // 其他服务端已经创建
         }
-        return stat != null;
     }
 
     /**
      * 关闭ZK连接
      */
     public void close() {
+        closed = true;
         try {
-            this.zooKeeper.close();
+            if (this.zooKeeper != null) {
+                this.zooKeeper.close();
+            }
         } catch (InterruptedException e) {
             log.error("ZK close", e);
         }
@@ -0,0 +1,235 @@
+package com.miao.rpc.core.registry;
+
+import com.miao.rpc.core.constant.Constant;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.miao.rpc.core.constant.Constant.ZookeeperConstant.ZK_PROVIDER_NODE;
+import static com.miao.rpc.core.constant.Constant.ZookeeperConstant.ZK_REGISTRY_PATH;
+
+/**
+ * 基于ZooKeeper的注册中心。每个服务接口一个永久节点 /registry/接口名，服务端在其导出的每个接口下各建立一个临时顺序节点，
+ * 数据为ProviderInfo。
+ *
+ * 订阅：每个接口watch自己的节点，提供者列表缓存在本地，watch触发后只对比子节点的增减：删除的直接从缓存中去掉，
+ * 新增的用异步getData并行读取，全部返回后再回调完整的列表。回调都在ZooKeeper的事件线程中执行，请求线程不会被阻塞。
+ *
+ * 连接不阻塞启动：还没有连接上时注册推迟到会话建立之后，订阅的请求由ZooKeeper客户端排队。
+ * 断线期间沿用缓存的提供者，重新连接后补上失败的读取；会话过期时建立新会话，重新注册并重新watch
+ */
+@Slf4j
+public class ZookeeperRegistry extends ZookeeperClient implements Registry {
+
+    static final String SCHEME = "zookeeper";
+
+    private final List<ProviderInfo> providers = new CopyOnWriteArrayList<>(); // 本实例注册的服务端
+    private final Set<String> created = new HashSet<>(); // 已经建立的临时节点：会话id|节点路径|数据，由this保护
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    private final AsyncCallback.ChildrenCallback childrenCallback = this::onChildren;
+    private final AsyncCallback.DataCallback dataCallback = this::onData;
+    private final AsyncCallback.StatCallback existsCallback = this::onExists;
+
+    public ZookeeperRegistry(String address) {
+        super.connectServer(address);
+    }
+
+    @Override
+    public void register(ProviderInfo provider) {
+        providers.add(provider);
+        if (connected) {
+            registerPending();
+        } else {
+            log.info("ZK还没有连接上，连接后再注册{}", provider.getAddress());
+        }
+    }
+
+    /**
+     * 建立本会话中还没有建立的临时节点，失败的部分在重新连接后再试
+     */
+    private synchronized void registerPending() {
+        String session = zooKeeper.getSessionId() + "|";
+        created.removeIf(key -> !key.startsWith(session)); // 之前会话的临时节点已经随会话删除
+        for (ProviderInfo provider : providers) {
+            String data = provider.encode();
+            for (String service : provider.getServices()) {
+                String servicePath = ZK_REGISTRY_PATH + "/" + service;
+                String key = session + servicePath + "|" + data;
+                if (created.contains(key)) {
+                    continue;
+                }
+                try {
+                    createPersistent(ZK_REGISTRY_PATH);
+                    createPersistent(servicePath);
+                    createNode(data, servicePath + "/" + ZK_PROVIDER_NODE);
+                    created.add(key);
+                } catch (KeeperException e) {
+                    log.warn("向ZK注册{}失败：{}，重新连接后再试", servicePath, e.code());
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(String service, ProviderListener listener) {
+        Subscription subscription = new Subscription(service, listener);
+        if (subscriptions.putIfAbsent(service, subscription) == null) {
+            watchChildren(subscription);
+        }
+    }
+
+    /**
+     * 新会话中之前的临时节点与watch都已失效，全部重新建立
+     */
+    @Override
+    protected void onSessionStarted() {
+        registerPending();
+        for (Subscription subscription : subscriptions.values()) {
+            watchChildren(subscription);
+        }
+    }
+
+    /**
+     * 断线期间失败的注册与读取重新进行一次
+     */
+    @Override
+    protected void onReconnected() {
+        registerPending();
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.stale) {
+                watchChildren(subscription);
+            }
+        }
+    }
+
+    private void watchChildren(Subscription subscription) {
+        subscription.stale = false;
+        zooKeeper.getChildren(subscription.path, subscription.watcher, childrenCallback, subscription);
+    }
+
+    /**
+     * 会话过期前发出的请求可能在旧会话的事件线程中返回，因此对订阅的修改加锁，正常情况下没有竞争
+     */
+    private void onChildren(int rc, String path, Object ctx, List<String> children) {
+        Subscription subscription = (Subscription) ctx;
+        synchronized (subscription) {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code == KeeperException.Code.NONODE) {
+                // 还没有服务端导出该接口，等节点被创建
+                zooKeeper.exists(subscription.path, subscription.watcher, existsCallback, subscription);
+                children = new ArrayList<>();
+            } else if (code != KeeperException.Code.OK) {
+                log.warn("读取{}的提供者失败：{}，沿用缓存的{}个提供者", subscription.service, code,
+                        subscription.nodes.size());
+                subscription.stale = true;
+                subscription.listener.onUnavailable(code.toString());
+                return;
+            }
+            Set<String> current = new HashSet<>(children);
+            subscription.children = current;
+            int before = subscription.nodes.size();
+            subscription.nodes.keySet().retainAll(current);
+            int removed = before - subscription.nodes.size();
+            int added = 0;
+            for (String child : children) {
+                if (!subscription.nodes.containsKey(child) && subscription.fetching.add(child)) {
+                    zooKeeper.getData(subscription.path + "/" + child, false, dataCallback, subscription);
+                    added++;
+                }
+            }
+            if (removed > 0 || added > 0) {
+                log.info("{}的提供者变化：新增{}个，下线{}个", subscription.service, added, removed);
+            }
+            if (subscription.fetching.isEmpty()) {
+                subscription.publish();
+            }
+        }
+    }
+
+    private void onData(int rc, String path, Object ctx, byte[] data, Stat stat) {
+        Subscription subscription = (Subscription) ctx;
+        synchronized (subscription) {
+            String child = path.substring(path.lastIndexOf('/') + 1);
+            subscription.fetching.remove(child);
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code == KeeperException.Code.OK) {
+                if (subscription.children.contains(child)) { // 读取期间已经下线的不再加入
+                    subscription.nodes.put(child, ProviderInfo.parse(new String(data, Constant.UTF_8)));
+                }
+            } else if (code != KeeperException.Code.NONODE) {
+                log.warn("读取提供者{}失败：{}", path, code);
+                subscription.stale = true;
+            }
+            if (subscription.fetching.isEmpty()) {
+                subscription.publish();
+            }
+        }
+    }
+
+    /**
+     * 等待接口节点被创建期间，节点已经被其他服务端建立时重新读取子节点
+     */
+    private void onExists(int rc, String path, Object ctx, Stat stat) {
+        if (KeeperException.Code.get(rc) == KeeperException.Code.OK) {
+            watchChildren((Subscription) ctx);
+        }
+    }
+
+    /**
+     * 一个接口的订阅，nodes缓存 子节点名 -> 提供者，子节点变化时只读取新增节点的数据
+     */
+    private class Subscription {
+        final String service;
+        final String path;
+        final ProviderListener listener;
+        // 子节点与节点存在性的watch共用一个，重复设置时ZooKeeper只触发一次
+        final Watcher watcher;
+        final Map<String, ProviderInfo> nodes = new HashMap<>();
+        final Set<String> fetching = new HashSet<>(); // 正在读取数据的子节点
+        Set<String> children = new HashSet<>(); // 最近一次读到的子节点
+        volatile boolean stale; // 最近一次读取失败，重新连接后需要再读
+
+        Subscription(String service, ProviderListener listener) {
+            this.service = service;
+            this.path = ZK_REGISTRY_PATH + "/" + service;
+            this.listener = listener;
+            this.watcher = event -> {
+                if (event.getType() != Watcher.Event.EventType.None) {
+                    watchChildren(this); // 子节点增减、接口节点被创建或删除
+                }
+            };
+        }
+
+        void publish() {
+            listener.onProviders(new ArrayList<>(nodes.values()));
+        }
+    }
+
+    static class Factory implements RegistryFactory {
+        @Override
+        public String getScheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public Registry create(String address) {
+            return new ZookeeperRegistry(address);
+        }
+    }
+}
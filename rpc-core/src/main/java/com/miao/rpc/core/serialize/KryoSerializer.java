@@ -0,0 +1,167 @@
+package com.miao.rpc.core.serialize;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Kryo序列化，编码速度快，不要求对象有无参构造器，但消息体通常比Protostuff大一些
+ *
+ * Kryo不是线程安全的，每个线程(即每个EventLoop)持有自己的Kryo及读写缓冲，不为每条消息重新分配
+ *
+ * 反序列化时按类名读到的类必须在白名单内(JDK的基本包、com.miao.rpc及allowPackages添加的包)，
+ * 否则直接失败，对端无法让本端构造classpath上的任意对象。异常只传输类名与消息，不使用Java序列化
+ */
+public class KryoSerializer implements Serializer {
+
+    public static final byte ID = 2;
+    private static final int BUFFER_SIZE = 4096;
+
+    // 总是允许的JDK包，只匹配包本身，不包括子包(如java.lang.reflect、java.lang.invoke)
+    private static final Set<String> JDK_PACKAGES = new HashSet<>(Arrays.asList(
+            "java.lang", "java.util", "java.util.concurrent", "java.util.concurrent.atomic", "java.math", "java.time"));
+    // 允许的包名前缀，包括子包
+    private static volatile Set<String> allowedPackages = Collections.singleton("com.miao.rpc.");
+
+    private static final ThreadLocal<Kryo> KRYO = ThreadLocal.withInitial(() -> {
+        Kryo kryo = new Kryo(new AllowListClassResolver(), new MapReferenceResolver());
+        kryo.setRegistrationRequired(false);
+        kryo.setReferences(true);
+        // 有无参构造器时使用它，没有时由Objenesis直接实例化
+        kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        // 全部异常都按Throwable写出，两端注册的顺序相同，id一致
+        kryo.register(Throwable.class, new ThrowableSerializer());
+        return kryo;
+    });
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(BUFFER_SIZE));
+    private static final ThreadLocal<Input> INPUT = ThreadLocal.withInitial(() -> new Input(BUFFER_SIZE));
+
+    /**
+     * 把服务接口的参数、返回值所在的包加入白名单，包括其子包，需要在收发消息之前调用
+     * @param packages 包名，如 com.foo.api
+     */
+    public static void allowPackages(Collection<String> packages) {
+        Set<String> allowed = new LinkedHashSet<>(allowedPackages);
+        for (String pkg : packages) {
+            String trimmed = pkg.trim();
+            if (!trimmed.isEmpty()) {
+                allowed.add(trimmed.endsWith(".") ? trimmed : trimmed + ".");
+            }
+        }
+        allowedPackages = Collections.unmodifiableSet(allowed);
+    }
+
+    static boolean isAllowed(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        String name = type.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0 && JDK_PACKAGES.contains(name.substring(0, dot))) {
+            return true;
+        }
+        for (String prefix : allowedPackages) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "kryo";
+    }
+
+    @Override
+    public <T> void serialize(T obj, ByteBuf out) {
+        Output output = OUTPUT.get();
+        output.setOutputStream(new ByteBufOutputStream(out));
+        try {
+            KRYO.get().writeObject(output, obj);
+            output.flush();
+        } finally {
+            output.setOutputStream(null);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, int length, Class<T> cls) {
+        int end = in.readerIndex() + length;
+        Input input = INPUT.get();
+        input.setInputStream(new ByteBufInputStream(in, length));
+        try {
+            return KRYO.get().readObject(input, cls);
+        } finally {
+            input.setInputStream(null);
+            in.readerIndex(end);
+        }
+    }
+
+    /**
+     * 按类名读到的类不在白名单内时拒绝；异常的子类都使用已注册的Throwable，由ThrowableSerializer处理，
+     * 无论异常是字段的值还是直接序列化的对象
+     */
+    private static class AllowListClassResolver extends DefaultClassResolver {
+
+        @Override
+        public Registration getRegistration(Class type) {
+            if (type != null && Throwable.class.isAssignableFrom(type)) {
+                type = Throwable.class;
+            }
+            return super.getRegistration(type);
+        }
+
+        @Override
+        protected Registration readName(Input input) {
+            Registration registration = super.readName(input);
+            if (!isAllowed(registration.getType())) {
+                throw new KryoException("类不在反序列化白名单内：" + registration.getType().getName()
+                        + "，可以通过KryoSerializer.allowPackages添加");
+            }
+            return registration;
+        }
+    }
+
+    /**
+     * 异常只写出类名与消息，读取时按RemoteThrowables的规则重建
+     */
+    private static class ThrowableSerializer extends com.esotericsoftware.kryo.Serializer<Throwable> {
+
+        @Override
+        public void write(Kryo kryo, Output output, Throwable throwable) {
+            output.writeString(throwable.getClass().getName());
+            output.writeString(throwable.getMessage());
+        }
+
+        @Override
+        public Throwable read(Kryo kryo, Input input, Class<Throwable> type) {
+            String className = input.readString();
+            String message = input.readString();
+            return RemoteThrowables.rebuild(className, message, kryo.getClassLoader());
+        }
+    }
+}
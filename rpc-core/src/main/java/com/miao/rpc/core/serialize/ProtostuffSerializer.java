@@ -0,0 +1,32 @@
+package com.miao.rpc.core.serialize;
+
+import com.miao.rpc.core.util.ProtostuffUtil;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 默认的序列化方式，Protostuff运行时schema
+ */
+public class ProtostuffSerializer implements Serializer {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "protostuff";
+    }
+
+    @Override
+    public <T> void serialize(T obj, ByteBuf out) {
+        ProtostuffUtil.serialize(obj, out);
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, int length, Class<T> cls) {
+        return ProtostuffUtil.deserialize(in, length, cls);
+    }
+}
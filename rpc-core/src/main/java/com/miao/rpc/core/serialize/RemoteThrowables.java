@@ -0,0 +1,41 @@
+package com.miao.rpc.core.serialize;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * 跨进程传输的异常只保留类名与消息，各序列化方式共用同一套重建规则：
+ * 类在白名单内(或是JDK的异常，如java.io.IOException)且有(String)构造器时重建同类型的异常，
+ * 否则以带有原类名的RuntimeException代替，堆栈都为空
+ */
+public final class RemoteThrowables {
+
+    private RemoteThrowables() {
+    }
+
+    public static Throwable rebuild(String className, String message, ClassLoader classLoader) {
+        Throwable throwable = newInstance(className, message, classLoader);
+        if (throwable == null) {
+            throwable = new RuntimeException(className + ": " + message);
+        }
+        throwable.setStackTrace(new StackTraceElement[0]);
+        return throwable;
+    }
+
+    private static Throwable newInstance(String className, String message, ClassLoader classLoader) {
+        try {
+            Class<?> cls = Class.forName(className, false, classLoader);
+            if (!Throwable.class.isAssignableFrom(cls) || !isAllowed(cls)) {
+                return null;
+            }
+            Constructor<?> constructor = cls.getConstructor(String.class);
+            return (Throwable) constructor.newInstance(message);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // JDK的异常只通过(String)构造器创建，不会构造任意对象，不限于Kryo白名单中的JDK包
+    private static boolean isAllowed(Class<?> cls) {
+        return cls.getName().startsWith("java.") || KryoSerializer.isAllowed(cls);
+    }
+}
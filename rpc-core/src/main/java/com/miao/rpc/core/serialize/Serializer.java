@@ -0,0 +1,30 @@
+package com.miao.rpc.core.serialize;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 序列化方式的SPI，每种实现有唯一的id，该id写在协议头中，接收方据此选择反序列化方式。
+ * 除内置的实现外，可以在META-INF/services/com.miao.rpc.core.serialize.Serializer中声明自己的实现
+ */
+public interface Serializer {
+
+    /**
+     * 协议头中使用的id，必须在1~127之间且唯一
+     */
+    byte getId();
+
+    /**
+     * 配置中使用的名称，如 protostuff、kryo
+     */
+    String getName();
+
+    /**
+     * 将对象直接序列化进ByteBuf
+     */
+    <T> void serialize(T obj, ByteBuf out);
+
+    /**
+     * 从ByteBuf中读取length个字节反序列化为cls类型的对象，读完后readerIndex后移length
+     */
+    <T> T deserialize(ByteBuf in, int length, Class<T> cls);
+}
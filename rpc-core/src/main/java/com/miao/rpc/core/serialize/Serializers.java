@@ -0,0 +1,110 @@
+package com.miao.rpc.core.serialize;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.ServiceLoader;
+
+/**
+ * 全部可用序列化方式的注册表，按协议头中的id直接索引数组查找
+ */
+@Slf4j
+public class Serializers {
+
+    public static final byte DEFAULT_ID = ProtostuffSerializer.ID;
+
+    private static final Serializer[] SERIALIZERS = new Serializer[128];
+
+    static {
+        register(new ProtostuffSerializer());
+        register(new KryoSerializer());
+        // 用户通过ServiceLoader扩展的实现
+        for (Serializer serializer : ServiceLoader.load(Serializer.class)) {
+            register(serializer);
+        }
+    }
+
+    private static void register(Serializer serializer) {
+        byte id = serializer.getId();
+        if (id <= 0) {
+            throw new IllegalArgumentException("序列化方式的id必须在1~127之间：" + serializer.getName());
+        }
+        if (SERIALIZERS[id] != null && SERIALIZERS[id].getClass() != serializer.getClass()) {
+            throw new IllegalArgumentException("序列化方式的id重复：" + serializer.getName()
+                    + " 与 " + SERIALIZERS[id].getName());
+        }
+        SERIALIZERS[id] = serializer;
+        log.info("注册序列化方式：{}({})", serializer.getName(), id);
+    }
+
+    /**
+     * 根据协议头中的id获取序列化方式，不支持时返回null
+     */
+    public static Serializer get(byte id) {
+        return id > 0 ? SERIALIZERS[id] : null;
+    }
+
+    /**
+     * 根据配置中的名称获取序列化方式的id
+     */
+    public static byte idOf(String name) {
+        for (Serializer serializer : SERIALIZERS) {
+            if (serializer != null && serializer.getName().equalsIgnoreCase(name)) {
+                return serializer.getId();
+            }
+        }
+        throw new IllegalArgumentException("不支持的序列化方式：" + name);
+    }
+
+    public static boolean supports(byte id) {
+        return get(id) != null;
+    }
+
+    /**
+     * 根据名称得到序列化方式的id，默认的Protostuff总是包含在内(握手消息使用它)，
+     * 服务端用它限定接受的序列化方式
+     */
+    public static byte[] idsOf(Collection<String> names) {
+        Set<Byte> ids = new LinkedHashSet<>();
+        ids.add(DEFAULT_ID);
+        for (String name : names) {
+            ids.add(idOf(name.trim()));
+        }
+        byte[] result = new byte[ids.size()];
+        int i = 0;
+        for (byte id : ids) {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    public static boolean contains(byte[] ids, byte id) {
+        for (byte each : ids) {
+            if (each == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 本端支持的全部序列化方式的id，握手时告知对端
+     */
+    public static byte[] supportedIds() {
+        List<Byte> ids = new ArrayList<>();
+        for (Serializer serializer : SERIALIZERS) {
+            if (serializer != null) {
+                ids.add(serializer.getId());
+            }
+        }
+        byte[] result = new byte[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+}
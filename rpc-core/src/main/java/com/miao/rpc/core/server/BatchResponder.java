@@ -0,0 +1,43 @@
+package com.miao.rpc.core.server;
+
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcBatch;
+import com.miao.rpc.core.domain.RpcResponse;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 一批请求的响应汇总。批中的请求各自在所属的业务线程池中并行执行(@RpcInline的方法直接在EventLoop上执行)，
+ * 响应先放在这里，最后一个完成的线程把整批响应合并成一个BATCH帧写出。
+ * 批中的每个请求都必须且只能调用一次complete，包括被丢弃、被拒绝的请求，否则整批响应不会写出
+ */
+class BatchResponder {
+
+    private final ChannelHandlerContext ctx;
+    private final long batchId;
+    private final byte serializer;
+    private final AtomicReferenceArray<RpcResponse> responses;
+    private final AtomicInteger next = new AtomicInteger(); // 下一个响应存放的位置，响应的顺序与请求无关
+    private final AtomicInteger remaining;
+
+    BatchResponder(ChannelHandlerContext ctx, RpcBatch batch) {
+        this.ctx = ctx;
+        this.batchId = batch.getBatchId();
+        this.serializer = batch.getSerializer();
+        this.responses = new AtomicReferenceArray<>(batch.size());
+        this.remaining = new AtomicInteger(batch.size());
+    }
+
+    void complete(RpcResponse response) {
+        responses.set(next.getAndIncrement(), response);
+        if (remaining.decrementAndGet() == 0) {
+            RpcResponse[] all = new RpcResponse[responses.length()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = responses.get(i);
+            }
+            ctx.writeAndFlush(Message.buildBatch(RpcBatch.ofResponses(batchId, serializer, all)));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.miao.rpc.core.server;
+
+import com.miao.rpc.core.annotation.RpcInline;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.stream.RpcStreams;
+import com.miao.rpc.core.util.MethodSignature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cglib.reflect.FastClass;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务端的方法分发表，在RpcServer#initHandler中一次性建立：
+ * 每个导出接口的每个方法分配一个数字id(表中的下标，0保留)，并预先生成好调用器。
+ * 方法表在握手时下发给客户端，之后的请求在协议头中携带methodId，分发只需一次数组下标访问；
+ * 没有methodId的请求(如握手完成前发出的)按 接口名#方法名(参数类型) 查找
+ */
+@Slf4j
+public class DispatchTable {
+
+    private final List<MethodInvoker> invokers = new ArrayList<>();
+    private final Map<String, MethodInvoker> bySignature = new HashMap<>();
+    private MethodInvoker[] table = new MethodInvoker[1];
+    private String[] signatures = {""};
+
+    public DispatchTable() {
+        invokers.add(null); // 下标0保留，表示未知方法
+    }
+
+    /**
+     * 导出一个接口的全部方法，方法按签名排序，保证同样的服务得到同样的id
+     */
+    public synchronized void register(Class<?> interfaceClass, Object serviceBean) {
+        FastClass fastClass = FastClass.create(serviceBean.getClass());
+        Method[] methods = interfaceClass.getMethods();
+        Arrays.sort(methods, Comparator.comparing(MethodSignature::of));
+        for (Method method : methods) {
+            String signature = MethodSignature.of(interfaceClass.getName(), method.getName(), method.getParameterTypes());
+            if (bySignature.containsKey(signature)) {
+                continue;
+            }
+            MethodInvoker invoker = new MethodInvoker(invokers.size(), signature, serviceBean,
+                    fastClass.getMethod(method.getName(), method.getParameterTypes()), isInline(method, serviceBean),
+                    RpcStreams.isStreamType(method.getReturnType()), RpcStreams.streamParameterOf(method));
+            invokers.add(invoker);
+            bySignature.put(signature, invoker);
+        }
+        table = invokers.toArray(new MethodInvoker[0]);
+        signatures = new String[table.length];
+        signatures[0] = "";
+        for (int i = 1; i < table.length; i++) {
+            signatures[i] = table[i].getSignature();
+        }
+        log.info("导出接口{}，方法表大小：{}", interfaceClass.getName(), table.length - 1);
+    }
+
+    /**
+     * 接口方法或实现类中对应的方法被@RpcInline标注
+     */
+    private static boolean isInline(Method method, Object serviceBean) {
+        Method implMethod = ClassUtils.getMostSpecificMethod(method, ClassUtils.getUserClass(serviceBean));
+        return AnnotationUtils.findAnnotation(implMethod, RpcInline.class) != null;
+    }
+
+    /**
+     * 根据请求定位调用器，找不到时返回null
+     */
+    public MethodInvoker lookup(RpcRequest request) {
+        int id = request.getMethodId();
+        if (id != 0) {
+            MethodInvoker[] table = this.table;
+            return id > 0 && id < table.length ? table[id] : null;
+        }
+        return bySignature.get(MethodSignature.of(request.getClassName(),
+                request.getMethodName(), request.getParameterTypes()));
+    }
+
+    /**
+     * 全部已导出方法的调用器
+     */
+    public List<MethodInvoker> invokers() {
+        return invokers.subList(1, invokers.size());
+    }
+
+    /**
+     * 方法表，下标即methodId，握手时下发给客户端
+     */
+    public String[] signatures() {
+        return signatures;
+    }
+}
@@ -0,0 +1,19 @@
+package com.miao.rpc.core.server;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 某个业务线程池在某一时刻的状态
+ */
+@Data
+@AllArgsConstructor
+public class ExecutorStats {
+    private String name;
+    private int poolSize;
+    private int activeThreads;
+    private int queueDepth;
+    private int queueCapacity;
+    private long completedTasks;
+    private long rejectedTasks;
+}
@@ -0,0 +1,50 @@
+package com.miao.rpc.core.server;
+
+import com.miao.rpc.core.metrics.MethodMetrics;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.cglib.reflect.FastMethod;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+
+/**
+ * 服务端导出的单个方法，服务对象与CGLib生成的FastMethod在启动时创建好，
+ * 请求到达时直接调用，不再反射查找
+ */
+@Getter
+public class MethodInvoker {
+
+    private final int id; // 在方法表中的下标
+    private final String signature;
+    private final Object serviceBean;
+    private final FastMethod method;
+    private final boolean inline; // 被@RpcInline标注，直接在EventLoop上执行
+    private final boolean streaming; // 返回值为Iterator或Stream，结果按流发送，见RpcStreams
+    private final int streamParameter; // 类型为Iterator或Stream的参数的下标，由客户端按流上传，-1表示没有
+    // 执行该方法的业务线程池，由ServerExecutor在接受连接之前设置
+    @Setter
+    private Executor executor;
+    // 该方法的统计，由RpcServer在接受连接之前设置，为null表示不统计
+    @Setter
+    private MethodMetrics metrics;
+
+    public MethodInvoker(int id, String signature, Object serviceBean, FastMethod method,
+                         boolean inline, boolean streaming, int streamParameter) {
+        this.id = id;
+        this.signature = signature;
+        this.serviceBean = serviceBean;
+        this.method = method;
+        this.inline = inline;
+        this.streaming = streaming;
+        this.streamParameter = streamParameter;
+    }
+
+    public Class<?>[] getParameterTypes() {
+        return method.getParameterTypes();
+    }
+
+    public Object invoke(Object[] parameters) throws InvocationTargetException {
+        return method.invoke(serviceBean, parameters);
+    }
+}
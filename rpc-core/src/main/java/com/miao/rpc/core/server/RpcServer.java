@@ -3,15 +3,21 @@ package com.miao.rpc.core.server;
 import com.miao.rpc.core.annotation.RpcService;
 import com.miao.rpc.core.coder.RpcDecoder;
 import com.miao.rpc.core.coder.RpcEncoder;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.interceptor.RpcInterceptor;
+import com.miao.rpc.core.metrics.RpcMetrics;
+import com.miao.rpc.core.registry.ProviderInfo;
 import com.miao.rpc.core.registry.ServiceRegistry;
+import com.miao.rpc.core.serialize.Serializers;
+import com.miao.rpc.core.transport.FlushConsolidation;
+import com.miao.rpc.core.transport.FlushStats;
+import com.miao.rpc.core.transport.Transport;
+import com.miao.rpc.core.transport.TransportConfig;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.timeout.IdleStateHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeansException;
@@ -22,7 +28,10 @@ import org.springframework.context.annotation.ClassPathScanningCandidateComponen
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.core.type.filter.AspectJTypeFilter;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,14 +40,36 @@ import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_ADJ
 import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_FIELD_LENGTH;
 import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.LENGTH_FIELD_OFFSET;
 import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.MAX_FRAME_LENGTH;
+import static com.miao.rpc.core.constant.Constant.ProtocolConstant.VERSION;
 
 @Slf4j
 public class RpcServer implements ApplicationContextAware{
 
     private Map<String, Object> handlerMap = new HashMap<>(); // 接口名到服务对象之间的映射关系
+    private DispatchTable dispatchTable = new DispatchTable(); // 由handlerMap建立的方法分发表
     private String serviceBasePackage; // 实现类路径
     private ServiceRegistry registry;
     private ApplicationContext applicationContext;
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 2; // 默认业务线程池的线程数
+    private int queueCapacity = 1024; // 每个业务线程池的队列长度
+    private Map<String, Integer> dedicatedPools = new HashMap<>(); // 接口名或 接口名#方法名 -> 独立线程池的线程数
+    private ServerExecutor.Mode executorMode = ServerExecutor.Mode.PLATFORM; // VIRTUAL时每个请求一个虚拟线程
+    private int maxConcurrency = 10000; // VIRTUAL模式下的最大并发请求数
+    private int weight; // 注册到注册中心的负载均衡权重，0表示按CPU数计算
+    private String zone; // 所在的可用区，客户端优先调用同区的服务端
+    private String rack; // 所在的机架
+    private ServerExecutor serverExecutor;
+    private TransportConfig transportConfig = new TransportConfig(); // 传输实现、线程数与socket参数
+    private List<RpcInterceptor> interceptorList = new ArrayList<>(); // 通过addInterceptor注册的拦截器
+    private int traceSampleInterval = 1; // 拦截器的采样间隔，每多少个请求采样1个
+    private int flushConsolidation = 256; // 合并多少次flush后立即真正flush，0表示不合并
+    private int compressThreshold = 0; // 响应消息体达到多少字节时压缩，0表示不压缩
+    private int streamChunkSize = 64; // 流式方法每帧最多携带的元素数
+    private int streamWindow = 256; // 接收流式参数时最多缓冲的元素数
+    private List<String> serializers = Collections.singletonList("protostuff"); // 接受的序列化方式，Kryo需要显式开启
+    private final FlushStats flushStats = new FlushStats(); // 全部连接共用的flush批大小统计
+    private RpcMetrics metrics = new RpcMetrics("server"); // 按方法统计的请求数、耗时等，null表示不统计
+    private volatile Channel serverChannel; // 监听的channel，close时关闭它使run返回
 
     public RpcServer(String serviceBasePackage, ServiceRegistry registry) {
         this.serviceBasePackage = serviceBasePackage;
@@ -60,7 +91,9 @@ public class RpcServer implements ApplicationContextAware{
                 Class<?> beanClass = Class.forName(beanClassName);
                 Class<?>[] interfaces = beanClass.getInterfaces();
                 if (interfaces.length >= 1) {
-                    this.handlerMap.put(interfaces[0].getName(), applicationContext.getBean(beanClass));
+                    Object serviceBean = applicationContext.getBean(beanClass);
+                    this.handlerMap.put(interfaces[0].getName(), serviceBean);
+                    this.dispatchTable.register(interfaces[0], serviceBean);
                 }
             } catch (ClassNotFoundException e) {
                 log.error("", e);
@@ -70,61 +103,208 @@ public class RpcServer implements ApplicationContextAware{
     }
 
     public void run(String serverAddress) {
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        // 分发表与业务线程池必须在接受连接之前建好
+        initHandler();
+        serverExecutor = new ServerExecutor(executorMode, workerThreads, queueCapacity,
+                maxConcurrency, dedicatedPools);
+        serverExecutor.assign(dispatchTable);
+        if (metrics != null) {
+            for (MethodInvoker invoker : dispatchTable.invokers()) {
+                invoker.setMetrics(metrics.method(invoker.getSignature()));
+            }
+        }
+        Interceptors interceptors = Interceptors.of(interceptorList, traceSampleInterval);
+        byte[] acceptedSerializers = Serializers.idsOf(serializers);
+        Transport transport = transportConfig.transport();
+        log.info("服务端使用的传输实现：{}", transport);
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(transportConfig.getBossThreads(), "rpc-boss");
+        EventLoopGroup workerGroup = transport.newEventLoopGroup(transportConfig.getIoThreads(), "rpc-server-io");
         try {
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) throws Exception {
                             socketChannel.pipeline()
                                     .addLast("IdleStateHandler", new IdleStateHandler(10, 0, 0))
-                                    .addLast("LengthFieldPrepender", new LengthFieldPrepender(4, 0))
-                                    .addLast("RpcEncoder", new RpcEncoder())
+                                    .addLast("RpcEncoder", new RpcEncoder(interceptors, compressThreshold))
                                     .addLast("LengthFieldBasedFrameDecoder", new LengthFieldBasedFrameDecoder(
                                             MAX_FRAME_LENGTH, LENGTH_FIELD_OFFSET, LENGTH_FIELD_LENGTH,
                                             LENGTH_ADJUSTMENT, INITIAL_BYTES_TO_STRIP))
-                                    .addLast("RpcDecoder", new RpcDecoder())
-                                    .addLast("RpcServerHandler", new RpcServerHandler(handlerMap));
+                                    .addLast("RpcDecoder", new RpcDecoder(interceptors, acceptedSerializers))
+                                    .addLast("RpcServerHandler", new RpcServerHandler(dispatchTable, serverExecutor,
+                                            interceptors, streamChunkSize, streamWindow, acceptedSerializers));
+                            FlushConsolidation.install(socketChannel.pipeline(), flushConsolidation, flushStats);
                         }
-                    })
-                    // 对应的是tcp/ip协议listen函数中的backlog参数，
-                    // 函数listen(int socketfd,int backlog)用来初始化服务端可连接队列，
-                    // 服务端处理客户端连接请求是顺序处理的，所以同一时间只能处理一个客户端连接，
-                    // 多个客户端来的时候，服务端将不能处理的客户端连接请求放在队列中等待处理，backlog参数指定了队列的大小
-                    // 默认值，Windows为200，其他为128。
-                    .option(ChannelOption.SO_BACKLOG, 128)
-                    // Socket参数，TCP数据发送缓冲区大小。该缓冲区即TCP发送滑动窗口，
-                    // linux操作系统可使用命令：cat /proc/sys/net/ipv4/tcp_smem查询其大小。
-                    .option(ChannelOption.SO_SNDBUF, 32*1024)
-                    // Socket参数，TCP数据接收缓冲区大小。该缓冲区即TCP接收滑动窗口，
-                    // linux操作系统可使用命令：cat /proc/sys/net/ipv4/tcp_rmem查询其大小。
-                    // 一般情况下，该值可由用户在任意时刻设置，但当设置值超过64KB时，需要在连接到远端之前设置。
-                    .option(ChannelOption.SO_RCVBUF, 32*1024);
+                    });
+            // backlog、TCP_NODELAY、收发缓冲区、ByteBuf分配器
+            transportConfig.applyTo(bootstrap);
              String[] address = serverAddress.split(":");
              String host = address[0];
              Integer port = Integer.parseInt(address[1]);
             ChannelFuture future = bootstrap.bind(host, port).sync();
+            serverChannel = future.channel();
             log.info("服务器启动");
-            registry.registry(serverAddress);
-            log.info("服务器向Zookeeper注册完毕");
-            initHandler();
+            registry.registry(providerInfo(serverAddress));
+            log.info("服务器向注册中心注册完毕");
             // 应用程序一直等待直到channel关闭
             future.channel().closeFuture().sync();
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
             registry.close();
+            serverExecutor.shutdown();
             workerGroup.shutdownGracefully();
             bossGroup.shutdownGracefully();
         }
     }
 
+    /**
+     * 注册到注册中心的元数据：没有设置权重时每个CPU的权重为ProviderInfo.DEFAULT_WEIGHT，使流量与机器的CPU数成正比；
+     * 最大并发数在PLATFORM模式下为各业务线程池的线程数之和
+     */
+    private ProviderInfo providerInfo(String serverAddress) {
+        ProviderInfo provider = new ProviderInfo(serverAddress);
+        int cpus = Runtime.getRuntime().availableProcessors();
+        provider.setCpus(cpus);
+        provider.setWeight(weight > 0 ? weight : cpus * ProviderInfo.DEFAULT_WEIGHT);
+        int concurrency = maxConcurrency;
+        if (executorMode == ServerExecutor.Mode.PLATFORM) {
+            concurrency = workerThreads;
+            for (int threads : dedicatedPools.values()) {
+                concurrency += threads;
+            }
+        }
+        provider.setMaxConcurrency(concurrency);
+        provider.setZone(zone);
+        provider.setRack(rack);
+        provider.setVersion(VERSION);
+        provider.setServices(new ArrayList<>(handlerMap.keySet()));
+        return provider;
+    }
+
+    /**
+     * 关闭监听的channel，run随后注销地址、关闭线程池与EventLoop并返回
+     */
+    public void close() {
+        Channel channel = serverChannel;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext)
             throws BeansException {
         this.applicationContext = applicationContext;
     }
+
+    /**
+     * 各业务线程池的队列长度、活跃线程数等状态，服务启动前为空
+     */
+    public Map<String, ExecutorStats> getExecutorStats() {
+        return serverExecutor != null ? serverExecutor.stats() : Collections.emptyMap();
+    }
+
+    /**
+     * 每次真正flush写出的消息数统计
+     */
+    public FlushStats getFlushStats() {
+        return flushStats;
+    }
+
+    /**
+     * 按方法统计的请求数、失败数、在途数、耗时与消息大小，未开启时为null
+     */
+    public RpcMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metrics = metricsEnabled ? new RpcMetrics("server") : null;
+    }
+
+    /**
+     * 响应消息体达到该字节数且客户端能解压时压缩后发送，0表示不压缩；收到的压缩请求总是能解压
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 流式方法每个STREAM帧最多携带的元素数，每帧(压缩前)仍受最大帧长度限制，元素较大时应调小
+     */
+    public void setStreamChunkSize(int streamChunkSize) {
+        this.streamChunkSize = streamChunkSize;
+    }
+
+    /**
+     * 接收流式参数时最多缓冲的元素数，即初始给客户端的credit
+     */
+    public void setStreamWindow(int streamWindow) {
+        this.streamWindow = streamWindow;
+    }
+
+    public void setTransportConfig(TransportConfig transportConfig) {
+        this.transportConfig = transportConfig;
+    }
+
+    /**
+     * 注册拦截器，需要在run之前调用
+     */
+    public void addInterceptor(RpcInterceptor interceptor) {
+        this.interceptorList.add(interceptor);
+    }
+
+    public void setTraceSampleInterval(int traceSampleInterval) {
+        this.traceSampleInterval = traceSampleInterval;
+    }
+
+    public void setFlushConsolidation(int flushConsolidation) {
+        this.flushConsolidation = flushConsolidation;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public void setExecutorMode(ServerExecutor.Mode executorMode) {
+        this.executorMode = executorMode;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setDedicatedPools(Map<String, Integer> dedicatedPools) {
+        this.dedicatedPools = dedicatedPools;
+    }
+
+    /**
+     * 负载均衡权重，流量与其成正比；0表示按CPU数计算，为0以外的值时覆盖按CPU数计算的权重
+     */
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * 接受的序列化方式的名称，如 protostuff、kryo，其余序列化方式的请求直接返回错误；默认的Protostuff总是接受。
+     * 默认只接受Protostuff，开启kryo时参数与返回值所在的包需要通过KryoSerializer.allowPackages加入白名单
+     */
+    public void setSerializers(List<String> serializers) {
+        this.serializers = serializers;
+    }
+
+    public void setZone(String zone) {
+        this.zone = zone;
+    }
+
+    public void setRack(String rack) {
+        this.rack = rack;
+    }
 }
@@ -0,0 +1,11 @@
+package com.miao.rpc.core.server;
+
+/**
+ * 服务端业务线程池已满，请求被拒绝，客户端可以据此选择其他服务器重试
+ */
+public class RpcServerBusyException extends RuntimeException {
+
+    public RpcServerBusyException(String message) {
+        super(message);
+    }
+}
@@ -1,44 +1,235 @@
 package com.miao.rpc.core.server;
 
+import com.miao.rpc.core.coder.Compression;
+import com.miao.rpc.core.coder.RpcDecodeException;
+import com.miao.rpc.core.domain.Handshake;
 import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcBatch;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.domain.StreamFrame;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.metrics.MethodMetrics;
+import com.miao.rpc.core.serialize.Serializers;
+import com.miao.rpc.core.stream.InboundStream;
+import com.miao.rpc.core.stream.OutboundStream;
+import com.miao.rpc.core.stream.RpcStreamException;
+import com.miao.rpc.core.stream.RpcStreams;
+import com.miao.rpc.core.stream.StreamTable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.timeout.IdleStateEvent;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 @Slf4j
 public class RpcServerHandler extends SimpleChannelInboundHandler<Message> {
 
-    private Map<String, Object> handlerMap;
-    private ThreadPoolExecutor pool;
+    private DispatchTable dispatchTable;
+    private ServerExecutor serverExecutor; // 整个服务端共用的业务线程池
+    private Interceptors interceptors;
+    private int streamChunkSize; // 流式结果每帧最多携带的元素数
+    private int streamWindow; // 流式参数最多缓冲的元素数
+    private byte[] acceptedSerializers; // 本服务端接受的序列化方式
+    // 本连接上正在进行的流：发送中的流式结果，接收中的流式参数
+    private final StreamTable streams = new StreamTable();
 
-    public RpcServerHandler(Map<String, Object> handlerMap) {
-        this.handlerMap = handlerMap;
-        int threads = Runtime.getRuntime().availableProcessors();
-        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(100),
-                new ThreadPoolExecutor.CallerRunsPolicy());
-        log.info("handlerMap : {}", handlerMap);
+    public RpcServerHandler(DispatchTable dispatchTable, ServerExecutor serverExecutor, Interceptors interceptors,
+                            int streamChunkSize, int streamWindow, byte[] acceptedSerializers) {
+        this.dispatchTable = dispatchTable;
+        this.acceptedSerializers = acceptedSerializers;
+        this.serverExecutor = serverExecutor;
+        this.interceptors = interceptors;
+        this.streamChunkSize = streamChunkSize;
+        this.streamWindow = streamWindow;
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext,
                                 Message message) throws Exception {
         byte type = message.getType();
-        log.info("服务器已接收到请求:{}, 请求类型：{}", message, type);
         if (type == Message.PING) {
-            log.info("接收到客户端的PING心跳请求，发送PONG心跳反应");
+            log.debug("接收到客户端的PING心跳请求，发送PONG心跳反应");
             channelHandlerContext.writeAndFlush(Message.PONG_MSG);
+        } else if (type == Message.HANDSHAKE) {
+            // 客户端希望使用的序列化方式本端接受则采用，否则退回默认的Protostuff
+            Handshake request = message.getHandshake();
+            Handshake reply = new Handshake();
+            reply.setSerializer(Serializers.contains(acceptedSerializers, request.getSerializer())
+                    ? request.getSerializer() : Serializers.DEFAULT_ID);
+            reply.setSupportedSerializers(acceptedSerializers);
+            reply.setMethods(dispatchTable.signatures()); // 下发方法表，之后客户端用methodId调用
+            reply.setCompression(true);
+            reply.setBatch(true);
+            // 客户端声明能解压时，之后达到阈值的响应才压缩
+            channelHandlerContext.channel().attr(Compression.PEER_SUPPORTED).set(request.isCompression());
+            log.info("与客户端协商的序列化方式为：{}", reply.getSerializer());
+            channelHandlerContext.writeAndFlush(Message.buildHandshake(reply));
         } else if (type == Message.REQUEST) {
+            // 用本地时间计算截止时间，避免两端时钟不一致的影响，排队超过截止时间的请求由Worker直接丢弃
+            RpcRequest request = message.getRequest();
             // Worker任务是利用反射调用方法得到结果，由于不是EventLoop的线程
             // 会回到EventLoop的线程，让其来进行接下来操作
-            pool.execute(new Worker(channelHandlerContext, message.getRequest(), handlerMap));
+            MethodInvoker invoker = prepare(request);
+            // 流在调用服务方法之前登记，客户端紧随请求发来的CREDIT帧、STREAM帧才能找到它
+            OutboundStream stream = invoker != null && invoker.isStreaming()
+                    ? openStream(channelHandlerContext, request, invoker) : null;
+            InboundStream<?> input = invoker != null && invoker.getStreamParameter() >= 0
+                    ? openInput(channelHandlerContext, request, invoker) : null;
+            // 有流式参数的方法会阻塞等待客户端上传，不能在EventLoop上执行
+            if (invoker != null && invoker.isInline() && input == null) {
+                // 被@RpcInline标注的方法直接在当前EventLoop上执行，响应也在本线程写出，没有线程切换
+                new Worker(channelHandlerContext, request, invoker, interceptors, stream, input).run();
+                return;
+            }
+            Executor executor = invoker != null ? invoker.getExecutor() : serverExecutor.defaultPool();
+            try {
+                executor.execute(new Worker(channelHandlerContext, request, invoker, interceptors, stream, input));
+            } catch (RejectedExecutionException e) {
+                if (stream != null) {
+                    streams.removeOutbound(request.getRequestId(), e);
+                }
+                if (input != null) {
+                    input.close(); // 通知客户端停止上传
+                }
+                rejectBusy(channelHandlerContext, request, e, null);
+            }
+        } else if (type == Message.BATCH) {
+            RpcBatch batch = message.getBatch();
+            if (batch.isRequest()) {
+                dispatchBatch(channelHandlerContext, batch);
+            }
+        } else if (type == Message.STREAM) {
+            StreamFrame frame = message.getStream();
+            InboundStream<?> input = streams.inbound(frame.getRequestId());
+            if (input != null) {
+                input.onFrame(frame); // 最后一帧时从表中移除
+            }
+        } else if (type == Message.CREDIT) {
+            StreamFrame frame = message.getStream();
+            OutboundStream stream = streams.outbound(frame.getRequestId());
+            if (stream == null) {
+                return; // 流已经结束
+            }
+            if (frame.isCancel()) {
+                stream.cancel();
+            } else {
+                stream.grant(frame.getCredits());
+            }
+        }
+    }
+
+    /**
+     * 记录收到请求的时间并查找调用器，服务端没有导出该方法时返回null
+     */
+    private MethodInvoker prepare(RpcRequest request) {
+        request.setReceiveTime(System.nanoTime());
+        if (request.getTimeout() > 0) {
+            request.setDeadline(System.currentTimeMillis() + request.getTimeout());
+        }
+        MethodInvoker invoker = dispatchTable.lookup(request);
+        if (invoker != null) {
+            request.setSignature(invoker.getSignature()); // 按methodId调用时请求中没有接口名与方法名
+            MethodMetrics metrics = invoker.getMetrics();
+            if (metrics != null) {
+                metrics.start();
+                metrics.recordRequestBytes(request.getBytes());
+                request.setMetrics(metrics);
+            }
+        }
+        return invoker;
+    }
+
+    /**
+     * 批中的请求逐个分发，各自在所属的线程池中并行执行，@RpcInline的方法直接在本线程执行，
+     * 响应由BatchResponder等齐后合并成一帧写出。流式方法需要单独的流，不能放在批中
+     */
+    private void dispatchBatch(ChannelHandlerContext ctx, RpcBatch batch) {
+        BatchResponder responder = new BatchResponder(ctx, batch);
+        for (RpcRequest request : batch.getRequests()) {
+            MethodInvoker invoker = prepare(request);
+            if (invoker != null && (invoker.isStreaming() || invoker.getStreamParameter() >= 0)) {
+                RpcResponse response = new RpcResponse();
+                response.setRequestId(request.getRequestId());
+                response.setCause(new UnsupportedOperationException("流式方法不能批量调用：" + invoker.getSignature()));
+                if (request.getMetrics() != null) {
+                    request.getMetrics().complete(System.nanoTime() - request.getReceiveTime(), true);
+                }
+                responder.complete(response);
+                continue;
+            }
+            Worker worker = new Worker(ctx, request, invoker, interceptors, responder);
+            if (invoker != null && invoker.isInline()) {
+                worker.run();
+                continue;
+            }
+            Executor executor = invoker != null ? invoker.getExecutor() : serverExecutor.defaultPool();
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                rejectBusy(ctx, request, e, responder);
+            }
+        }
+    }
+
+    /**
+     * 登记流式结果的发送端，读取元素使用该方法的业务线程池。
+     * 流结束时整个调用结束：记录统计，并取消还未读完的流式参数
+     */
+    private OutboundStream openStream(ChannelHandlerContext ctx, RpcRequest request, MethodInvoker invoker) {
+        OutboundStream stream = new OutboundStream(ctx.channel(), request.getRequestId(), request.getSerializer(),
+                invoker.getExecutor(), streamChunkSize, request.getMetrics(), false, (id, cause) -> {
+                    streams.removeOutbound(id, cause);
+                    if (request.getMetrics() != null) {
+                        request.getMetrics().complete(System.nanoTime() - request.getReceiveTime(), cause != null);
+                    }
+                    InboundStream<?> input = streams.inbound(id);
+                    if (input != null) {
+                        input.close();
+                    }
+                });
+        streams.addOutbound(stream);
+        return stream;
+    }
+
+    /**
+     * 登记流式参数的接收端，替换请求中该参数的占位，并给客户端初始的credit。
+     * 请求的超时时间用作等待每个元素的超时时间
+     */
+    private InboundStream<?> openInput(ChannelHandlerContext ctx, RpcRequest request, MethodInvoker invoker) {
+        InboundStream<Object> input = new InboundStream<>(ctx.channel(), request.getRequestId(),
+                request.getSerializer(), streamWindow, request.getTimeout(), request.getMetrics(), true,
+                streams::removeInbound);
+        streams.addInbound(input);
+        Object[] parameters = request.getParameters();
+        int index = invoker.getStreamParameter();
+        parameters[index] = invoker.getParameterTypes()[index] == Iterator.class ? input : RpcStreams.toStream(input);
+        ctx.writeAndFlush(input.initialCredit());
+        return input;
+    }
+
+    /**
+     * 线程池已满时不在EventLoop上执行业务代码，直接返回服务端繁忙的响应
+     * @param batch 请求所属的批，为null表示单独的请求
+     */
+    private void rejectBusy(ChannelHandlerContext ctx, RpcRequest request, RejectedExecutionException e,
+                            BatchResponder batch) {
+        log.debug("请求{}被拒绝：{}", request.getRequestId(), e.getMessage()); // 拒绝次数见ServerExecutor的统计
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(request.getRequestId());
+        response.setSerializer(request.getSerializer());
+        response.setCause(new RpcServerBusyException("服务端繁忙，" + e.getMessage()));
+        response.setMetrics(request.getMetrics());
+        if (batch != null) {
+            batch.complete(response);
+        } else {
+            ctx.writeAndFlush(Message.buildResponse(response));
+        }
+        if (request.getMetrics() != null) {
+            request.getMetrics().complete(System.nanoTime() - request.getReceiveTime(), true);
         }
     }
 
@@ -48,13 +239,64 @@ public class RpcServerHandler extends SimpleChannelInboundHandler<Message> {
     }
 
     /**
-     * 打印异常，关闭连接
+     * 连接断开后对端不会再发送或消费：正在发送的流取消并关闭数据源，正在接收的流以异常结束
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (streams.size() > 0) {
+            log.info("连接已断开，结束{}个流", streams.size());
+            streams.closeAll(new RpcStreamException("连接已断开：" + ctx.channel().remoteAddress(), null));
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * 请求的消息体解码失败时，协议头中的requestId已知，直接给该请求返回错误响应，连接继续可用；
+     * 其他异常打印后关闭连接
      * @param ctx
      * @param cause
      * @throws Exception
      */
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        if (cause instanceof RpcDecodeException && ((RpcDecodeException) cause).getType() == Message.REQUEST) {
+            RpcDecodeException e = (RpcDecodeException) cause;
+            log.info("请求{}解码失败：{}", e.getRequestId(), e.getCause().toString());
+            RpcResponse response = new RpcResponse();
+            response.setRequestId(e.getRequestId());
+            // 请求使用了不接受的序列化方式时用默认的Protostuff返回错误
+            response.setSerializer(Serializers.contains(acceptedSerializers, e.getSerializer())
+                    ? e.getSerializer() : Serializers.DEFAULT_ID);
+            response.setCause(e.getCause());
+            ctx.writeAndFlush(Message.buildResponse(response));
+            return;
+        }
+        if (cause instanceof RpcDecodeException && ((RpcDecodeException) cause).getType() == Message.BATCH) {
+            // 无法得知批中各请求的requestId，关闭连接让客户端立即以异常结束该连接上的在途请求
+            log.info("批量请求{}解码失败，关闭连接：{}", ((RpcDecodeException) cause).getRequestId(),
+                    cause.getCause().toString());
+            ctx.close();
+            return;
+        }
+        if (cause instanceof RpcDecodeException && ((RpcDecodeException) cause).getType() == Message.CREDIT) {
+            // 无法知道对端给出的credit，该流无法继续，以异常结束
+            RpcDecodeException e = (RpcDecodeException) cause;
+            OutboundStream stream = streams.outbound(e.getRequestId());
+            if (stream != null) {
+                stream.fail(e.getCause());
+            }
+            return;
+        }
+        if (cause instanceof RpcDecodeException && ((RpcDecodeException) cause).getType() == Message.STREAM) {
+            // 流式参数中的一帧无法解码，之后的元素已经不完整，服务方法读到异常，并通知客户端停止上传
+            RpcDecodeException e = (RpcDecodeException) cause;
+            InboundStream<?> input = streams.inbound(e.getRequestId());
+            if (input != null) {
+                input.fail(e.getCause());
+                ctx.writeAndFlush(Message.buildCredit(StreamFrame.credit(e.getRequestId(), e.getSerializer(), 0, true)));
+            }
+            return;
+        }
         try {
             cause.printStackTrace();
         } finally {
@@ -0,0 +1,128 @@
+package com.miao.rpc.core.server;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端的业务线程池，整个服务端共用一个默认线程池，
+ * 可以为某个接口(接口名)或某个方法(接口名#方法名)配置独立的线程池，避免慢服务拖垮其他服务。
+ *
+ * 线程池满时直接拒绝，由RpcServerHandler在IO线程上立即返回"服务端繁忙"的响应，
+ * 不再像CallerRunsPolicy那样在EventLoop上执行业务代码而阻塞该EventLoop上的所有channel
+ *
+ * 执行模式为VIRTUAL时每个请求在一个虚拟线程上执行，默认执行器的并发数由maxConcurrency限制，
+ * 独立线程池配置的数值含义变为该执行器的最大并发数
+ */
+@Slf4j
+public class ServerExecutor {
+
+    public static final String DEFAULT_POOL = "default";
+
+    public enum Mode {
+        PLATFORM, // 固定大小的平台线程池
+        VIRTUAL   // 每个请求一个虚拟线程，由信号量限制并发数
+    }
+
+    private final Mode mode;
+    private final int queueCapacity;
+    private final Map<String, Executor> pools = new LinkedHashMap<>();
+    private final Map<String, LongAdder> rejected = new LinkedHashMap<>();
+
+    public ServerExecutor(int threads, int queueCapacity, Map<String, Integer> dedicatedPools) {
+        this(Mode.PLATFORM, threads, queueCapacity, 0, dedicatedPools);
+    }
+
+    /**
+     * @param mode 执行模式
+     * @param threads 默认线程池的线程数，VIRTUAL模式下不使用
+     * @param queueCapacity 每个线程池的队列长度，VIRTUAL模式下不使用
+     * @param maxConcurrency VIRTUAL模式下默认执行器的最大并发数
+     * @param dedicatedPools 独立线程池，key为接口名或 接口名#方法名，value为线程数(VIRTUAL模式下为最大并发数)
+     */
+    public ServerExecutor(Mode mode, int threads, int queueCapacity, int maxConcurrency,
+                          Map<String, Integer> dedicatedPools) {
+        this.mode = mode;
+        this.queueCapacity = queueCapacity;
+        createPool(DEFAULT_POOL, mode == Mode.VIRTUAL ? maxConcurrency : threads);
+        if (dedicatedPools != null) {
+            dedicatedPools.forEach(this::createPool);
+        }
+    }
+
+    private void createPool(String name, int size) {
+        if (mode == Mode.VIRTUAL) {
+            pools.put(name, new VirtualThreadExecutor(name, size));
+            log.info("创建虚拟线程执行器{}，最大并发数：{}", name, size);
+            return;
+        }
+        LongAdder rejectedCount = new LongAdder();
+        RejectedExecutionHandler abort = (task, executor) -> {
+            rejectedCount.increment();
+            throw new RejectedExecutionException("线程池" + name + "已满");
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DefaultThreadFactory("rpc-worker-" + name), abort);
+        pools.put(name, pool);
+        rejected.put(name, rejectedCount);
+        log.info("创建业务线程池{}，线程数：{}，队列长度：{}", name, size, queueCapacity);
+    }
+
+    /**
+     * 为分发表中的每个方法选定线程池：方法级配置优先于接口级配置，都没有时使用默认线程池。
+     * 在接受连接之前调用
+     */
+    public void assign(DispatchTable dispatchTable) {
+        for (MethodInvoker invoker : dispatchTable.invokers()) {
+            String signature = invoker.getSignature();
+            String className = signature.substring(0, signature.indexOf('#'));
+            String methodName = signature.substring(0, signature.indexOf('('));
+            Executor pool = pools.get(methodName);
+            if (pool == null) {
+                pool = pools.get(className);
+            }
+            invoker.setExecutor(pool != null ? pool : pools.get(DEFAULT_POOL));
+        }
+    }
+
+    public Executor defaultPool() {
+        return pools.get(DEFAULT_POOL);
+    }
+
+    /**
+     * 各线程池当前的队列长度、活跃线程数等状态
+     */
+    public Map<String, ExecutorStats> stats() {
+        Map<String, ExecutorStats> stats = new LinkedHashMap<>();
+        pools.forEach((name, executor) -> {
+            if (executor instanceof VirtualThreadExecutor) {
+                stats.put(name, ((VirtualThreadExecutor) executor).stats());
+            } else {
+                ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+                stats.put(name, new ExecutorStats(name, pool.getPoolSize(), pool.getActiveCount(),
+                        pool.getQueue().size(), queueCapacity, pool.getCompletedTaskCount(), rejected.get(name).sum()));
+            }
+        });
+        return Collections.unmodifiableMap(stats);
+    }
+
+    public void shutdown() {
+        pools.values().forEach(executor -> {
+            if (executor instanceof VirtualThreadExecutor) {
+                ((VirtualThreadExecutor) executor).shutdown();
+            } else {
+                ((ThreadPoolExecutor) executor).shutdown();
+            }
+        });
+    }
+}
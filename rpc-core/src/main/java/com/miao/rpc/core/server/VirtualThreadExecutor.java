@@ -0,0 +1,102 @@
+package com.miao.rpc.core.server;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 每个任务一个虚拟线程的执行器，适合大量阻塞在数据库、下游调用上的服务。
+ * 虚拟线程没有数量上限，用信号量限制同时处理的请求数，没有许可时直接拒绝，由RpcServerHandler返回服务端繁忙。
+ * 服务方法返回CompletionStage时，许可在响应写出后才归还，而不是在线程返回时
+ *
+ * 项目按Java 8编译，通过反射调用Executors.newVirtualThreadPerTaskExecutor，
+ * 运行时不支持虚拟线程(JDK 21以下)时退回为有界的平台线程池，线程数不超过FALLBACK_MAX_THREADS
+ */
+@Slf4j
+public class VirtualThreadExecutor implements Executor {
+
+    private static final int FALLBACK_MAX_THREADS = 200;
+    private static final long FALLBACK_KEEP_ALIVE_SECONDS = 60;
+
+    private final String name;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final ExecutorService delegate;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public VirtualThreadExecutor(String name, int maxConcurrency) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+        this.delegate = newVirtualThreadPerTaskExecutor(name, maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("执行器" + name + "并发数已达上限" + maxConcurrency);
+        }
+        try {
+            if (task instanceof Worker) {
+                // Worker在响应写出后回调，异步返回的方法在此之前一直占用许可
+                ((Worker) task).onDone(this::release);
+                delegate.execute(task);
+            } else {
+                delegate.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        release();
+                    }
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private void release() {
+        permits.release();
+        completed.increment();
+    }
+
+    public ExecutorStats stats() {
+        int active = maxConcurrency - permits.availablePermits();
+        return new ExecutorStats(name, active, active, 0, 0, completed.sum(), rejected.sum());
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * 不支持虚拟线程时的线程池：空闲线程超时退出，队列长度等于最大并发数，
+     * 提交前已经取得许可，同时提交的任务不超过最大并发数，队列不会满
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String name, int maxConcurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.min(maxConcurrency, FALLBACK_MAX_THREADS);
+            log.warn("当前运行时不支持虚拟线程，执行器{}退回为平台线程池，线程数：{}", name, threads);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                    FALLBACK_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(maxConcurrency),
+                    new DefaultThreadFactory("rpc-worker-" + name));
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+}
@@ -3,58 +3,199 @@ package com.miao.rpc.core.server;
 import com.miao.rpc.core.domain.Message;
 import com.miao.rpc.core.domain.RpcRequest;
 import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.stream.InboundStream;
+import com.miao.rpc.core.stream.OutboundStream;
+import com.miao.rpc.core.stream.RpcStreams;
 import io.netty.channel.ChannelHandlerContext;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cglib.reflect.FastClass;
-import org.springframework.cglib.reflect.FastMethod;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 @Slf4j
-@AllArgsConstructor
 public class Worker implements Runnable {
 
     private ChannelHandlerContext ctx;
     private RpcRequest request;
-    private Map<String, Object> handlerMap;
+    private MethodInvoker invoker; // 为null表示服务端没有导出该方法
+    private Interceptors interceptors;
+    private OutboundStream stream; // 流式结果的发送端，结果不是流时为null
+    private InboundStream<?> input; // 流式参数的接收端，没有流式参数时为null
+    private BatchResponder batch; // 所属的一批请求，响应交给它合并后写出，单独的请求为null
+    private Runnable done; // 响应写出(或请求被丢弃)后调用一次，执行器据此归还并发许可，可以为null
+
+    public Worker(ChannelHandlerContext ctx, RpcRequest request, MethodInvoker invoker, Interceptors interceptors) {
+        this(ctx, request, invoker, interceptors, null, null);
+    }
+
+    /**
+     * 批量请求中的一个，批中不会有流式方法
+     */
+    Worker(ChannelHandlerContext ctx, RpcRequest request, MethodInvoker invoker, Interceptors interceptors,
+           BatchResponder batch) {
+        this(ctx, request, invoker, interceptors, null, null);
+        this.batch = batch;
+    }
+
+    public Worker(ChannelHandlerContext ctx, RpcRequest request, MethodInvoker invoker, Interceptors interceptors,
+                  OutboundStream stream, InboundStream<?> input) {
+        this.ctx = ctx;
+        this.request = request;
+        this.invoker = invoker;
+        this.interceptors = interceptors;
+        this.stream = stream;
+        this.input = input;
+    }
+
+    /**
+     * 设置处理结束时的回调，在提交给执行器之前调用。同步方法在run返回前调用，
+     * 返回CompletionStage的方法在其完成、响应写出之后调用
+     */
+    void onDone(Runnable done) {
+        this.done = done;
+    }
 
     @Override
     public void run() {
+        boolean async = false;
+        try {
+            async = invoke();
+        } finally {
+            if (!async) {
+                done();
+            }
+        }
+    }
+
+    private void done() {
+        if (done != null) {
+            done.run();
+        }
+    }
+
+    /**
+     * @return 响应是否由服务方法返回的CompletionStage在完成时写出
+     */
+    private boolean invoke() {
+        // 调用方已经超时放弃等待，不再执行
+        if (request.getDeadline() > 0 && System.currentTimeMillis() > request.getDeadline()) {
+            log.debug("请求{}已超过截止时间，丢弃", request.getRequestId());
+            if (stream != null) {
+                // 以异常结束，客户端立即收到结束帧而不是等到读取超时；流结束时同时取消流式参数
+                stream.fail(new IllegalStateException("流" + request.getRequestId() + "已超过截止时间，服务端丢弃"));
+                return false;
+            }
+            closeInput();
+            if (request.getMetrics() != null) {
+                request.getMetrics().complete(System.nanoTime() - request.getReceiveTime(), true);
+            }
+            if (batch != null) {
+                // 调用方已不再等待，但同批的其他响应要等齐全部条目才写出
+                RpcResponse response = new RpcResponse();
+                response.setRequestId(request.getRequestId());
+                response.setCause(new IllegalStateException("请求" + request.getRequestId() + "已超过截止时间，服务端丢弃"));
+                batch.complete(response);
+            }
+            return false;
+        }
         RpcResponse response = new RpcResponse(); // 创建响应对象
         response.setRequestId(request.getRequestId());
+        response.setSerializer(request.getSerializer()); // 响应使用与请求相同的序列化方式
+        boolean sampled = interceptors.sampled(request.getRequestId());
+        if (sampled) {
+            interceptors.onInvoke(request);
+        }
+        if (stream != null) {
+            startStream(); // 之后每次读取元素由OutboundStream各自提交给执行器
+            return false;
+        }
         try {
             Object result = handle(request);
+            // 服务接口声明为返回CompletableFuture的方法，等其完成后再返回结果，不占用本线程
+            if (result instanceof CompletionStage) {
+                ((CompletionStage<?>) result).whenComplete((value, cause) -> {
+                    if (cause != null) {
+                        response.setCause(cause instanceof CompletionException && cause.getCause() != null
+                                ? cause.getCause() : cause);
+                    } else {
+                        response.setResult(value);
+                    }
+                    try {
+                        writeResponse(response, sampled);
+                    } finally {
+                        done();
+                    }
+                });
+                return true;
+            }
             response.setResult(result);
         } catch (InvocationTargetException e) {
-            e.printStackTrace();
-            response.setCause(e);
+            log.debug("请求{}的服务方法抛出异常", request.getRequestId(), e.getTargetException());
+            // 返回服务方法抛出的异常本身，客户端代理按方法声明原样抛给调用方
+            response.setCause(e.getCause() != null ? e.getCause() : e);
         }
-        log.info("服务器返回结果为：{}", response);
+        writeResponse(response, sampled);
+        return false;
+    }
+
+    private void writeResponse(RpcResponse response, boolean sampled) {
         // 由于本线程并非该channel所属的EventLoop的线程，
         // 会调用该EventLoop的execute方法，最终让其唯一的那个线程来处理
         // 关于ChannelHandlerContext的write与writeAndFlush都会从该handler开始
         // 往前找到最近的outHandler，调用其write与writeAndFlush
-        ctx.writeAndFlush(Message.buildResponse(response));
+        response.setMetrics(request.getMetrics()); // 编码器据此记录响应大小
+        if (batch != null) {
+            batch.complete(response); // 同批的响应合并后由最后完成的线程写出
+        } else {
+            ctx.writeAndFlush(Message.buildResponse(response));
+        }
+        closeInput(); // 服务方法没有读完流式参数就返回时，通知客户端停止上传
+        long elapsed = System.nanoTime() - request.getReceiveTime();
+        if (request.getMetrics() != null) {
+            request.getMetrics().complete(elapsed, response.hasError());
+        }
+        if (sampled) {
+            interceptors.onComplete(request, response, elapsed);
+        }
+    }
+
+    private void closeInput() {
+        if (input != null) {
+            input.close();
+        }
     }
 
     /**
-     * CGLib提供的反射API来调用方法
+     * 流式方法只在这里调用服务方法得到Iterator或Stream，之后由OutboundStream按对端的credit分批读取并发送
+     */
+    private void startStream() {
+        Object result;
+        try {
+            result = handle(request);
+        } catch (InvocationTargetException e) {
+            stream.fail(e.getCause() != null ? e.getCause() : e);
+            return;
+        }
+        try {
+            stream.start(RpcStreams.iteratorOf(result), RpcStreams.resourceOf(result));
+        } catch (RuntimeException e) {
+            stream.fail(e);
+        }
+    }
+
+    /**
+     * 直接调用分发表中启动时建好的调用器
      * @param request
      * @return
      * @throws InvocationTargetException
      */
     private Object handle(RpcRequest request) throws InvocationTargetException {
-        String className = request.getClassName(); // 服务接口名
-        Object serviceBean = this.handlerMap.get(className); // 根据接口名来获取其实现类对象
-
-        String methodName = request.getMethodName(); // 获取请求方法名
-        Class<?>[] parameterTypes = request.getParameterTypes(); // 参数类型
-        Object[] parameter = request.getParameters(); // 参数
-        // 反射利用CGLib
-        FastClass serviceFastClass = FastClass.create(serviceBean.getClass());
-        FastMethod serviceFastMethod = serviceFastClass.getMethod(methodName, parameterTypes);
-        return serviceFastMethod.invoke(serviceBean, parameter);
+        if (invoker == null) {
+            throw new InvocationTargetException(new NoSuchMethodException("服务端未导出该方法，methodId："
+                    + request.getMethodId() + "，" + request.getClassName() + "#" + request.getMethodName()));
+        }
+        return invoker.invoke(request.getParameters());
     }
 }
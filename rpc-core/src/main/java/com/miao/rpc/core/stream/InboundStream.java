@@ -0,0 +1,184 @@
+package com.miao.rpc.core.stream;
+
+import com.miao.rpc.core.client.RpcTimeoutException;
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.StreamFrame;
+import com.miao.rpc.core.metrics.MethodMetrics;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流的接收端，作为阻塞的Iterator交给调用方逐个消费。
+ *
+ * 开始时允许对端发送window个元素，调用方每消费掉半个window就补发等量的credit，
+ * 所以缓冲的元素最多为window个，消费慢时对端的发送任务会停下来等待，而不是把元素堆积在内存中。
+ * 对端发来的元素超过已给出的credit时取消该流并以异常结束，不会因为对端不守约而无限缓冲。
+ * IO线程调用onFrame放入元素，消费在调用方的单个线程中进行；用完后应调用close，
+ * 未读完就close会通知对端取消，不再发送后续元素。客户端用它接收流式方法的结果，服务端用它接收流式参数
+ */
+@Slf4j
+public class InboundStream<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final Channel channel;
+    private final long streamId;
+    private final byte serializer;
+    private final int window;
+    private final long timeout; // 等待下一个元素的最长时间(毫秒)，0表示一直等待
+    private final MethodMetrics metrics; // 记录每帧的大小，为null表示不统计
+    private final boolean upstream; // 客户端发往服务端的流，帧的大小计为请求大小
+    private final StreamListener listener;
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final AtomicInteger credits; // 已给出但对端还未用掉的credit
+    private volatile Throwable cause;
+    // 以下字段只在消费线程中访问
+    private Object next;
+    private boolean drained;
+    private int consumed; // 上次补发credit之后消费的元素数
+
+    public InboundStream(Channel channel, long streamId, byte serializer, int window, long timeout,
+                         MethodMetrics metrics, boolean upstream, StreamListener listener) {
+        this.channel = channel;
+        this.streamId = streamId;
+        this.serializer = serializer;
+        this.window = Math.max(window, 1);
+        this.credits = new AtomicInteger(this.window);
+        this.timeout = timeout;
+        this.metrics = metrics;
+        this.upstream = upstream;
+        this.listener = listener;
+    }
+
+    /**
+     * 开始时给对端的credit，与发起调用的请求一起写出
+     */
+    public Message initialCredit() {
+        return Message.buildCredit(StreamFrame.credit(streamId, serializer, window, false));
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * 收到对端的STREAM帧，在IO线程上调用
+     */
+    public void onFrame(StreamFrame frame) {
+        if (metrics != null) {
+            if (upstream) {
+                metrics.recordRequestBytes(frame.getBytes());
+            } else {
+                metrics.recordResponseBytes(frame.getBytes());
+            }
+        }
+        Object[] items = frame.getItems();
+        if (items != null && credits.addAndGet(-items.length) < 0) {
+            log.warn("流{}收到的元素超过了给出的credit，取消该流", streamId);
+            channel.writeAndFlush(Message.buildCredit(StreamFrame.credit(streamId, serializer, 0, true)));
+            fail(new RpcStreamException("流" + streamId + "收到的元素超过了credit窗口" + window, null));
+            return;
+        }
+        if (items != null) {
+            for (Object item : items) {
+                queue.add(item == null ? NullItem.INSTANCE : item);
+            }
+        }
+        if (frame.isEnd()) {
+            end(frame.getCause());
+        }
+    }
+
+    /**
+     * 流异常结束，比如连接断开、服务端拒绝请求
+     */
+    public void fail(Throwable cause) {
+        end(cause);
+    }
+
+    private void end(Throwable cause) {
+        if (finished.compareAndSet(false, true)) {
+            this.cause = cause;
+            listener.onFinish(streamId, cause);
+            queue.add(END);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (drained) {
+            return false;
+        }
+        Object item;
+        try {
+            item = timeout > 0 ? queue.poll(timeout, TimeUnit.MILLISECONDS) : queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new RpcStreamException("等待流" + streamId + "的元素时被中断", e);
+        }
+        if (item == null) {
+            close();
+            throw new RpcTimeoutException("流" + streamId + "在" + timeout + "ms内未收到新的元素");
+        }
+        if (item == END) {
+            drained = true;
+            if (cause != null) {
+                throw new RpcStreamException("流" + streamId + "异常结束：" + cause, cause);
+            }
+            return false;
+        }
+        next = item;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object item = next;
+        next = null;
+        if (++consumed >= Math.max(window / 2, 1) && !finished.get()) {
+            credits.addAndGet(consumed); // 先记下再写出，对端据此发来的元素不会被误判为超出窗口
+            channel.writeAndFlush(Message.buildCredit(StreamFrame.credit(streamId, serializer, consumed, false)));
+            consumed = 0;
+        }
+        return item == NullItem.INSTANCE ? null : (T) item;
+    }
+
+    /**
+     * 未读完时通知对端取消，已缓冲的元素被丢弃
+     */
+    @Override
+    public void close() {
+        if (finished.get()) {
+            return;
+        }
+        log.debug("取消流{}", streamId);
+        channel.writeAndFlush(Message.buildCredit(StreamFrame.credit(streamId, serializer, 0, true)));
+        end(null);
+        queue.clear();
+        drained = true;
+        next = null;
+    }
+
+    /**
+     * 流中允许有null元素，队列中用它占位
+     */
+    private enum NullItem {
+        INSTANCE
+    }
+}
@@ -0,0 +1,201 @@
+package com.miao.rpc.core.stream;
+
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.StreamFrame;
+import com.miao.rpc.core.metrics.MethodMetrics;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流的发送端：从Iterator中取出元素，按对端给出的credit分批写成STREAM帧。
+ *
+ * 读取元素(可能阻塞，比如数据库游标)在业务线程池中进行，credit用完后任务直接返回，不占用线程；
+ * 对端的CREDIT帧在IO线程上调用grant，再把任务提交回线程池。同一时刻最多只有一个任务在读取该流，
+ * 所以Iterator不需要是线程安全的。已写出但对端未消费的元素不超过credit，两端的内存都是有界的。
+ * 服务端用它发送流式方法的结果，客户端用它上传流式参数
+ */
+@Slf4j
+public class OutboundStream implements Runnable {
+
+    private final Channel channel;
+    private final long streamId;
+    private final byte serializer;
+    private final Executor executor;
+    private final int chunkSize; // 每帧最多携带的元素数
+    private final MethodMetrics metrics; // 编码器据此记录每帧的大小，为null表示不统计
+    private final boolean upstream; // 客户端发往服务端的流，帧的大小计为请求大小
+    private final StreamListener listener;
+    private final AtomicInteger credits = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile boolean cancelled;
+    private volatile Iterator<?> source;
+    private volatile AutoCloseable resource; // 流结束时关闭，比如Stream的onClose
+
+    public OutboundStream(Channel channel, long streamId, byte serializer, Executor executor, int chunkSize,
+                          MethodMetrics metrics, boolean upstream, StreamListener listener) {
+        this.channel = channel;
+        this.streamId = streamId;
+        this.serializer = serializer;
+        this.executor = executor;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.metrics = metrics;
+        this.upstream = upstream;
+        this.listener = listener;
+    }
+
+    /**
+     * 开始发送，source为null表示空流
+     * @param resource 流结束时关闭，可以为null
+     */
+    public void start(Iterator<?> source, AutoCloseable resource) {
+        this.resource = resource;
+        this.source = source;
+        if (finished.get()) {
+            closeResource(); // 调用服务方法期间已经被取消
+            return;
+        }
+        if (source == null) {
+            if (finish(null)) {
+                channel.writeAndFlush(Message.buildStream(frame(null, true)));
+            }
+            return;
+        }
+        schedule();
+    }
+
+    /**
+     * 对端允许再发送n个元素，在IO线程上调用
+     */
+    public void grant(int n) {
+        credits.addAndGet(n);
+        schedule();
+    }
+
+    /**
+     * 对端不再需要后续元素，由读取任务关闭数据源，不再向对端发送任何帧
+     */
+    public void cancel() {
+        cancelled = true;
+        schedule();
+    }
+
+    /**
+     * 以异常结束，比如服务方法抛出异常、数据源读取出错，向对端发送异常结束的帧
+     */
+    public void fail(Throwable cause) {
+        if (finish(cause)) {
+            StreamFrame frame = StreamFrame.error(streamId, serializer, cause);
+            frame.setUpstream(upstream);
+            channel.writeAndFlush(Message.buildStream(frame));
+        }
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    private void schedule() {
+        if (source == null && !cancelled) {
+            return; // 还未开始，start时再提交
+        }
+        if (finished.get() || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            log.debug("流{}的读取任务被拒绝：{}", streamId, e.getMessage());
+            if (cancelled) {
+                finish(null);
+            } else {
+                fail(new RejectedExecutionException("服务端繁忙，流" + streamId + "中断：" + e.getMessage()));
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            pump();
+        } catch (Throwable t) {
+            log.debug("流{}读取元素时出错：{}", streamId, t.toString());
+            fail(t);
+        } finally {
+            scheduled.set(false);
+        }
+        // 任务结束前到达的credit或取消不会再提交新任务，这里补上
+        if (!finished.get() && (cancelled || credits.get() > 0)) {
+            schedule();
+        }
+    }
+
+    private void pump() {
+        Iterator<?> source = this.source;
+        while (!finished.get()) {
+            if (cancelled) {
+                log.debug("流{}被对端取消", streamId);
+                finish(null);
+                return;
+            }
+            int n = Math.min(credits.get(), chunkSize);
+            if (n <= 0 || source == null) {
+                return;
+            }
+            Object[] items = new Object[n];
+            int count = 0;
+            while (count < n && source.hasNext()) {
+                items[count++] = source.next();
+            }
+            credits.addAndGet(-count);
+            // 取满一帧时不再调用hasNext，避免在数据源上阻塞而推迟这一帧，结束标记由下一帧携带
+            boolean end = count < n;
+            if (count < n) {
+                Object[] trimmed = new Object[count];
+                System.arraycopy(items, 0, trimmed, 0, count);
+                items = trimmed;
+            }
+            if (end && !finish(null)) {
+                return;
+            }
+            channel.writeAndFlush(Message.buildStream(frame(items, end)));
+        }
+    }
+
+    private StreamFrame frame(Object[] items, boolean end) {
+        StreamFrame frame = StreamFrame.data(streamId, serializer, items, end);
+        frame.setMetrics(metrics);
+        frame.setUpstream(upstream);
+        return frame;
+    }
+
+    /**
+     * 只有第一次调用生效：关闭数据源并通知持有者
+     */
+    private boolean finish(Throwable cause) {
+        if (!finished.compareAndSet(false, true)) {
+            return false;
+        }
+        closeResource();
+        listener.onFinish(streamId, cause);
+        return true;
+    }
+
+    private void closeResource() {
+        AutoCloseable resource = this.resource;
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.debug("关闭流{}的数据源出错：{}", streamId, e.toString());
+            }
+        }
+    }
+}
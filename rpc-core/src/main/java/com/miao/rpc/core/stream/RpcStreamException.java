@@ -0,0 +1,11 @@
+package com.miao.rpc.core.stream;
+
+/**
+ * 流在对端异常结束或连接断开，cause为对端抛出的异常
+ */
+public class RpcStreamException extends RuntimeException {
+
+    public RpcStreamException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,72 @@
+package com.miao.rpc.core.stream;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.BaseStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 流式方法的约定：服务接口中返回值声明为Iterator或java.util.stream.Stream的方法按流式调用，
+ * 服务端逐批发送元素，客户端得到的Iterator/Stream在元素到达时逐个返回；
+ * 参数类型声明为Iterator或Stream的(最多一个)由客户端按流上传，服务方法拿到的是边接收边消费的Iterator/Stream。
+ * 两者可以同时使用，即双向流
+ */
+public final class RpcStreams {
+
+    private RpcStreams() {
+    }
+
+    public static boolean isStreamType(Class<?> type) {
+        return type == Iterator.class || type == Stream.class;
+    }
+
+    /**
+     * 第一个类型为Iterator或Stream的参数的下标，没有时返回-1
+     */
+    public static int streamParameterOf(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (isStreamType(types[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 服务方法的返回值或客户端上传的参数转为Iterator，null表示空流
+     */
+    public static Iterator<?> iteratorOf(Object result) {
+        if (result == null) {
+            return null;
+        }
+        if (result instanceof BaseStream) {
+            return ((BaseStream<?, ?>) result).iterator();
+        }
+        if (result instanceof Iterator) {
+            return (Iterator<?>) result;
+        }
+        if (result instanceof Iterable) {
+            return ((Iterable<?>) result).iterator();
+        }
+        throw new IllegalArgumentException("流式方法的返回值不是Iterator或Stream：" + result.getClass().getName());
+    }
+
+    /**
+     * 流结束后需要关闭的资源：Stream本身，或实现了AutoCloseable的Iterator
+     */
+    public static AutoCloseable resourceOf(Object result) {
+        return result instanceof AutoCloseable ? (AutoCloseable) result : null;
+    }
+
+    /**
+     * 把接收的流包装为顺序的Stream，关闭Stream时取消未读完的流
+     */
+    public static <T> Stream<T> toStream(InboundStream<T> inbound) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(inbound, Spliterator.ORDERED), false)
+                .onClose(inbound::close);
+    }
+}
@@ -0,0 +1,14 @@
+package com.miao.rpc.core.stream;
+
+/**
+ * 流结束时的回调，由持有流的一方用来把它从StreamTable中移除、记录统计等
+ */
+@FunctionalInterface
+public interface StreamListener {
+
+    /**
+     * 流结束(正常结束、被取消或出错)后调用一次
+     * @param cause 为null表示没有出错
+     */
+    void onFinish(long streamId, Throwable cause);
+}
@@ -0,0 +1,63 @@
+package com.miao.rpc.core.stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个连接上正在进行的流，客户端与服务端的handler各持有一张，对端的STREAM帧据此找到接收端，CREDIT帧据此找到发送端。
+ * 流的id是发起调用的请求的requestId，双向流在两个方向上使用同一个id，所以接收端与发送端分开存放
+ */
+@Slf4j
+public class StreamTable {
+
+    private final Map<Long, InboundStream<?>> inbound = new ConcurrentHashMap<>();
+    private final Map<Long, OutboundStream> outbound = new ConcurrentHashMap<>();
+
+    public void addInbound(InboundStream<?> stream) {
+        inbound.put(stream.getStreamId(), stream);
+        log.debug("开始接收流{}", stream.getStreamId());
+    }
+
+    public void addOutbound(OutboundStream stream) {
+        outbound.put(stream.getStreamId(), stream);
+        log.debug("开始发送流{}", stream.getStreamId());
+    }
+
+    public InboundStream<?> inbound(long streamId) {
+        return inbound.get(streamId);
+    }
+
+    public OutboundStream outbound(long streamId) {
+        return outbound.get(streamId);
+    }
+
+    public void removeInbound(long streamId, Throwable cause) {
+        if (inbound.remove(streamId) != null) {
+            log.debug("流{}接收结束{}", streamId, cause != null ? "：" + cause : "");
+        }
+    }
+
+    public void removeOutbound(long streamId, Throwable cause) {
+        if (outbound.remove(streamId) != null) {
+            log.debug("流{}发送结束{}", streamId, cause != null ? "：" + cause : "");
+        }
+    }
+
+    public int size() {
+        return inbound.size() + outbound.size();
+    }
+
+    /**
+     * 连接断开后对端不会再发送或消费：接收端以异常结束，发送端取消并关闭数据源
+     */
+    public void closeAll(Throwable cause) {
+        for (InboundStream<?> stream : inbound.values()) {
+            stream.fail(cause);
+        }
+        for (OutboundStream stream : outbound.values()) {
+            stream.cancel();
+        }
+    }
+}
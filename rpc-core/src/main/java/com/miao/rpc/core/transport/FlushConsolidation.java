@@ -0,0 +1,29 @@
+package com.miao.rpc.core.transport;
+
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+/**
+ * 在pipeline最前面加入flush合并及统计的handler，客户端与服务端共用。
+ *
+ * 业务线程与IO线程每发一条消息都调用writeAndFlush，FlushConsolidationHandler把同一次读事件中、
+ * 以及同一轮EventLoop任务中发生的flush合并为一次：读事件中的flush推迟到channelReadComplete，
+ * 其他线程提交的flush推迟到EventLoop执行完当前已排队的任务之后，
+ * 每累计explicitFlushAfterFlushes次flush立即真正flush一次，避免延迟过大
+ */
+public final class FlushConsolidation {
+
+    private FlushConsolidation() {
+    }
+
+    /**
+     * @param explicitFlushAfterFlushes 合并多少次flush后立即真正flush，小于等于0表示不合并，只统计
+     */
+    public static void install(ChannelPipeline pipeline, int explicitFlushAfterFlushes, FlushStats stats) {
+        if (explicitFlushAfterFlushes > 0) {
+            pipeline.addFirst("FlushConsolidationHandler",
+                    new FlushConsolidationHandler(explicitFlushAfterFlushes, true));
+        }
+        pipeline.addFirst("FlushStatsHandler", new FlushStatsHandler(stats));
+    }
+}
@@ -0,0 +1,67 @@
+package com.miao.rpc.core.transport;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 真正到达socket的flush的统计，由同一端的全部连接共用：
+ * 消息数/flush次数即平均每次flush(一次系统调用)写出的消息数，
+ * 批大小按2的幂分桶：[1]、[2,3]、[4,7] ... [128,+∞)
+ */
+public class FlushStats {
+
+    private static final int BUCKETS = 8;
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAccumulator maxBatch = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    public FlushStats() {
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    void record(int batchSize) {
+        messages.add(batchSize);
+        flushes.increment();
+        maxBatch.accumulate(batchSize);
+        int bucket = 31 - Integer.numberOfLeadingZeros(Math.max(batchSize, 1));
+        histogram[Math.min(bucket, BUCKETS - 1)].increment();
+    }
+
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    public long getMaxBatch() {
+        return maxBatch.get();
+    }
+
+    public double getAverageBatch() {
+        long flushes = getFlushes();
+        return flushes == 0 ? 0 : (double) getMessages() / flushes;
+    }
+
+    /**
+     * 各批大小区间的flush次数，下标i对应[2^i, 2^(i+1))，最后一个桶不设上限
+     */
+    public long[] getHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FlushStats(messages=%d, flushes=%d, avgBatch=%.2f, maxBatch=%d)",
+                getMessages(), getFlushes(), getAverageBatch(), getMaxBatch());
+    }
+}
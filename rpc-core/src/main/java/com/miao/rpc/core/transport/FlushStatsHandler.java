@@ -0,0 +1,35 @@
+package com.miao.rpc.core.transport;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 放在pipeline的最前面(最靠近socket)，统计两次flush之间写出的消息数，
+ * 此时看到的flush已经经过FlushConsolidationHandler合并，与实际的系统调用次数对应。
+ * 每个channel一个实例，只在EventLoop线程上访问
+ */
+public class FlushStatsHandler extends ChannelOutboundHandlerAdapter {
+
+    private final FlushStats stats;
+    private int pending; // 上次flush之后写入的消息数
+
+    public FlushStatsHandler(FlushStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pending++;
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (pending > 0) {
+            stats.record(pending);
+            pending = 0;
+        }
+        ctx.flush();
+    }
+}
@@ -0,0 +1,75 @@
+package com.miao.rpc.core.transport;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 网络传输的实现，Linux上优先使用原生epoll(netty-all中已包含其本地库)，不可用时使用NIO
+ */
+@Slf4j
+public enum Transport {
+    EPOLL {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, String name) {
+            return new EpollEventLoopGroup(threads, new DefaultThreadFactory(name));
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+    },
+    NIO {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, String name) {
+            return new NioEventLoopGroup(threads, new DefaultThreadFactory(name));
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return NioSocketChannel.class;
+        }
+    };
+
+    /**
+     * @param threads 线程数，0表示使用Netty的默认值(CPU核数的2倍)
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads, String name);
+
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    public abstract Class<? extends SocketChannel> socketChannelClass();
+
+    /**
+     * @param preferNative 是否优先使用原生epoll
+     */
+    public static Transport select(boolean preferNative) {
+        if (preferNative) {
+            if (Epoll.isAvailable()) {
+                return EPOLL;
+            }
+            log.info("原生epoll不可用，使用NIO：{}", Epoll.unavailabilityCause().toString());
+        }
+        return NIO;
+    }
+}
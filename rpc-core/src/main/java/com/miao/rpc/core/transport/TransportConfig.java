@@ -0,0 +1,71 @@
+package com.miao.rpc.core.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import lombok.Data;
+
+/**
+ * 网络传输相关的参数，客户端与服务端共用，buffer大小为0表示使用操作系统的默认值(自动调整)
+ */
+@Data
+public class TransportConfig {
+    private boolean nativeTransport = true; // Linux上优先使用原生epoll，不可用时退回NIO
+    private int ioThreads = 0; // IO线程(EventLoop)数，0表示Netty的默认值，即CPU核数的2倍
+    private int bossThreads = 1; // 服务端接受连接的线程数
+    private boolean tcpNoDelay = true; // 关闭Nagle算法，小包立即发送
+    // Socket参数，TCP数据发送缓冲区大小。该缓冲区即TCP发送滑动窗口，
+    // linux操作系统可使用命令：cat /proc/sys/net/ipv4/tcp_wmem查询其大小。
+    private int sendBufferSize = 0;
+    // Socket参数，TCP数据接收缓冲区大小。该缓冲区即TCP接收滑动窗口，
+    // linux操作系统可使用命令：cat /proc/sys/net/ipv4/tcp_rmem查询其大小。
+    // 一般情况下，该值可由用户在任意时刻设置，但当设置值超过64KB时，需要在连接到远端之前设置。
+    private int receiveBufferSize = 0;
+    // 对应的是tcp/ip协议listen函数中的backlog参数，
+    // 函数listen(int socketfd,int backlog)用来初始化服务端可连接队列，
+    // 多个客户端来的时候，服务端将不能处理的客户端连接请求放在队列中等待处理，backlog参数指定了队列的大小
+    private int backlog = 128;
+    private int connectTimeoutMillis = 3000; // 客户端建立连接的超时时间
+    private boolean pooledAllocator = true; // 使用池化的ByteBuf分配器
+
+    public Transport transport() {
+        return Transport.select(nativeTransport);
+    }
+
+    public ByteBufAllocator allocator() {
+        return pooledAllocator ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT;
+    }
+
+    /**
+     * 服务端：backlog作用于监听socket，其余参数作用于每个接受的连接
+     */
+    public void applyTo(ServerBootstrap bootstrap) {
+        bootstrap.option(ChannelOption.SO_BACKLOG, backlog)
+                .option(ChannelOption.ALLOCATOR, allocator())
+                .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay)
+                .childOption(ChannelOption.ALLOCATOR, allocator());
+        if (sendBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            // 超过64KB的接收缓冲区需要在连接建立前设置，所以同时设置在监听socket上，由接受的连接继承
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize)
+                    .childOption(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+    }
+
+    public void applyTo(Bootstrap bootstrap) {
+        bootstrap.option(ChannelOption.TCP_NODELAY, tcpNoDelay)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                .option(ChannelOption.ALLOCATOR, allocator());
+        if (sendBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.miao.rpc.core.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.protostuff.ByteString;
+import io.protostuff.Output;
+import io.protostuff.Schema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static io.protostuff.WireFormat.WIRETYPE_END_GROUP;
+import static io.protostuff.WireFormat.WIRETYPE_FIXED32;
+import static io.protostuff.WireFormat.WIRETYPE_FIXED64;
+import static io.protostuff.WireFormat.WIRETYPE_LENGTH_DELIMITED;
+import static io.protostuff.WireFormat.WIRETYPE_START_GROUP;
+import static io.protostuff.WireFormat.WIRETYPE_VARINT;
+import static io.protostuff.WireFormat.makeTag;
+
+/**
+ * Protostuff的Output适配器，按protostuff格式直接把字段写入Netty的ByteBuf，
+ * 与ProtostuffIOUtil.toByteArray的输出完全相同，但不经过LinkedBuffer，也不产生中间的byte[]
+ *
+ * protostuff格式中嵌套对象以start/end group标记包围，不需要预先计算长度，所以可以流式地写入；
+ * 字符串先用ByteBufUtil.utf8Bytes算出UTF-8长度，再直接编码进ByteBuf
+ */
+public final class ByteBufOutput implements Output {
+
+    private final ByteBuf out;
+
+    public ByteBufOutput(ByteBuf out) {
+        this.out = out;
+    }
+
+    @Override
+    public void writeInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        if (value < 0) {
+            writeVarInt64(value); // 负数按64位varint编码，与protobuf保持一致
+        } else {
+            writeVarInt32(value);
+        }
+    }
+
+    @Override
+    public void writeUInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt32(value);
+    }
+
+    @Override
+    public void writeSInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt32((value << 1) ^ (value >> 31));
+    }
+
+    @Override
+    public void writeFixed32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED32));
+        out.writeIntLE(value);
+    }
+
+    @Override
+    public void writeSFixed32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeFixed32(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt64(value);
+    }
+
+    @Override
+    public void writeUInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeInt64(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeSInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt64((value << 1) ^ (value >> 63));
+    }
+
+    @Override
+    public void writeFixed64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED64));
+        out.writeLongLE(value);
+    }
+
+    @Override
+    public void writeSFixed64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeFixed64(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeFloat(int fieldNumber, float value, boolean repeated) throws IOException {
+        writeFixed32(fieldNumber, Float.floatToRawIntBits(value), repeated);
+    }
+
+    @Override
+    public void writeDouble(int fieldNumber, double value, boolean repeated) throws IOException {
+        writeFixed64(fieldNumber, Double.doubleToRawLongBits(value), repeated);
+    }
+
+    @Override
+    public void writeBool(int fieldNumber, boolean value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        out.writeByte(value ? 1 : 0);
+    }
+
+    @Override
+    public void writeEnum(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeInt32(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeString(int fieldNumber, String value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+        writeVarInt32(ByteBufUtil.utf8Bytes(value));
+        ByteBufUtil.writeUtf8(out, value);
+    }
+
+    @Override
+    public void writeBytes(int fieldNumber, ByteString value, boolean repeated) throws IOException {
+        ByteString.writeTo(this, value, fieldNumber, repeated);
+    }
+
+    @Override
+    public void writeByteArray(int fieldNumber, byte[] value, boolean repeated) throws IOException {
+        writeByteRange(false, fieldNumber, value, 0, value.length, repeated);
+    }
+
+    @Override
+    public void writeByteRange(boolean utf8String, int fieldNumber, byte[] value,
+                               int offset, int length, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+        writeVarInt32(length);
+        out.writeBytes(value, offset, length);
+    }
+
+    @Override
+    public <T> void writeObject(int fieldNumber, T value, Schema<T> schema, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_START_GROUP));
+        schema.writeTo(this, value);
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_END_GROUP));
+    }
+
+    @Override
+    public void writeBytes(int fieldNumber, ByteBuffer value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+        writeVarInt32(value.remaining());
+        out.writeBytes(value.duplicate());
+    }
+
+    private void writeVarInt32(int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private void writeVarInt64(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte(((int) value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,30 @@
+package com.miao.rpc.core.util;
+
+import java.lang.reflect.Method;
+
+/**
+ * 方法签名，格式为 接口名#方法名(参数类型,参数类型)，
+ * 客户端与服务端用它对应服务端方法表中的同一个方法
+ */
+public final class MethodSignature {
+
+    private MethodSignature() {
+    }
+
+    public static String of(Method method) {
+        return of(method.getDeclaringClass().getName(), method.getName(), method.getParameterTypes());
+    }
+
+    public static String of(String className, String methodName, Class<?>[] parameterTypes) {
+        StringBuilder builder = new StringBuilder(64).append(className).append('#').append(methodName).append('(');
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(parameterTypes[i].getName());
+            }
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -1,13 +1,22 @@
 package com.miao.rpc.core.util;
 
+import io.netty.buffer.ByteBuf;
+import com.miao.rpc.core.serialize.RemoteThrowables;
+import io.netty.buffer.ByteBufInputStream;
+import io.protostuff.Input;
 import io.protostuff.LinkedBuffer;
+import io.protostuff.Output;
+import io.protostuff.Pipe;
 import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
+import io.protostuff.WireFormat;
+import io.protostuff.runtime.DefaultIdStrategy;
+import io.protostuff.runtime.Delegate;
 import io.protostuff.runtime.RuntimeSchema;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 
 /**
  * 序列化框架Protostuff
@@ -15,12 +24,21 @@ import java.util.concurrent.Executors;
 public class ProtostuffUtil {
 
     private static Map<Class<?>, Schema<?>> cachedSchema = new ConcurrentHashMap<>();
+    // 声明为Throwable的字段只写出类名与消息，不按字段展开异常(JDK 9+上cause指向自身会无限递归)
+    private static final DefaultIdStrategy ID_STRATEGY = new DefaultIdStrategy();
+
+    static {
+        ID_STRATEGY.registerDelegate(new ThrowableDelegate());
+    }
+    // 从堆外ByteBuf读取时用作读缓冲，每个线程(即每个EventLoop)复用一个，不再为每条消息分配
+    private static final ThreadLocal<LinkedBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
 
     @SuppressWarnings("unchecked")
     private static <T> Schema<T> getSchema(Class<T> cls) {
         Schema<T> schema = (Schema<T>) cachedSchema.get(cls);
         if (schema == null) {
-            schema = RuntimeSchema.createFrom(cls);
+            schema = RuntimeSchema.createFrom(cls, ID_STRATEGY);
             cachedSchema.put(cls, schema);
         }
         return schema;
@@ -40,6 +58,49 @@ public class ProtostuffUtil {
         }
     }
 
+    /**
+     * 直接序列化进ByteBuf，不产生中间的byte[]
+     * @return 写入的字节数
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> int serialize(T obj, ByteBuf out) {
+        Class<T> cls = (Class<T>) obj.getClass();
+        int start = out.writerIndex();
+        try {
+            getSchema(cls).writeTo(new ByteBufOutput(out), obj);
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return out.writerIndex() - start;
+    }
+
+    /**
+     * 直接从ByteBuf中读取length个字节反序列化，读完后readerIndex后移length。
+     * 堆内ByteBuf直接读其底层数组，堆外ByteBuf通过有界的InputStream读入线程复用的缓冲区
+     */
+    public static <T> T deserialize(ByteBuf in, int length, Class<T> cls) {
+        try {
+            T message = cls.newInstance();
+            Schema<T> schema = getSchema(cls);
+            if (in.hasArray()) {
+                ProtostuffIOUtil.mergeFrom(in.array(), in.arrayOffset() + in.readerIndex(), length, message, schema);
+                in.skipBytes(length);
+            } else {
+                int end = in.readerIndex() + length;
+                LinkedBuffer buffer = READ_BUFFER.get();
+                try {
+                    ProtostuffIOUtil.mergeFrom(new ByteBufInputStream(in, length), message, schema, buffer);
+                } finally {
+                    buffer.clear();
+                }
+                in.readerIndex(end);
+            }
+            return message;
+        } catch (IllegalAccessException | InstantiationException | IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
     public static <T> T deserialize(byte[] data, Class<T> cls) {
         try {
             // 由于这里使用了反射来实例化对象，这要求对象一定要有无参构造器。
@@ -53,4 +114,41 @@ public class ProtostuffUtil {
             throw new IllegalStateException(e.getMessage(), e);
         }
     }
+
+    /**
+     * 异常编码为"类名:消息"(消息为null时只有类名)，类名中不会出现':'，读取时按RemoteThrowables的规则重建
+     */
+    private static class ThrowableDelegate implements Delegate<Throwable> {
+
+        @Override
+        public WireFormat.FieldType getFieldType() {
+            return WireFormat.FieldType.STRING;
+        }
+
+        @Override
+        public Throwable readFrom(Input input) throws IOException {
+            String value = input.readString();
+            int colon = value.indexOf(':');
+            String className = colon < 0 ? value : value.substring(0, colon);
+            String message = colon < 0 ? null : value.substring(colon + 1);
+            return RemoteThrowables.rebuild(className, message, ProtostuffUtil.class.getClassLoader());
+        }
+
+        @Override
+        public void writeTo(Output output, int number, Throwable value, boolean repeated) throws IOException {
+            String className = value.getClass().getName();
+            String message = value.getMessage();
+            output.writeString(number, message == null ? className : className + ":" + message, repeated);
+        }
+
+        @Override
+        public void transfer(Pipe pipe, Input input, Output output, int number, boolean repeated) throws IOException {
+            input.transferByteRangeTo(output, true, number, repeated);
+        }
+
+        @Override
+        public Class<?> typeClass() {
+            return Throwable.class;
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package com.miao.rpc.core.client;
+
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.interceptor.Interceptors;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InFlightTableTest {
+
+    @Test
+    public void idsAreUniqueAndIncreasing() {
+        InFlightTable table = new InFlightTable();
+        long previous = 0;
+        for (int i = 0; i < 100; i++) {
+            long id = table.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void putGetRemoveAcrossStripes() {
+        InFlightTable table = new InFlightTable();
+        List<InFlightRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            InFlightRequest inFlight = inFlight(table, table.nextId());
+            table.put(inFlight);
+            requests.add(inFlight);
+        }
+        assertEquals(100, table.size());
+        assertEquals(100, table.values().size());
+        for (InFlightRequest inFlight : requests) {
+            long id = inFlight.getRequest().getRequestId();
+            assertSame(inFlight, table.get(id));
+            assertSame(inFlight, table.remove(id));
+            assertNull(table.remove(id)); // 重复的响应只有第一次能取到
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void failAllCompletesEveryRequest() {
+        InFlightTable table = new InFlightTable();
+        List<InFlightRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            InFlightRequest inFlight = inFlight(table, table.nextId());
+            table.put(inFlight);
+            requests.add(inFlight);
+        }
+        RuntimeException cause = new RuntimeException("连接已断开");
+        table.failAll(cause);
+        assertEquals(0, table.size());
+        for (InFlightRequest inFlight : requests) {
+            RpcResponse response = inFlight.getFuture().getResponse();
+            assertSame(cause, response.getCause());
+            assertEquals(inFlight.getRequest().getRequestId(), response.getRequestId());
+        }
+    }
+
+    @Test
+    public void timeoutOnlyFiresWhileStillInTable() {
+        InFlightTable table = new InFlightTable();
+        InFlightRequest inFlight = inFlight(table, table.nextId());
+        table.put(inFlight);
+        inFlight.run(null);
+        assertTrue(inFlight.getFuture().getResponse().getCause() instanceof RpcTimeoutException);
+        assertNull(table.get(inFlight.getRequest().getRequestId()));
+
+        // 已经收到响应的请求不会再被超时任务覆盖
+        InFlightRequest answered = inFlight(table, table.nextId());
+        table.put(answered);
+        RpcResponse response = new RpcResponse();
+        response.setResult("ok");
+        table.remove(answered.getRequest().getRequestId()).complete(response);
+        answered.run(null);
+        assertEquals("ok", answered.getFuture().getResponse().getResult());
+    }
+
+    @Test
+    public void retriesAreCounted() {
+        InFlightTable table = new InFlightTable();
+        InFlightRequest inFlight = inFlight(table, table.nextId());
+        assertEquals(0, inFlight.getRetries());
+        assertEquals(1, inFlight.retry());
+        assertEquals(2, inFlight.retry());
+        assertTrue(inFlight.getSendTime() >= inFlight.getCreateTime());
+        assertTrue(inFlight.isRetryable());
+        inFlight.markUploading(); // 上传过流式参数的请求不能重新发送
+        assertFalse(inFlight.isRetryable());
+    }
+
+    private static InFlightRequest inFlight(InFlightTable table, long id) {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(id);
+        request.setClassName("a.Foo");
+        request.setMethodName("bar");
+        return new InFlightRequest(request, new RpcResponseFuture(), table, Interceptors.NONE);
+    }
+}
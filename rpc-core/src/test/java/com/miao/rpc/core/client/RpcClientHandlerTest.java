@@ -0,0 +1,72 @@
+package com.miao.rpc.core.client;
+
+import com.miao.rpc.core.coder.RpcDecodeException;
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.serialize.ProtostuffSerializer;
+import com.miao.rpc.core.stream.StreamTable;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 只有能确定requestId的响应解码失败才重新发送，其余异常结束全部在途请求并关闭连接
+ */
+public class RpcClientHandlerTest {
+
+    private InFlightTable table;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        table = new InFlightTable();
+        channel = new EmbeddedChannel(new RpcClientHandler(new RpcClient(), table, new StreamTable()));
+        assertEquals(Message.HANDSHAKE, ((Message) channel.readOutbound()).getType());
+    }
+
+    @Test
+    public void undecodableResponseRetriesOnlyThatRequest() {
+        InFlightRequest broken = inFlight();
+        InFlightRequest other = inFlight();
+        long id = broken.getRequest().getRequestId();
+        channel.pipeline().fireExceptionCaught(
+                new RpcDecodeException(Message.RESPONSE, id, ProtostuffSerializer.ID, new IOException("bad body")));
+
+        Message resent = channel.readOutbound();
+        assertEquals(id, resent.getRequest().getRequestId());
+        assertNull(channel.readOutbound());
+        assertEquals(1, broken.getRetries());
+        assertEquals(0, other.getRetries());
+        assertFalse(other.getFuture().isDone());
+        assertTrue(channel.isOpen());
+    }
+
+    @Test
+    public void channelErrorFailsAllAndCloses() {
+        InFlightRequest first = inFlight();
+        InFlightRequest second = inFlight();
+        IOException cause = new IOException("Connection reset by peer");
+        channel.pipeline().fireExceptionCaught(cause);
+
+        assertNull(channel.readOutbound()); // 不重新发送
+        assertSame(cause, first.getFuture().getNow(null).getCause());
+        assertSame(cause, second.getFuture().getNow(null).getCause());
+        assertEquals(0, table.size());
+        assertFalse(channel.isOpen());
+    }
+
+    private InFlightRequest inFlight() {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(table.nextId());
+        request.setClassName("a.Foo");
+        request.setMethodName("bar");
+        InFlightRequest inFlight = new InFlightRequest(request, new RpcResponseFuture(), table, Interceptors.NONE);
+        table.put(inFlight);
+        return inFlight;
+    }
+}
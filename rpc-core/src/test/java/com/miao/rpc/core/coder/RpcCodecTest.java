@@ -0,0 +1,366 @@
+package com.miao.rpc.core.coder;
+
+import com.miao.rpc.core.domain.Handshake;
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.RpcBatch;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import com.miao.rpc.core.domain.StreamFrame;
+import com.miao.rpc.core.interceptor.Interceptors;
+import com.miao.rpc.core.serialize.KryoSerializer;
+import com.miao.rpc.core.serialize.ProtostuffSerializer;
+import com.miao.rpc.core.stream.RpcStreamException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static com.miao.rpc.core.constant.Constant.LengthFieldConstant.*;
+import static com.miao.rpc.core.constant.Constant.ProtocolConstant.*;
+import static org.junit.Assert.*;
+
+/**
+ * RpcEncoder编码的帧经过LengthFieldBasedFrameDecoder与RpcDecoder后还原为相同的消息
+ */
+public class RpcCodecTest {
+
+    @Test
+    public void requestRoundTrip() {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(42);
+        request.setSerializer(ProtostuffSerializer.ID);
+        request.setTimeout(1500);
+        request.setPriority((byte) 3);
+        request.setClassName("a.Foo");
+        request.setMethodName("bar");
+        request.setParameterTypes(new Class<?>[]{String.class, int.class});
+        request.setParameters(new Object[]{"x", 7});
+
+        RpcRequest decoded = roundTrip(Message.buildRequest(request)).getRequest();
+        assertEquals(42, decoded.getRequestId());
+        assertEquals(1500, decoded.getTimeout());
+        assertEquals(3, decoded.getPriority());
+        assertEquals(ProtostuffSerializer.ID, decoded.getSerializer());
+        assertEquals("a.Foo", decoded.getClassName());
+        assertEquals("bar", decoded.getMethodName());
+        assertArrayEquals(new Class<?>[]{String.class, int.class}, decoded.getParameterTypes());
+        assertArrayEquals(new Object[]{"x", 7}, decoded.getParameters());
+        assertTrue(decoded.getBytes() > HEADER_LENGTH);
+    }
+
+    @Test
+    public void requestWithMethodIdOmitsSignature() {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(1);
+        request.setSerializer(ProtostuffSerializer.ID);
+        request.setMethodId(5);
+        request.setClassName("a.Foo");
+        request.setMethodName("bar");
+        request.setParameters(new Object[]{"x"});
+
+        RpcRequest decoded = roundTrip(Message.buildRequest(request)).getRequest();
+        assertEquals(5, decoded.getMethodId());
+        assertNull(decoded.getClassName());
+        assertArrayEquals(new Object[]{"x"}, decoded.getParameters());
+    }
+
+    @Test
+    public void responseRoundTripWithBothSerializers() {
+        for (byte serializer : new byte[]{ProtostuffSerializer.ID, KryoSerializer.ID}) {
+            RpcResponse response = new RpcResponse();
+            response.setRequestId(9);
+            response.setSerializer(serializer);
+            response.setResult(new ArrayList<>(Arrays.asList("a", "b")));
+
+            RpcResponse decoded = roundTrip(Message.buildResponse(response)).getResponse();
+            assertEquals(9, decoded.getRequestId());
+            assertEquals(serializer, decoded.getSerializer());
+            assertEquals(Arrays.asList("a", "b"), decoded.getResult());
+        }
+    }
+
+    @Test
+    public void bodyLargerThanInitialBuffer() {
+        char[] text = new char[200000];
+        Arrays.fill(text, '字');
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(3);
+        response.setResult(new String(text));
+
+        assertEquals(new String(text), roundTrip(Message.buildResponse(response)).getResponse().getResult());
+    }
+
+    @Test
+    public void kryoSendsExceptionAsClassNameAndMessage() {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(3);
+        response.setSerializer(KryoSerializer.ID);
+        response.setCause(new IllegalStateException("boom"));
+
+        Throwable cause = roundTrip(Message.buildResponse(response)).getResponse().getCause();
+        assertEquals(IllegalStateException.class, cause.getClass());
+        assertEquals("boom", cause.getMessage());
+        assertEquals(0, cause.getStackTrace().length);
+    }
+
+    @Test
+    public void protostuffSendsExceptionAsClassNameAndMessage() {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(4);
+        response.setSerializer(ProtostuffSerializer.ID);
+        response.setCause(new IllegalStateException("boom: again"));
+
+        Throwable cause = roundTrip(Message.buildResponse(response)).getResponse().getCause();
+        assertEquals(IllegalStateException.class, cause.getClass());
+        assertEquals("boom: again", cause.getMessage());
+        assertEquals(0, cause.getStackTrace().length);
+
+        response.setCause(new NullPointerException());
+        cause = roundTrip(Message.buildResponse(response)).getResponse().getCause();
+        assertEquals(NullPointerException.class, cause.getClass());
+        assertNull(cause.getMessage());
+
+        // 服务方法声明的受检异常保留类型，客户端代理才能原样抛出
+        response.setCause(new FileNotFoundException("a.txt"));
+        cause = roundTrip(Message.buildResponse(response)).getResponse().getCause();
+        assertEquals(FileNotFoundException.class, cause.getClass());
+        assertEquals("a.txt", cause.getMessage());
+
+        // 没有(String)构造器的异常以带有原类名的RuntimeException代替
+        response.setCause(new RpcStreamException("closed", null));
+        cause = roundTrip(Message.buildResponse(response)).getResponse().getCause();
+        assertEquals(RuntimeException.class, cause.getClass());
+        assertEquals(RpcStreamException.class.getName() + ": closed", cause.getMessage());
+    }
+
+    @Test
+    public void batchRoundTrip() {
+        RpcRequest first = request(100, 0, "first");
+        RpcRequest second = request(101, 8, "second");
+        second.setTimeout(250);
+        second.setPriority((byte) 1);
+
+        RpcBatch decoded = roundTrip(Message.buildBatch(RpcBatch.ofRequests(Arrays.asList(first, second)))).getBatch();
+        assertEquals(100, decoded.getBatchId());
+        assertEquals(2, decoded.size());
+        assertTrue(decoded.isRequest());
+        RpcRequest[] requests = decoded.getRequests();
+        assertEquals(100, requests[0].getRequestId());
+        assertEquals("a.Foo", requests[0].getClassName());
+        assertArrayEquals(new Object[]{"first"}, requests[0].getParameters());
+        assertEquals(101, requests[1].getRequestId());
+        assertEquals(8, requests[1].getMethodId());
+        assertEquals(250, requests[1].getTimeout());
+        assertEquals(1, requests[1].getPriority());
+        assertNull(requests[1].getClassName());
+        assertArrayEquals(new Object[]{"second"}, requests[1].getParameters());
+
+        RpcResponse ok = new RpcResponse();
+        ok.setRequestId(101);
+        ok.setResult("done");
+        RpcResponse empty = new RpcResponse();
+        empty.setRequestId(100);
+        RpcResponse failed = new RpcResponse();
+        failed.setRequestId(102);
+        failed.setCause(new IllegalArgumentException("bad"));
+        RpcBatch responses = roundTrip(Message.buildBatch(
+                RpcBatch.ofResponses(100, ProtostuffSerializer.ID, new RpcResponse[]{ok, empty, failed}))).getBatch();
+        assertFalse(responses.isRequest());
+        assertEquals(101, responses.getResponses()[0].getRequestId());
+        assertEquals("done", responses.getResponses()[0].getResult());
+        assertEquals(100, responses.getResponses()[1].getRequestId());
+        assertNull(responses.getResponses()[1].getResult());
+        assertEquals(102, responses.getResponses()[2].getRequestId());
+        assertEquals("bad", responses.getResponses()[2].getCause().getMessage());
+    }
+
+    @Test
+    public void streamAndCreditFrames() {
+        StreamFrame data = StreamFrame.data(7, ProtostuffSerializer.ID, new Object[]{"a", null, 3}, true);
+        Message decoded = roundTrip(Message.buildStream(data));
+        assertEquals(Message.STREAM, decoded.getType());
+        assertEquals(7, decoded.getStream().getRequestId());
+        assertTrue(decoded.getStream().isEnd());
+        assertArrayEquals(new Object[]{"a", null, 3}, decoded.getStream().getItems());
+
+        StreamFrame error = StreamFrame.error(7, ProtostuffSerializer.ID, new IllegalArgumentException("bad item"));
+        Throwable cause = roundTrip(Message.buildStream(error)).getStream().getCause();
+        assertEquals(IllegalArgumentException.class, cause.getClass());
+        assertEquals("bad item", cause.getMessage());
+
+        Message credit = roundTrip(Message.buildCredit(StreamFrame.credit(7, ProtostuffSerializer.ID, 16, false)));
+        assertEquals(Message.CREDIT, credit.getType());
+        assertEquals(16, credit.getStream().getCredits());
+        assertFalse(credit.getStream().isCancel());
+    }
+
+    @Test
+    public void handshakeAndHeartbeat() {
+        Handshake handshake = new Handshake();
+        handshake.setSerializer(KryoSerializer.ID);
+        handshake.setSupportedSerializers(new byte[]{ProtostuffSerializer.ID, KryoSerializer.ID});
+        handshake.setMethods(new String[]{"a.Foo#bar(java.lang.String)"});
+        handshake.setCompression(true);
+        Handshake decoded = roundTrip(Message.buildHandshake(handshake)).getHandshake();
+        assertEquals(KryoSerializer.ID, decoded.getSerializer());
+        assertTrue(decoded.supports(KryoSerializer.ID));
+        assertArrayEquals(handshake.getMethods(), decoded.getMethods());
+        assertTrue(decoded.isCompression());
+
+        assertSame(Message.PING_MSG, roundTrip(Message.PING_MSG));
+        assertSame(Message.PONG_MSG, roundTrip(Message.PONG_MSG));
+    }
+
+    @Test
+    public void compressedBodyRoundTrip() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcEncoder(Interceptors.NONE, 64));
+        encoder.attr(Compression.PEER_SUPPORTED).set(true);
+        char[] text = new char[4096];
+        Arrays.fill(text, 'r');
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(5);
+        response.setSerializer(ProtostuffSerializer.ID);
+        response.setResult(new String(text));
+        encoder.writeOutbound(Message.buildResponse(response));
+        ByteBuf frame = encoder.readOutbound();
+        assertTrue(frame.readableBytes() < 1024);
+        assertTrue((frame.getByte(LENGTH_FIELD_LENGTH + FLAGS_OFFSET) & FLAG_COMPRESSED) != 0);
+
+        assertEquals(new String(text), ((Message) decode(frame).readInbound()).getResponse().getResult());
+    }
+
+    @Test
+    public void badMagicIsCorrupted() {
+        ByteBuf frame = encode(Message.PING_MSG);
+        frame.setShort(LENGTH_FIELD_LENGTH + MAGIC_OFFSET, 0x1234);
+        assertCorrupted(frame);
+    }
+
+    @Test
+    public void headerShorterThanThisVersionIsCorrupted() {
+        ByteBuf frame = encode(Message.PING_MSG);
+        frame.setByte(LENGTH_FIELD_LENGTH + HEADER_LENGTH_OFFSET, HEADER_LENGTH - 1);
+        assertCorrupted(frame);
+    }
+
+    @Test
+    public void headerLongerThanFrameIsCorrupted() {
+        ByteBuf frame = encode(Message.PING_MSG);
+        frame.setByte(LENGTH_FIELD_LENGTH + HEADER_LENGTH_OFFSET, 200);
+        assertCorrupted(frame);
+    }
+
+    @Test
+    public void otherMajorVersionIsRejected() {
+        ByteBuf frame = encode(Message.PING_MSG);
+        frame.setByte(LENGTH_FIELD_LENGTH + VERSION_OFFSET, VERSION + 0x10);
+        assertCorrupted(frame);
+    }
+
+    @Test
+    public void newerMinorVersionSkipsAppendedFields() {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(11);
+        response.setSerializer(ProtostuffSerializer.ID);
+        response.setResult("ok");
+        ByteBuf frame = encode(Message.buildResponse(response));
+        // 模拟次版本更高的对端在协议头末尾追加4个字节
+        int headerEnd = LENGTH_FIELD_LENGTH + HEADER_LENGTH;
+        ByteBuf extended = Unpooled.buffer();
+        extended.writeBytes(frame, 0, headerEnd);
+        extended.writeInt(0xCAFEBABE);
+        extended.writeBytes(frame, headerEnd, frame.readableBytes() - headerEnd);
+        extended.setInt(0, extended.readableBytes() - LENGTH_FIELD_LENGTH);
+        extended.setByte(LENGTH_FIELD_LENGTH + VERSION_OFFSET, VERSION + 1);
+        extended.setByte(LENGTH_FIELD_LENGTH + HEADER_LENGTH_OFFSET, HEADER_LENGTH + 4);
+        frame.release();
+
+        Message decoded = decode(extended).readInbound();
+        assertEquals(11, decoded.getResponse().getRequestId());
+        assertEquals("ok", decoded.getResponse().getResult());
+    }
+
+    @Test
+    public void undecodableBodyReportsRequestId() {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeInt(0);
+        ProtocolHeader.write(frame, Message.RESPONSE, (byte) 0, ProtostuffSerializer.ID, (byte) 0, 77, 0, 0);
+        frame.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+        frame.setInt(0, frame.readableBytes() - LENGTH_FIELD_LENGTH);
+        try {
+            decode(frame);
+            fail();
+        } catch (RpcDecodeException e) {
+            assertEquals(Message.RESPONSE, e.getType());
+            assertEquals(77, e.getRequestId());
+        }
+    }
+
+    @Test
+    public void serializerNotAcceptedIsRejected() {
+        RpcRequest request = request(12, 0, "x");
+        request.setSerializer(KryoSerializer.ID);
+        ByteBuf frame = encode(Message.buildRequest(request));
+        EmbeddedChannel channel = new EmbeddedChannel(frameDecoder(),
+                new RpcDecoder(Interceptors.NONE, new byte[]{ProtostuffSerializer.ID}));
+        try {
+            channel.writeInbound(frame);
+            fail();
+        } catch (RpcDecodeException e) {
+            assertEquals(12, e.getRequestId());
+            assertEquals(KryoSerializer.ID, e.getSerializer());
+        }
+    }
+
+    private static RpcRequest request(long id, int methodId, String parameter) {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(id);
+        request.setSerializer(ProtostuffSerializer.ID);
+        request.setMethodId(methodId);
+        request.setClassName("a.Foo");
+        request.setMethodName("bar");
+        request.setParameterTypes(new Class<?>[]{String.class});
+        request.setParameters(new Object[]{parameter});
+        return request;
+    }
+
+    private static Message roundTrip(Message message) {
+        EmbeddedChannel channel = decode(encode(message));
+        Message decoded = channel.readInbound();
+        assertNotNull(decoded);
+        assertNull(channel.readInbound());
+        return decoded;
+    }
+
+    private static ByteBuf encode(Message message) {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcEncoder());
+        assertTrue(channel.writeOutbound(message));
+        return channel.readOutbound();
+    }
+
+    private static EmbeddedChannel decode(ByteBuf frame) {
+        EmbeddedChannel channel = new EmbeddedChannel(frameDecoder(), new RpcDecoder());
+        channel.writeInbound(frame);
+        return channel;
+    }
+
+    private static LengthFieldBasedFrameDecoder frameDecoder() {
+        return new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, LENGTH_FIELD_OFFSET, LENGTH_FIELD_LENGTH,
+                LENGTH_ADJUSTMENT, INITIAL_BYTES_TO_STRIP);
+    }
+
+    private static void assertCorrupted(ByteBuf frame) {
+        try {
+            decode(frame);
+            fail();
+        } catch (CorruptedFrameException e) {
+            // 期望的异常
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.miao.rpc.core.loadBalance.impl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.miao.rpc.core.loadBalance.impl.RandomLoadBalanceTest.provider;
+import static org.junit.Assert.*;
+
+public class ConsistentHashLoadBalanceTest {
+
+    private static final int CLIENTS = 20000;
+
+    @Test
+    public void heavierProvidersGetMoreClients() {
+        ConsistentHashLoadBalance loadBalance = new ConsistentHashLoadBalance();
+        loadBalance.updateProviders(Arrays.asList(
+                provider("10.0.0.1:8000", 100), provider("10.0.0.2:8000", 400), provider("10.0.0.3:8000", 0)));
+        Map<String, Integer> counts = assign(loadBalance);
+        assertNull(counts.get("10.0.0.3:8000"));
+        double heavy = counts.get("10.0.0.2:8000") / (double) CLIENTS;
+        // 点数有限，比例只是大致为4:1
+        assertTrue("heavy share " + heavy, heavy > 0.65 && heavy < 0.92);
+    }
+
+    @Test
+    public void sameClientAlwaysGetsSameProvider() {
+        ConsistentHashLoadBalance loadBalance = new ConsistentHashLoadBalance();
+        loadBalance.update(Arrays.asList("10.0.0.1:8000", "10.0.0.2:8000", "10.0.0.3:8000"));
+        for (int i = 0; i < 100; i++) {
+            String client = "192.168.0." + i;
+            assertEquals(loadBalance.get(client), loadBalance.get(client));
+        }
+    }
+
+    @Test
+    public void removingProviderOnlyMovesItsClients() {
+        ConsistentHashLoadBalance loadBalance = new ConsistentHashLoadBalance();
+        loadBalance.update(Arrays.asList("10.0.0.1:8000", "10.0.0.2:8000", "10.0.0.3:8000"));
+        String[] before = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            before[i] = loadBalance.get("client-" + i);
+        }
+        loadBalance.update(Arrays.asList("10.0.0.1:8000", "10.0.0.2:8000"));
+        for (int i = 0; i < CLIENTS; i++) {
+            String after = loadBalance.get("client-" + i);
+            if (!"10.0.0.3:8000".equals(before[i])) {
+                assertEquals(before[i], after);
+            } else {
+                assertNotEquals("10.0.0.3:8000", after);
+            }
+        }
+    }
+
+    @Test
+    public void weightChangeKeepsExistingPoints() {
+        ConsistentHashLoadBalance loadBalance = new ConsistentHashLoadBalance();
+        loadBalance.updateProviders(Arrays.asList(provider("10.0.0.1:8000", 100), provider("10.0.0.2:8000", 100)));
+        String[] before = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            before[i] = loadBalance.get("client-" + i);
+        }
+        // 第二个地址权重变大只增加点，原来分给它的客户端不会离开
+        loadBalance.updateProviders(Arrays.asList(provider("10.0.0.1:8000", 100), provider("10.0.0.2:8000", 300)));
+        for (int i = 0; i < CLIENTS; i++) {
+            if ("10.0.0.2:8000".equals(before[i])) {
+                assertEquals("10.0.0.2:8000", loadBalance.get("client-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void emptyCircleReturnsNull() {
+        ConsistentHashLoadBalance loadBalance = new ConsistentHashLoadBalance();
+        assertNull(loadBalance.get("client"));
+        loadBalance.update(Arrays.asList("10.0.0.1:8000"));
+        loadBalance.update(Arrays.<String>asList());
+        assertNull(loadBalance.get("client"));
+    }
+
+    private static Map<String, Integer> assign(ConsistentHashLoadBalance loadBalance) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            counts.merge(loadBalance.get("client-" + i), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
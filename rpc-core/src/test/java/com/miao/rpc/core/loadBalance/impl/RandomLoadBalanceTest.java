@@ -0,0 +1,66 @@
+package com.miao.rpc.core.loadBalance.impl;
+
+import com.miao.rpc.core.registry.ProviderInfo;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RandomLoadBalanceTest {
+
+    private static final int SAMPLES = 100000;
+
+    @Test
+    public void trafficIsProportionalToWeight() {
+        RandomLoadBalance loadBalance = new RandomLoadBalance();
+        loadBalance.updateProviders(Arrays.asList(provider("a:1", 100), provider("b:1", 0), provider("c:1", 300)));
+        Map<String, Integer> counts = sample(loadBalance);
+        assertNull(counts.get("b:1"));
+        assertEquals(0.25, counts.get("a:1") / (double) SAMPLES, 0.02);
+        assertEquals(0.75, counts.get("c:1") / (double) SAMPLES, 0.02);
+    }
+
+    @Test
+    public void leadingZeroWeightIsNeverPicked() {
+        RandomLoadBalance loadBalance = new RandomLoadBalance();
+        loadBalance.updateProviders(Arrays.asList(provider("a:1", 0), provider("b:1", 0), provider("c:1", 5)));
+        assertEquals(SAMPLES, (int) sample(loadBalance).get("c:1"));
+    }
+
+    @Test
+    public void equalOrZeroWeightsAreUniform() {
+        for (int weight : new int[]{100, 0}) {
+            RandomLoadBalance loadBalance = new RandomLoadBalance();
+            loadBalance.updateProviders(Arrays.asList(provider("a:1", weight), provider("b:1", weight)));
+            Map<String, Integer> counts = sample(loadBalance);
+            assertEquals(0.5, counts.get("a:1") / (double) SAMPLES, 0.02);
+        }
+    }
+
+    @Test
+    public void plainAddressesAndEmptyList() {
+        RandomLoadBalance loadBalance = new RandomLoadBalance();
+        assertNull(loadBalance.get("client"));
+        loadBalance.update(Arrays.asList("a:1", "b:1"));
+        assertEquals(2, sample(loadBalance).size());
+        loadBalance.updateProviders(Arrays.<ProviderInfo>asList());
+        assertNull(loadBalance.get("client"));
+    }
+
+    static ProviderInfo provider(String address, int weight) {
+        ProviderInfo provider = new ProviderInfo(address);
+        provider.setWeight(weight);
+        return provider;
+    }
+
+    private static Map<String, Integer> sample(RandomLoadBalance loadBalance) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            counts.merge(loadBalance.get("client"), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,86 @@
+package com.miao.rpc.core.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void smallValuesHaveExactBuckets() {
+        for (int value = 0; value < 64; value++) {
+            assertEquals(value, Histogram.bucketOf(value));
+            assertEquals(value, Histogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    public void bucketUpperBoundIsWithinRelativeError() {
+        for (long value = 64; value < (1L << 40); value = value * 3 / 2 + 1) {
+            int bucket = Histogram.bucketOf(value);
+            long upper = Histogram.upperBoundOf(bucket);
+            assertTrue(value + " <= " + upper, value <= upper);
+            assertTrue(value + " ~ " + upper, upper - value <= value / 32);
+            assertEquals(bucket, Histogram.bucketOf(upper));
+            assertEquals(bucket + 1, Histogram.bucketOf(upper + 1));
+        }
+    }
+
+    @Test
+    public void bucketsAreMonotonicAndCapped() {
+        int previous = -1;
+        for (long value = 0; value < 100000; value++) {
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucketOf(1L << 40));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesOfUniformValues() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(50005000, snapshot.getSum());
+        assertEquals(5000.5, snapshot.getMean(), 1e-9);
+        assertEquals(10000, snapshot.getMax());
+        assertWithin(5000, snapshot.valueAt(50));
+        assertWithin(9900, snapshot.valueAt(99));
+        assertEquals(10000, snapshot.valueAt(100));
+        assertEquals(1, snapshot.valueAt(0));
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.snapshot().valueAt(50));
+    }
+
+    @Test
+    public void sinceContainsOnlyNewRecords() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(1000000);
+        }
+        HistogramSnapshot before = histogram.snapshot();
+        for (int i = 0; i < 10; i++) {
+            histogram.record(10);
+        }
+        HistogramSnapshot delta = histogram.snapshot().since(before);
+        assertEquals(10, delta.getCount());
+        assertEquals(100, delta.getSum());
+        assertEquals(10, delta.valueAt(99));
+        assertEquals(10, delta.getMax());
+        assertEquals(0, new Histogram().snapshot().valueAt(99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual, actual >= expected && actual - expected <= expected / 32);
+    }
+}
@@ -0,0 +1,36 @@
+package com.miao.rpc.core.proxy;
+
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class RpcProxyFactoryBeanTest {
+
+    interface Api {
+        String read(String path) throws IOException;
+    }
+
+    @Test
+    public void remoteCauseIsRethrownAsDeclared() throws Exception {
+        Method method = Api.class.getMethod("read", String.class);
+
+        IllegalStateException unchecked = new IllegalStateException("boom");
+        assertSame(unchecked, RpcProxyFactoryBean.exceptionToThrow(method, unchecked));
+        StackOverflowError error = new StackOverflowError();
+        assertSame(error, RpcProxyFactoryBean.exceptionToThrow(method, error));
+        // 声明了IOException，其子类也原样抛出
+        FileNotFoundException declared = new FileNotFoundException("a.txt");
+        assertSame(declared, RpcProxyFactoryBean.exceptionToThrow(method, declared));
+
+        TimeoutException undeclared = new TimeoutException("slow");
+        Throwable thrown = RpcProxyFactoryBean.exceptionToThrow(method, undeclared);
+        assertTrue(thrown instanceof UndeclaredThrowableException);
+        assertSame(undeclared, thrown.getCause());
+    }
+}
@@ -0,0 +1,54 @@
+package com.miao.rpc.core.registry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ProviderInfoTest {
+
+    @Test
+    public void encodeAndParseRoundTrip() {
+        ProviderInfo info = new ProviderInfo("127.0.0.1:8000");
+        info.setWeight(800);
+        info.setCpus(8);
+        info.setMaxConcurrency(16);
+        info.setZone("zone a&b=c");
+        info.setRack("r1");
+        info.setVersion(1);
+        info.setServices(Arrays.asList("a.Foo", "a.Bar"));
+
+        String data = info.encode();
+        assertTrue(data, data.startsWith("127.0.0.1:8000?weight=800&cpus=8&maxConcurrency=16&zone="));
+        assertEquals(info, ProviderInfo.parse(data));
+    }
+
+    @Test
+    public void unsetFieldsAreOmitted() {
+        assertEquals("127.0.0.1:8000?weight=100", new ProviderInfo("127.0.0.1:8000").encode());
+    }
+
+    @Test
+    public void bareAddressFromOldServer() {
+        ProviderInfo info = ProviderInfo.parse("127.0.0.1:8000");
+        assertEquals("127.0.0.1:8000", info.getAddress());
+        assertEquals(ProviderInfo.DEFAULT_WEIGHT, info.getWeight());
+        assertEquals(0, info.getVersion());
+        assertTrue(info.getServices().isEmpty());
+    }
+
+    @Test
+    public void malformedAndUnknownParametersAreIgnored() {
+        ProviderInfo info = ProviderInfo.parse("h:1?weight=abc&cpus=4&future=x&=y&zone&rack=r2");
+        assertEquals(ProviderInfo.DEFAULT_WEIGHT, info.getWeight());
+        assertEquals(4, info.getCpus());
+        assertNull(info.getZone());
+        assertEquals("r2", info.getRack());
+    }
+
+    @Test
+    public void negativeWeightBecomesZero() {
+        assertEquals(0, ProviderInfo.parse("h:1?weight=-5").getWeight());
+    }
+}
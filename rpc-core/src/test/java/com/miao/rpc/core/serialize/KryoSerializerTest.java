@@ -0,0 +1,107 @@
+package com.miao.rpc.core.serialize;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Output;
+import com.miao.rpc.core.domain.RpcRequest;
+import com.miao.rpc.core.domain.RpcResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class KryoSerializerTest {
+
+    private final KryoSerializer serializer = new KryoSerializer();
+
+    @Test
+    public void jdkTypesRoundTrip() {
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("list", new ArrayList<>(Arrays.asList(1, 2L, "3")));
+        map.put("array", new int[]{4, 5});
+        HashMap<?, ?> back = roundTrip(map, HashMap.class);
+        assertEquals(Arrays.asList(1, 2L, "3"), back.get("list"));
+        assertArrayEquals(new int[]{4, 5}, (int[]) back.get("array"));
+    }
+
+    @Test
+    public void requestRoundTrip() {
+        RpcRequest request = new RpcRequest();
+        request.setClassName("a.Foo");
+        request.setParameterTypes(new Class<?>[]{Integer.class, long.class});
+        request.setParameters(new Object[]{Integer.valueOf(1), 2L});
+        RpcRequest back = roundTrip(request, RpcRequest.class);
+        assertEquals("a.Foo", back.getClassName());
+        assertArrayEquals(request.getParameterTypes(), back.getParameterTypes());
+        assertArrayEquals(request.getParameters(), back.getParameters());
+    }
+
+    @Test
+    public void classOutsideAllowListIsRejected() {
+        // 对端可以在Object类型的字段中按类名写出任意类，本端读取时拒绝
+        RpcResponse response = new RpcResponse();
+        response.setResult(new Point(1, 2));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Output output = new Output(bytes);
+        new Kryo().writeObject(output, response);
+        output.flush();
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes.toByteArray());
+        try {
+            serializer.deserialize(buf, buf.readableBytes(), RpcResponse.class);
+            fail();
+        } catch (KryoException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("java.awt.Point"));
+        }
+    }
+
+    @Test
+    public void reflectionPackagesAreNotAllowed() {
+        assertFalse(KryoSerializer.isAllowed(java.lang.reflect.Method.class));
+        assertFalse(KryoSerializer.isAllowed(Point.class));
+        assertTrue(KryoSerializer.isAllowed(String[][].class));
+        assertTrue(KryoSerializer.isAllowed(long.class));
+        assertTrue(KryoSerializer.isAllowed(KryoSerializerTest.class));
+    }
+
+    @Test
+    public void exceptionFieldKeepsTypeAndMessageOnly() {
+        RpcResponse response = new RpcResponse();
+        response.setCause(new UnsupportedOperationException("nope"));
+        Throwable back = roundTrip(response, RpcResponse.class).getCause();
+        assertEquals(UnsupportedOperationException.class, back.getClass());
+        assertEquals("nope", back.getMessage());
+        assertEquals(0, back.getStackTrace().length);
+
+        response.setCause(new javax.naming.NamingException("lookup"));
+        back = roundTrip(response, RpcResponse.class).getCause();
+        assertEquals(RuntimeException.class, back.getClass());
+        assertEquals("javax.naming.NamingException: lookup", back.getMessage());
+    }
+
+    @Test
+    public void exceptionWrittenDirectlyKeepsTypeAndMessageOnly() {
+        Throwable back = roundTrip(new UnsupportedOperationException("nope"), Throwable.class);
+        assertEquals(UnsupportedOperationException.class, back.getClass());
+        assertEquals("nope", back.getMessage());
+        assertEquals(0, back.getStackTrace().length);
+
+        back = roundTrip(new javax.naming.NamingException("lookup"), Throwable.class);
+        assertEquals(RuntimeException.class, back.getClass());
+        assertEquals("javax.naming.NamingException: lookup", back.getMessage());
+    }
+
+    private <T> T roundTrip(Object value, Class<T> type) {
+        ByteBuf buf = Unpooled.buffer();
+        serializer.serialize(value, buf);
+        T back = serializer.deserialize(buf, buf.readableBytes(), type);
+        assertEquals(0, buf.readableBytes());
+        return back;
+    }
+}
@@ -0,0 +1,185 @@
+package com.miao.rpc.core.stream;
+
+import com.miao.rpc.core.client.RpcTimeoutException;
+import com.miao.rpc.core.domain.Message;
+import com.miao.rpc.core.domain.StreamFrame;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * 发送端只发送对端给出的credit，接收端每消费半个窗口补发credit，并拒绝超出窗口的元素
+ */
+public class StreamCreditTest {
+
+    private static final byte SERIALIZER = 1;
+
+    @Test
+    public void receiverGrantsCreditEveryHalfWindow() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        InboundStream<Integer> stream = new InboundStream<>(channel, 1, SERIALIZER, 4, 1000, null, false, (id, c) -> { });
+        assertEquals(4, stream.initialCredit().getStream().getCredits());
+
+        stream.onFrame(StreamFrame.data(1, SERIALIZER, new Object[]{1, 2, 3, 4}, false));
+        assertEquals(1, (int) stream.next());
+        assertNull(channel.readOutbound());
+        assertEquals(2, (int) stream.next());
+        assertEquals(2, credit(channel).getCredits());
+
+        stream.onFrame(StreamFrame.data(1, SERIALIZER, new Object[]{5, null}, true));
+        List<Integer> rest = new ArrayList<>();
+        stream.forEachRemaining(rest::add);
+        assertEquals(Arrays.asList(3, 4, 5, null), rest);
+        assertFalse(stream.hasNext());
+    }
+
+    @Test
+    public void itemsBeyondCreditFailTheStream() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicReference<Throwable> finished = new AtomicReference<>();
+        InboundStream<Integer> stream = new InboundStream<>(channel, 1, SERIALIZER, 4, 1000, null, false,
+                (id, cause) -> finished.set(cause));
+        stream.onFrame(StreamFrame.data(1, SERIALIZER, new Object[]{1, 2, 3}, false));
+        stream.onFrame(StreamFrame.data(1, SERIALIZER, new Object[]{4, 5}, false));
+
+        assertTrue(finished.get() instanceof RpcStreamException);
+        assertTrue(credit(channel).isCancel());
+        assertEquals(1, (int) stream.next());
+        assertEquals(2, (int) stream.next());
+        assertEquals(3, (int) stream.next());
+        try {
+            stream.hasNext();
+            fail();
+        } catch (RpcStreamException e) {
+            // 期望的异常
+        }
+    }
+
+    @Test
+    public void errorFrameEndsWithCause() {
+        InboundStream<Integer> stream = new InboundStream<>(new EmbeddedChannel(), 1, SERIALIZER, 4, 1000, null,
+                false, (id, c) -> { });
+        stream.onFrame(StreamFrame.error(1, SERIALIZER, new IllegalStateException("boom")));
+        try {
+            stream.hasNext();
+            fail();
+        } catch (RpcStreamException e) {
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void waitingForItemTimesOutAndCancels() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        InboundStream<Integer> stream = new InboundStream<>(channel, 1, SERIALIZER, 4, 20, null, false, (id, c) -> { });
+        try {
+            stream.hasNext();
+            fail();
+        } catch (RpcTimeoutException e) {
+            assertTrue(credit(channel).isCancel());
+        }
+    }
+
+    @Test
+    public void senderStopsWhenCreditRunsOut() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger finishes = new AtomicInteger();
+        OutboundStream stream = new OutboundStream(channel, 1, SERIALIZER, Runnable::run, 2, null, false,
+                (id, cause) -> finishes.incrementAndGet());
+        stream.start(IntStream.range(0, 7).iterator(), null);
+        assertNull(channel.readOutbound()); // 还没有credit
+
+        stream.grant(3);
+        assertArrayEquals(new Object[]{0, 1}, data(channel).getItems());
+        assertArrayEquals(new Object[]{2}, data(channel).getItems());
+        assertNull(channel.readOutbound());
+
+        stream.grant(10);
+        assertArrayEquals(new Object[]{3, 4}, data(channel).getItems());
+        assertArrayEquals(new Object[]{5, 6}, data(channel).getItems());
+        StreamFrame last = data(channel);
+        assertTrue(last.isEnd());
+        assertEquals(0, last.getItems().length);
+        assertEquals(1, finishes.get());
+    }
+
+    @Test
+    public void cancelClosesSourceWithoutFrames() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger closed = new AtomicInteger();
+        OutboundStream stream = new OutboundStream(channel, 1, SERIALIZER, Runnable::run, 2, null, false, (id, c) -> { });
+        Iterator<Integer> source = IntStream.range(0, 100).iterator();
+        stream.start(source, closed::incrementAndGet);
+        stream.grant(2);
+        assertNotNull(data(channel));
+        stream.cancel();
+        assertEquals(1, closed.get());
+        stream.grant(10);
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void failSendsTerminalErrorFrame() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicReference<Throwable> finished = new AtomicReference<>();
+        OutboundStream stream = new OutboundStream(channel, 1, SERIALIZER, Runnable::run, 2, null, false,
+                (id, cause) -> finished.set(cause));
+        IllegalStateException cause = new IllegalStateException("expired");
+        stream.fail(cause);
+        StreamFrame frame = data(channel);
+        assertTrue(frame.isEnd());
+        assertSame(cause, frame.getCause());
+        assertSame(cause, finished.get());
+        stream.fail(new IllegalStateException("again"));
+        assertNull(channel.readOutbound()); // 只结束一次
+    }
+
+    @Test
+    public void bidirectionalStreamsShareIdAndCloseTogether() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        StreamTable table = new StreamTable();
+        AtomicReference<Throwable> inboundCause = new AtomicReference<>();
+        AtomicInteger closed = new AtomicInteger();
+        InboundStream<Integer> inbound = new InboundStream<>(channel, 9, SERIALIZER, 4, 1000, null, false,
+                (id, cause) -> {
+                    inboundCause.set(cause);
+                    table.removeInbound(id, cause);
+                });
+        OutboundStream outbound = new OutboundStream(channel, 9, SERIALIZER, Runnable::run, 2, null, true,
+                table::removeOutbound);
+        table.addInbound(inbound);
+        table.addOutbound(outbound);
+        outbound.start(IntStream.range(0, 100).iterator(), closed::incrementAndGet);
+        assertSame(inbound, table.inbound(9));
+        assertSame(outbound, table.outbound(9));
+        assertEquals(2, table.size());
+
+        IllegalStateException cause = new IllegalStateException("连接已断开");
+        table.closeAll(cause);
+        assertSame(cause, inboundCause.get());
+        assertEquals(1, closed.get());
+        assertEquals(0, table.size());
+        assertNull(channel.readOutbound());
+    }
+
+    private static StreamFrame credit(EmbeddedChannel channel) {
+        Message message = channel.readOutbound();
+        assertEquals(Message.CREDIT, message.getType());
+        return message.getStream();
+    }
+
+    private static StreamFrame data(EmbeddedChannel channel) {
+        Message message = channel.readOutbound();
+        assertEquals(Message.STREAM, message.getType());
+        return message.getStream();
+    }
+}
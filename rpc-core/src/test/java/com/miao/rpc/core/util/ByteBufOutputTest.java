@@ -0,0 +1,93 @@
+package com.miao.rpc.core.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * ByteBufOutput的输出必须与ProtostuffIOUtil.toByteArray逐字节相同，两端才能混用两种写法
+ */
+public class ByteBufOutputTest {
+
+    // 字段不设初始值：反序列化是合并进新实例的，初始值中的元素会和读到的元素叠加
+    public static class Pojo {
+        String text;
+        int negative;
+        int large;
+        long min;
+        double d;
+        float f;
+        boolean b;
+        short s;
+        char c;
+        byte[] bytes;
+        List<Object> list;
+        Map<String, Integer> map;
+        Pojo inner;
+        Object[] empty;
+
+        static Pojo create() {
+            Pojo pojo = new Pojo();
+            pojo.text = "名字😀x";
+            pojo.negative = -5;
+            pojo.large = Integer.MAX_VALUE;
+            pojo.min = Long.MIN_VALUE;
+            pojo.d = 3.5;
+            pojo.f = -1.25f;
+            pojo.b = true;
+            pojo.s = -3;
+            pojo.c = 'x';
+            pojo.bytes = new byte[]{1, 2, 3};
+            pojo.list = new ArrayList<>(Arrays.asList(1, "s", 2.0, null, new int[]{1, 2}));
+            pojo.map = new HashMap<>();
+            pojo.map.put("k", 1);
+            pojo.empty = new Object[0];
+            return pojo;
+        }
+    }
+
+    @Test
+    public void sameBytesAsProtostuff() {
+        Pojo pojo = Pojo.create();
+        pojo.inner = Pojo.create();
+        pojo.inner.text = "";
+        byte[] expected = ProtostuffUtil.serialize(pojo);
+        for (ByteBuf buf : new ByteBuf[]{Unpooled.buffer(4), Unpooled.directBuffer(4),
+                PooledByteBufAllocator.DEFAULT.directBuffer(4)}) {
+            try {
+                int written = ProtostuffUtil.serialize(pojo, buf);
+                assertEquals(expected.length, written);
+                byte[] actual = new byte[buf.readableBytes()];
+                buf.getBytes(buf.readerIndex(), actual);
+                assertArrayEquals(expected, actual);
+
+                Pojo back = ProtostuffUtil.deserialize(buf, buf.readableBytes(), Pojo.class);
+                assertEquals(0, buf.readableBytes());
+                assertArrayEquals(expected, ProtostuffUtil.serialize(back));
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    @Test
+    public void deserializeReadsOnlyGivenLength() {
+        Pojo pojo = Pojo.create();
+        ByteBuf buf = Unpooled.directBuffer();
+        int length = ProtostuffUtil.serialize(pojo, buf);
+        buf.writeInt(0xCAFEBABE);
+        Pojo back = ProtostuffUtil.deserialize(buf, length, Pojo.class);
+        assertEquals(pojo.text, back.text);
+        assertEquals(0xCAFEBABE, buf.readInt());
+        buf.release();
+    }
+}
@@ -1,14 +1,22 @@
 package com.miao.rpc.server;
 
+import com.miao.rpc.core.interceptor.LoggingInterceptor;
+import com.miao.rpc.core.interceptor.RpcInterceptor;
+import com.miao.rpc.core.metrics.MetricsHttpServer;
 import com.miao.rpc.core.registry.ServiceRegistry;
+import com.miao.rpc.core.serialize.KryoSerializer;
 import com.miao.rpc.core.server.RpcServer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
+import java.util.List;
+
 @Configuration
 @EnableConfigurationProperties(RpcServerProperties.class)
 @ConditionalOnMissingBean(RpcServer.class)
@@ -16,12 +24,52 @@ import org.springframework.context.annotation.Configuration;
 public class RpcServerAutoConfiguration {
     @Autowired
     private RpcServerProperties properties;
+    @Autowired(required = false)
+    private List<RpcInterceptor> interceptors; // 容器中的拦截器bean
 
     @Bean
     public RpcServer rpcServer() {
         log.info("开始初始化RpcServer");
         log.info("properties：{}", properties);
         ServiceRegistry registry = new ServiceRegistry(properties.getRegistryAddress());//连接Zookeeper
-        return new RpcServer(properties.getServiceBaseAddress(), registry);//传入实现类路径
+        RpcServer server = new RpcServer(properties.getServiceBaseAddress(), registry);//传入实现类路径
+        server.setExecutorMode(properties.getExecutorMode());
+        server.setWorkerThreads(properties.getWorkerThreads());
+        server.setMaxConcurrency(properties.getMaxConcurrency());
+        server.setQueueCapacity(properties.getQueueCapacity());
+        server.setDedicatedPools(properties.getDedicatedPools());
+        server.setWeight(properties.getWeight());
+        server.setZone(properties.getZone());
+        server.setRack(properties.getRack());
+        server.setFlushConsolidation(properties.getFlushConsolidation());
+        server.setCompressThreshold(properties.getCompressThreshold());
+        server.setSerializers(properties.getSerializers());
+        KryoSerializer.allowPackages(properties.getKryoAllowedPackages());
+        server.setStreamChunkSize(properties.getStreamChunkSize());
+        server.setStreamWindow(properties.getStreamWindow());
+        server.setTransportConfig(properties.getTransport());
+        server.setTraceSampleInterval(properties.getTraceSampleInterval());
+        server.setMetricsEnabled(properties.isMetricsEnabled());
+        if (properties.isTraceLogging()) {
+            server.addInterceptor(new LoggingInterceptor());
+        }
+        if (interceptors != null) {
+            interceptors.forEach(server::addInterceptor);
+        }
+        return server;
+    }
+
+    /**
+     * 设置了rpc.metricsPort时在本机输出指标
+     */
+    @Bean(destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "rpc", name = "metricsPort")
+    public MetricsHttpServer rpcServerMetricsHttpServer(RpcServer server) throws IOException {
+        if (server.getMetrics() == null) {
+            throw new IllegalStateException("rpc.metricsEnabled=false时不能设置rpc.metricsPort");
+        }
+        MetricsHttpServer metricsServer = new MetricsHttpServer(properties.getMetricsPort(), server.getMetrics());
+        metricsServer.start();
+        return metricsServer;
     }
 }
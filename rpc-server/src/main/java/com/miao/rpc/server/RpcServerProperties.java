@@ -1,11 +1,38 @@
 package com.miao.rpc.server;
 
+import com.miao.rpc.core.server.ServerExecutor;
+import com.miao.rpc.core.transport.TransportConfig;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @ConfigurationProperties(prefix = "rpc")
 @Data
 public class RpcServerProperties {
-    private String registryAddress;
+    private String registryAddress; // 注册中心地址：zookeeper://、static://、file://、local://，没有协议名时为ZooKeeper
     private String serviceBaseAddress;
+    private ServerExecutor.Mode executorMode = ServerExecutor.Mode.PLATFORM; // 执行模式：PLATFORM、VIRTUAL(每个请求一个虚拟线程)
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 2; // 默认业务线程池的线程数
+    private int maxConcurrency = 10000; // VIRTUAL模式下的最大并发请求数，超过后返回服务端繁忙
+    private int queueCapacity = 1024; // 每个业务线程池的队列长度，满了之后返回服务端繁忙
+    private TransportConfig transport = new TransportConfig(); // rpc.transport.*：传输实现、IO线程数、socket参数、分配器
+    private boolean traceLogging = false; // 是否用LoggingInterceptor把请求事件打印到日志
+    private int traceSampleInterval = 1; // 拦截器的采样间隔，每多少个请求采样1个
+    private boolean metricsEnabled = true; // 是否按方法统计请求数、耗时分布等，通过getMetrics拉取
+    private Integer metricsPort; // 设置后在127.0.0.1的该端口上以HTTP输出指标：/metrics、/metrics?format=json
+    private int flushConsolidation = 256; // 合并多少次flush后立即真正flush，0表示不合并
+    private int streamChunkSize = 64; // 流式方法每帧最多携带的元素数，元素较大时调小，保证每帧不超过1MB
+    private int streamWindow = 256; // 接收流式参数时最多缓冲的元素数，服务方法消费慢时客户端暂停上传
+    private int compressThreshold = 0; // 响应消息体达到多少字节时压缩，0表示不压缩
+    private List<String> serializers = new ArrayList<>(Arrays.asList("protostuff")); // 接受的序列化方式，kryo需要显式加入
+    private List<String> kryoAllowedPackages = new ArrayList<>(); // 开启kryo时参数与返回值所在的包，反序列化只接受这些包及JDK基本类型
+    private Map<String, Integer> dedicatedPools = new HashMap<>(); // 接口名或 接口名#方法名 -> 独立线程池的线程数
+    private int weight = 0; // 注册到注册中心的负载均衡权重，流量与其成正比，0表示按CPU数计算(每个CPU为100)
+    private String zone; // 所在的可用区，设置了相同rpc.zone的客户端优先调用同区的服务端
+    private String rack; // 所在的机架，随元数据注册到注册中心
 }
@@ -2,6 +2,18 @@ package com.miao.rpc.sample.api.service;
 
 import com.miao.rpc.sample.api.domain.User;
 
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+
 public interface HelloService {
     String hello(User user);
+
+    // 返回CompletableFuture的方法，客户端调用时不阻塞
+    CompletableFuture<String> helloAsync(User user);
+
+    // 返回Iterator的方法按流式调用，服务端分批发送，客户端边接收边消费
+    Iterator<String> helloStream(User user, int count);
+
+    // Iterator类型的参数按流上传，服务端边接收边处理
+    int helloAll(Iterator<User> users);
 }
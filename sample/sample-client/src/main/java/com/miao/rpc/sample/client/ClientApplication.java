@@ -9,6 +9,9 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
 @SpringBootApplication
 @Slf4j
 public class ClientApplication implements CommandLineRunner{
@@ -41,6 +44,20 @@ public class ClientApplication implements CommandLineRunner{
                 }
                 log.info(helloService.hello(new User("李四"))+i);
             }
+            // 异步调用，结果由回调处理
+            helloService.helloAsync(new User("王五"))
+                    .thenAccept(result -> log.info("异步调用结果：{}", result));
+            // 流式调用，结果边接收边消费
+            Iterator<String> stream = helloService.helloStream(new User("赵六"), 10000);
+            int count = 0;
+            while (stream.hasNext()) {
+                stream.next();
+                count++;
+            }
+            log.info("流式调用共收到{}个结果", count);
+            // 流式上传，参数边生成边发送
+            int greeted = helloService.helloAll(IntStream.range(0, 10000).mapToObj(i -> new User("用户" + i)).iterator());
+            log.info("流式上传共问候{}个用户", greeted);
 
         }).start();
     }
@@ -1,15 +1,43 @@
 package com.miao.rpc.sample.server.impl;
 
+import com.miao.rpc.core.annotation.RpcInline;
 import com.miao.rpc.core.annotation.RpcService;
 import com.miao.rpc.sample.api.domain.User;
 import com.miao.rpc.sample.api.service.HelloService;
 import org.springframework.stereotype.Service;
 
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
 @RpcService
 @Service
 public class HelloServiceImpl implements HelloService {
     @Override
+    @RpcInline // 纯内存拼接字符串，直接在IO线程上执行
     public String hello(User user) {
         return "Hello! " + user.getUserName();
     }
+
+    @Override
+    public CompletableFuture<String> helloAsync(User user) {
+        return CompletableFuture.completedFuture("Hello async! " + user.getUserName());
+    }
+
+    @Override
+    public Iterator<String> helloStream(User user, int count) {
+        // 元素在客户端消费时才按需生成，不会一次性放进内存
+        return IntStream.range(0, count).mapToObj(i -> "Hello " + i + "! " + user.getUserName()).iterator();
+    }
+
+    @Override
+    public int helloAll(Iterator<User> users) {
+        // 元素按客户端上传的顺序到达，读取时可能阻塞等待下一帧
+        int count = 0;
+        while (users.hasNext()) {
+            users.next();
+            count++;
+        }
+        return count;
+    }
 }